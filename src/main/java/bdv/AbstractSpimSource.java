@@ -1,6 +1,10 @@
 package bdv;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import mpicbg.spim.data.SequenceDescription;
+import mpicbg.spim.data.View;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
@@ -9,18 +13,57 @@ import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.view.Views;
 import bdv.viewer.Interpolation;
+import bdv.viewer.PrefetchableSource;
 import bdv.viewer.Source;
 
-public abstract class AbstractSpimSource< T extends NumericType< T > > implements Source< T >
+/**
+ * A {@link Source} for one view setup of a SPIM sequence.
+ * <p>
+ * The images and transforms of a timepoint are loaded into a
+ * {@link TimepointSources} that is not modified afterwards, and the most
+ * recently used {@link #NUM_CACHED_TIMEPOINTS} timepoints are kept. Several
+ * threads can therefore access different timepoints at the same time (e.g.,
+ * the viewer and off-screen movie rendering), without seeing the data of
+ * another timepoint. {@link #getSourceTransform(int, int)} returns a copy.
+ * {@link #loadSource(int, int, AffineTransform3D)} reads timepoints for
+ * prefetching without adding them to the loaded timepoints.
+ */
+public abstract class AbstractSpimSource< T extends NumericType< T > > implements PrefetchableSource< T >
 {
-	protected int currentTimepoint;
+	/**
+	 * How many timepoints are kept loaded.
+	 */
+	public static final int NUM_CACHED_TIMEPOINTS = 16;
+
+	/**
+	 * The images and transforms of all mipmap levels of one timepoint. These
+	 * are not modified after loading.
+	 */
+	protected static class TimepointSources< T >
+	{
+		protected final RandomAccessibleInterval< T >[] sources;
 
-	protected RandomAccessibleInterval< T >[] currentSources;
+		protected final RealRandomAccessible< T >[][] interpolatedSources;
 
-	protected RealRandomAccessible< T >[][] currentInterpolatedSources;
+		protected final AffineTransform3D[] sourceTransforms;
+
+		@SuppressWarnings( "unchecked" )
+		protected TimepointSources( final int numMipmapLevels )
+		{
+			sources = new RandomAccessibleInterval[ numMipmapLevels ];
+			interpolatedSources = new RealRandomAccessible[ numMipmapLevels ][ numInterpolationMethods ];
+			sourceTransforms = new AffineTransform3D[ numMipmapLevels ];
+			for ( int level = 0; level < numMipmapLevels; level++ )
+				sourceTransforms[ level ] = new AffineTransform3D();
+		}
+	}
 
-	protected final AffineTransform3D[] currentSourceTransforms;
+	/**
+	 * Loaded timepoints, least recently used first.
+	 */
+	private final LinkedHashMap< Integer, TimepointSources< T > > loadedTimepoints;
 
 	protected final int setup;
 
@@ -52,18 +95,85 @@ public abstract class AbstractSpimSource< T extends NumericType< T > > implement
 		imgLoader = ( ViewerImgLoader ) seq.imgLoader;
 		numTimepoints = seq.numTimepoints();
 		numMipmapLevels = imgLoader.numMipmapLevels( setup );
-		currentSources = new RandomAccessibleInterval[ numMipmapLevels ];
-		currentInterpolatedSources = new RealRandomAccessible[ numMipmapLevels ][ numInterpolationMethods ];
-		currentSourceTransforms = new AffineTransform3D[ numMipmapLevels ];
-		for ( int level = 0; level < numMipmapLevels; level++ )
-			currentSourceTransforms[ level ] = new AffineTransform3D();
+		loadedTimepoints = new LinkedHashMap< Integer, TimepointSources< T > >( 2 * NUM_CACHED_TIMEPOINTS, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Integer, TimepointSources< T > > eldest )
+			{
+				return size() > NUM_CACHED_TIMEPOINTS;
+			}
+		};
 		interpolatorFactories = new InterpolatorFactory[ numInterpolationMethods ];
 		interpolatorFactories[ iNearestNeighborMethod ] = new NearestNeighborInterpolatorFactory< T >();
 		interpolatorFactories[ iNLinearMethod ] = new NLinearInterpolatorFactory< T >();
-		loadTimepoint( 0 );
 	}
 
-	protected abstract void loadTimepoint( final int timepoint );
+	/**
+	 * Get the image of the given view at the given mipmap level from the
+	 * {@link #imgLoader}.
+	 */
+	protected abstract RandomAccessibleInterval< T > getImage( final View view, final int level );
+
+	/**
+	 * Get the value of pixels outside the image.
+	 */
+	protected abstract T getZero();
+
+	/**
+	 * Set the transform from the image of the given view at the given mipmap
+	 * level into the global coordinate system: the view registration,
+	 * concatenated with the mipmap transform.
+	 */
+	protected void getSourceTransform( final View view, final int level, final AffineTransform3D transform )
+	{
+		final double[] resolution = imgLoader.getMipmapResolutions( setup )[ level ];
+		final AffineTransform3D mipmapTransform = new AffineTransform3D();
+		for ( int d = 0; d < 3; ++d )
+		{
+			mipmapTransform.set( resolution[ d ], d, d );
+			mipmapTransform.set( 0.5 * ( resolution[ d ] - 1 ), d, 3 );
+		}
+		transform.set( view.getModel() );
+		transform.concatenate( mipmapTransform );
+	}
+
+	/**
+	 * Load the images and transforms of all mipmap levels of a timepoint.
+	 */
+	protected TimepointSources< T > loadTimepoint( final int timepoint )
+	{
+		final TimepointSources< T > s = new TimepointSources< T >( numMipmapLevels );
+		if ( isPresent( timepoint ) )
+		{
+			final T zero = getZero();
+			final View view = sequenceViews.getView( timepoint, setup );
+			for ( int level = 0; level < numMipmapLevels; level++ )
+			{
+				getSourceTransform( view, level, s.sourceTransforms[ level ] );
+				s.sources[ level ] = getImage( view, level );
+				for ( int method = 0; method < numInterpolationMethods; ++method )
+					s.interpolatedSources[ level ][ method ] = Views.interpolate( Views.extendValue( s.sources[ level ], zero ), interpolatorFactories[ method ] );
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Get the images and transforms of a timepoint, loading them if they are
+	 * not loaded yet.
+	 */
+	protected synchronized TimepointSources< T > getTimepoint( final int timepoint )
+	{
+		TimepointSources< T > s = loadedTimepoints.get( timepoint );
+		if ( s == null )
+		{
+			s = loadTimepoint( timepoint );
+			loadedTimepoints.put( timepoint, s );
+		}
+		return s;
+	}
 
 	@Override
 	public boolean isPresent( final int t )
@@ -72,27 +182,36 @@ public abstract class AbstractSpimSource< T extends NumericType< T > > implement
 	}
 
 	@Override
-	public synchronized RandomAccessibleInterval< T > getSource( final int t, final int level )
+	public RandomAccessibleInterval< T > getSource( final int t, final int level )
+	{
+		return getTimepoint( t ).sources[ level ];
+	}
+
+	@Override
+	public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
 	{
-		if ( t != currentTimepoint )
-			loadTimepoint( t );
-		return currentSources[ level ];
+		return getTimepoint( t ).interpolatedSources[ level ][ method == Interpolation.NLINEAR ? iNLinearMethod : iNearestNeighborMethod ];
 	}
 
+	/**
+	 * Get the transform from the {@link #getSource(int, int) source} at
+	 * timepoint t into the global coordinate system. This returns a new
+	 * {@link AffineTransform3D} that may be modified by the caller.
+	 */
 	@Override
-	public synchronized RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	public AffineTransform3D getSourceTransform( final int t, final int level )
 	{
-		if ( t != currentTimepoint )
-			loadTimepoint( t );
-		return currentInterpolatedSources[ level ][ method == Interpolation.NLINEAR ? iNLinearMethod : iNearestNeighborMethod ];
+		return getTimepoint( t ).sourceTransforms[ level ].copy();
 	}
 
 	@Override
-	public synchronized AffineTransform3D getSourceTransform( final int t, final int level )
+	public RandomAccessibleInterval< T > loadSource( final int t, final int level, final AffineTransform3D sourceTransform )
 	{
-		if ( t != currentTimepoint )
-			loadTimepoint( t );
-		return currentSourceTransforms[ level ];
+		if ( !isPresent( t ) )
+			return null;
+		final View view = sequenceViews.getView( t, setup );
+		getSourceTransform( view, level, sourceTransform );
+		return getImage( view, level );
 	}
 
 	@Override
@@ -41,6 +41,13 @@ public class SequenceViewsLoader
 		createViews( new ViewRegistrations( root.getChild( "ViewRegistrations" ) ) );
 	}
 
+	public SequenceViewsLoader( final SequenceDescription seq, final ViewRegistrations regs )
+	{
+		this.seq = seq;
+		views = new ArrayList< View >();
+		createViews( regs );
+	}
+
 	public SequenceDescription getSequenceDescription()
 	{
 		return seq;
@@ -5,6 +5,7 @@ import mpicbg.spim.data.View;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import bdv.img.cache.Cache;
 
 public interface ViewerImgLoader extends ImgLoader
 {
@@ -15,4 +16,10 @@ public interface ViewerImgLoader extends ImgLoader
 	public double[][] getMipmapResolutions( final int setup );
 
 	public int numMipmapLevels( final int setup );
+
+	/**
+	 * Get the {@link Cache} that backs the images of this loader, to be
+	 * controlled by the renderer.
+	 */
+	public Cache getCache();
 }
@@ -10,7 +10,10 @@ import net.imglib2.algorithm.region.localneighborhood.Neighborhood;
 import net.imglib2.algorithm.region.localneighborhood.RectangleNeighborhoodFactory;
 import net.imglib2.algorithm.region.localneighborhood.RectangleNeighborhoodUnsafe;
 import net.imglib2.algorithm.region.localneighborhood.RectangleShape.NeighborhoodsAccessible;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.view.Views;
 
 public class Downsample
@@ -55,4 +58,237 @@ public class Downsample
 			o.setReal( sum * scale );
 		}
 	}
+
+	/**
+	 * Downsample a 3D uint16 image by averaging blocks of size {@code factor}.
+	 * Outside of {@code input}, the border values are repeated (like
+	 * {@link Views#extendBorder(RandomAccessibleInterval)}). The output
+	 * voxel at position x is the average of the input block starting at x *
+	 * factor, rounded to the nearest integer.
+	 * <p>
+	 * If {@code output} is a {@link ShortArray}-backed {@link ArrayImg}, this
+	 * works directly on {@code short[]} planes with integer accumulation, in
+	 * parallel over z-slabs. Input planes are read directly if {@code input}
+	 * is a {@link ShortArray}-backed {@link ArrayImg} as well, otherwise they
+	 * are copied into a buffer one plane at a time. For other outputs, this
+	 * falls back to
+	 * {@link #downsample(RandomAccessible, RandomAccessibleInterval, int[])}.
+	 * <p>
+	 * If the calling thread is interrupted, the worker threads are
+	 * interrupted and the method returns with the interrupted flag set, and
+	 * the output incomplete.
+	 *
+	 * @param numThreads
+	 *            how many threads to use.
+	 */
+	public static void downsample( final RandomAccessibleInterval< UnsignedShortType > input, final RandomAccessibleInterval< UnsignedShortType > output, final int[] factor, final int numThreads )
+	{
+		final short[] outputData = getShortArray( output );
+		if ( outputData == null || input.numDimensions() != 3 || output.numDimensions() != 3 )
+		{
+			downsample( Views.extendBorder( input ), output, factor );
+			return;
+		}
+
+		final BlockAverage blockAverage = new BlockAverage( input, output, outputData, factor );
+		final int numSlices = ( int ) output.dimension( 2 );
+		final int numSlabs = Math.max( 1, Math.min( numThreads, numSlices ) );
+		if ( numSlabs == 1 )
+		{
+			blockAverage.run( 0, numSlices );
+			return;
+		}
+
+		final Thread[] threads = new Thread[ numSlabs ];
+		for ( int i = 0; i < numSlabs; ++i )
+		{
+			final int zMin = ( int ) ( ( long ) numSlices * i / numSlabs );
+			final int zMax = ( int ) ( ( long ) numSlices * ( i + 1 ) / numSlabs );
+			threads[ i ] = new Thread( "downsample " + i )
+			{
+				@Override
+				public void run()
+				{
+					blockAverage.run( zMin, zMax );
+				}
+			};
+			threads[ i ].start();
+		}
+		try
+		{
+			for ( final Thread thread : threads )
+				thread.join();
+		}
+		catch ( final InterruptedException e )
+		{
+			for ( final Thread thread : threads )
+				thread.interrupt();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the storage array of a {@link ShortArray}-backed
+	 *         {@link ArrayImg}, or null if {@code img} is something else.
+	 */
+	private static short[] getShortArray( final RandomAccessibleInterval< ? > img )
+	{
+		if ( img instanceof ArrayImg )
+		{
+			final Object access = ( ( ArrayImg< ?, ? > ) img ).update( null );
+			if ( access instanceof ShortArray )
+				return ( ( ShortArray ) access ).getCurrentStorageArray();
+		}
+		return null;
+	}
+
+	/**
+	 * Block averaging of uint16 data on {@code short[]} planes. For each
+	 * dimension, the input coordinates (clamped to the input interval) that
+	 * contribute to each output coordinate are precomputed, so that the inner
+	 * loops only do table lookups and integer additions.
+	 */
+	private static class BlockAverage
+	{
+		private final RandomAccessibleInterval< UnsignedShortType > input;
+
+		/**
+		 * storage array of {@code input}, or null if planes have to be copied.
+		 */
+		private final short[] inputData;
+
+		private final short[] outputData;
+
+		private final int[] factor;
+
+		private final int inputSizeX;
+
+		private final int inputSizeY;
+
+		private final int outputSizeX;
+
+		private final int outputSizeY;
+
+		private final long inputMinX;
+
+		private final long inputMinY;
+
+		/**
+		 * for output coordinate o, the input x coordinates (relative to the
+		 * input min) are {@code xIndex[ o * factor[ 0 ] + i ]}.
+		 */
+		private final int[] xIndex;
+
+		private final int[] yIndex;
+
+		private final long[] zIndex;
+
+		private final long blockSize;
+
+		BlockAverage( final RandomAccessibleInterval< UnsignedShortType > input, final RandomAccessibleInterval< UnsignedShortType > output, final short[] outputData, final int[] factor )
+		{
+			this.input = input;
+			this.outputData = outputData;
+			this.factor = factor;
+			inputData = getShortArray( input );
+			inputSizeX = ( int ) input.dimension( 0 );
+			inputSizeY = ( int ) input.dimension( 1 );
+			outputSizeX = ( int ) output.dimension( 0 );
+			outputSizeY = ( int ) output.dimension( 1 );
+			inputMinX = input.min( 0 );
+			inputMinY = input.min( 1 );
+
+			xIndex = new int[ outputSizeX * factor[ 0 ] ];
+			for ( int i = 0; i < xIndex.length; ++i )
+				xIndex[ i ] = ( int ) ( clamp( output.min( 0 ) * factor[ 0 ] + i, input.min( 0 ), input.max( 0 ) ) - input.min( 0 ) );
+			yIndex = new int[ outputSizeY * factor[ 1 ] ];
+			for ( int i = 0; i < yIndex.length; ++i )
+				yIndex[ i ] = ( int ) ( clamp( output.min( 1 ) * factor[ 1 ] + i, input.min( 1 ), input.max( 1 ) ) - input.min( 1 ) );
+			zIndex = new long[ ( int ) output.dimension( 2 ) * factor[ 2 ] ];
+			for ( int i = 0; i < zIndex.length; ++i )
+				zIndex[ i ] = clamp( output.min( 2 ) * factor[ 2 ] + i, input.min( 2 ), input.max( 2 ) ) - input.min( 2 );
+
+			blockSize = ( long ) factor[ 0 ] * factor[ 1 ] * factor[ 2 ];
+		}
+
+		private static long clamp( final long x, final long min, final long max )
+		{
+			return x < min ? min : ( x > max ? max : x );
+		}
+
+		/**
+		 * Compute output slices {@code zMin} (inclusive) to {@code zMax}
+		 * (exclusive).
+		 */
+		void run( final int zMin, final int zMax )
+		{
+			final int fx = factor[ 0 ];
+			final int fy = factor[ 1 ];
+			final int fz = factor[ 2 ];
+			final int inputPlaneSize = inputSizeX * inputSizeY;
+			final int outputPlaneSize = outputSizeX * outputSizeY;
+			final long[] sums = new long[ outputPlaneSize ];
+			final short[] planeBuffer = inputData == null ? new short[ inputPlaneSize ] : null;
+			for ( int oz = zMin; oz < zMax; ++oz )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					return;
+				for ( int k = 0; k < fz; ++k )
+				{
+					final short[] plane;
+					final int planeOffset;
+					final long iz = zIndex[ oz * fz + k ];
+					if ( inputData == null )
+					{
+						copyPlane( iz + input.min( 2 ), planeBuffer );
+						plane = planeBuffer;
+						planeOffset = 0;
+					}
+					else
+					{
+						plane = inputData;
+						planeOffset = ( int ) ( iz * inputPlaneSize );
+					}
+					for ( int oy = 0; oy < outputSizeY; ++oy )
+					{
+						final int sumsOffset = oy * outputSizeX;
+						for ( int j = 0; j < fy; ++j )
+						{
+							final int row = planeOffset + yIndex[ oy * fy + j ] * inputSizeX;
+							int xi = 0;
+							for ( int ox = 0; ox < outputSizeX; ++ox )
+							{
+								int sum = 0;
+								for ( int i = 0; i < fx; ++i )
+									sum += plane[ row + xIndex[ xi++ ] ] & 0xffff;
+								sums[ sumsOffset + ox ] += sum;
+							}
+						}
+					}
+				}
+
+				// round to nearest, like UnsignedShortType.setReal()
+				final int outputOffset = oz * outputPlaneSize;
+				for ( int i = 0; i < outputPlaneSize; ++i )
+				{
+					outputData[ outputOffset + i ] = ( short ) ( ( 2 * sums[ i ] + blockSize ) / ( 2 * blockSize ) );
+					sums[ i ] = 0;
+				}
+			}
+		}
+
+		/**
+		 * Copy the z-plane at (absolute) coordinate {@code z} of the input
+		 * into {@code plane}.
+		 */
+		private void copyPlane( final long z, final short[] plane )
+		{
+			final long[] min = new long[] { inputMinX, inputMinY, z };
+			final long[] max = new long[] { inputMinX + inputSizeX - 1, inputMinY + inputSizeY - 1, z };
+			final Cursor< UnsignedShortType > c = Views.flatIterable( Views.interval( input, new FinalInterval( min, max ) ) ).cursor();
+			int i = 0;
+			while ( c.hasNext() )
+				plane[ i++ ] = ( short ) c.next().get();
+		}
+	}
 }
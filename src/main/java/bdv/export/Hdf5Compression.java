@@ -0,0 +1,60 @@
+package bdv.export;
+
+import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+
+/**
+ * Compression of the chunked image datasets written by
+ * {@link WriteSequenceToHdf5}. Compressed chunks are decompressed by the hdf5
+ * library when a block is read, i.e., on the fetcher threads of the cache.
+ */
+public enum Hdf5Compression
+{
+	/**
+	 * No compression (lossless scale-offset filter only).
+	 */
+	NONE( "none", HDF5IntStorageFeatures.INT_AUTO_SCALING ),
+
+	/**
+	 * Lossless scale-offset filter followed by deflate (gzip).
+	 */
+	DEFLATE( "deflate", HDF5IntStorageFeatures.INT_AUTO_SCALING_DEFLATE ),
+
+	/**
+	 * Byte shuffle followed by deflate (gzip). Shuffling groups the high and
+	 * low bytes of the uint16 values, which usually compresses better.
+	 */
+	SHUFFLE_DEFLATE( "shuffle + deflate", HDF5IntStorageFeatures.INT_SHUFFLE_DEFLATE );
+
+	private final String description;
+
+	private final HDF5IntStorageFeatures storageFeatures;
+
+	private Hdf5Compression( final String description, final HDF5IntStorageFeatures storageFeatures )
+	{
+		this.description = description;
+		this.storageFeatures = storageFeatures;
+	}
+
+	public String getDescription()
+	{
+		return description;
+	}
+
+	public HDF5IntStorageFeatures getStorageFeatures()
+	{
+		return storageFeatures;
+	}
+
+	/**
+	 * Get the descriptions of all values, e.g., for a choice in a dialog. The
+	 * index of the description is the {@link #ordinal()} of the value.
+	 */
+	public static String[] getDescriptions()
+	{
+		final Hdf5Compression[] values = values();
+		final String[] descriptions = new String[ values.length ];
+		for ( int i = 0; i < values.length; ++i )
+			descriptions[ i ] = values[ i ].getDescription();
+		return descriptions;
+	}
+}
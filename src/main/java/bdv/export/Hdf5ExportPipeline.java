@@ -0,0 +1,522 @@
+package bdv.export;
+
+import static bdv.img.hdf5.Util.reorder;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.spim.data.ImgLoader;
+import mpicbg.spim.data.SequenceDescription;
+import mpicbg.spim.data.View;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+import bdv.img.hdf5.Partition;
+import bdv.img.hdf5.Util;
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+
+/**
+ * Writes the image data of a hdf5 partition file (see
+ * {@link WriteSequenceToHdf5#writeHdf5PartitionFile(SequenceDescription, ArrayList, ArrayList, Partition, Hdf5Compression, int, boolean, ProgressWriter)})
+ * in a pipeline of three stages:
+ * <ol>
+ * <li>A loader thread loads the source image of the next view while the
+ * current view is processed.</li>
+ * <li>The mipmap levels of the current view are downsampled, and their cells
+ * are extracted by a pool of worker threads.</li>
+ * <li>The calling thread creates the datasets and writes the cells to the hdf5
+ * file.</li>
+ * </ol>
+ * At most {@link #MAX_VIEWS_IN_FLIGHT} views (the one being loaded included)
+ * are held in memory at any time. A view, its mipmap levels, and its
+ * extracted cells are released only after its last cell has been written, and
+ * loading of the next view waits for that. So, if writing is slower than
+ * loading and downsampling, the whole pipeline is throttled to the speed of
+ * writing.
+ * Progress is reported to the {@link ProgressWriter} by the writing thread.
+ */
+class Hdf5ExportPipeline
+{
+	/**
+	 * Maximum number of extracted cells waiting to be written.
+	 */
+	private static final int WRITE_QUEUE_CAPACITY = 256;
+
+	/**
+	 * Maximum number of views that are loaded, downsampled, or waiting for
+	 * their cells to be written at the same time.
+	 */
+	private static final int MAX_VIEWS_IN_FLIGHT = 2;
+
+	/**
+	 * Counts the cells of a view that have not been written yet. The view is
+	 * released (its permit in {@link Hdf5ExportPipeline#viewsInFlight} is
+	 * returned) when the count drops to zero. The count starts at one for the
+	 * producer, which releases it after all cells of the view have been
+	 * submitted, so that the view is not released while cells of later levels
+	 * are still being submitted.
+	 */
+	private class ViewInFlight
+	{
+		private final AtomicInteger numPending = new AtomicInteger( 1 );
+
+		void cellSubmitted()
+		{
+			numPending.incrementAndGet();
+		}
+
+		void done()
+		{
+			if ( numPending.decrementAndGet() == 0 )
+				viewsInFlight.release();
+		}
+	}
+
+	/**
+	 * Something to be done by the writing thread.
+	 */
+	private static abstract class WriteItem
+	{
+		/**
+		 * @return whether this completes a task for the {@link ProgressWriter}.
+		 */
+		abstract boolean write( final IHDF5Writer hdf5Writer );
+	}
+
+	/**
+	 * Written cells of one mipmap level. This is only accessed by the writing
+	 * thread.
+	 */
+	private static class Level
+	{
+		int numCellsRemaining;
+
+		Level( final int numCells )
+		{
+			numCellsRemaining = numCells;
+		}
+	}
+
+	private static class ViewLoaded extends WriteItem
+	{
+		@Override
+		boolean write( final IHDF5Writer hdf5Writer )
+		{
+			return true;
+		}
+	}
+
+	private static class CreateDataset extends WriteItem
+	{
+		private final String groupPath;
+
+		private final String path;
+
+		private final long[] dimensions;
+
+		private final int[] cellDimensions;
+
+		private final Hdf5Compression compression;
+
+		CreateDataset( final String groupPath, final String path, final long[] dimensions, final int[] cellDimensions, final Hdf5Compression compression )
+		{
+			this.groupPath = groupPath;
+			this.path = path;
+			this.dimensions = dimensions.clone();
+			this.cellDimensions = cellDimensions;
+			this.compression = compression;
+		}
+
+		@Override
+		boolean write( final IHDF5Writer hdf5Writer )
+		{
+			hdf5Writer.createGroup( groupPath );
+			hdf5Writer.createShortMDArray( path, reorder( dimensions ), reorder( cellDimensions ), compression.getStorageFeatures() );
+			return false;
+		}
+	}
+
+	private static class WriteCell extends WriteItem
+	{
+		private final String path;
+
+		private final MDShortArray array;
+
+		private final long[] cellMinRM;
+
+		private final Level level;
+
+		private final ViewInFlight view;
+
+		WriteCell( final String path, final MDShortArray array, final long[] cellMinRM, final Level level, final ViewInFlight view )
+		{
+			this.path = path;
+			this.array = array;
+			this.cellMinRM = cellMinRM;
+			this.level = level;
+			this.view = view;
+		}
+
+		@Override
+		boolean write( final IHDF5Writer hdf5Writer )
+		{
+			hdf5Writer.writeShortMDArrayBlockWithOffset( path, array, cellMinRM );
+			view.done();
+			return --level.numCellsRemaining == 0;
+		}
+	}
+
+	private static class Failure extends WriteItem
+	{
+		private final Throwable cause;
+
+		Failure( final Throwable cause )
+		{
+			this.cause = cause;
+		}
+
+		@Override
+		boolean write( final IHDF5Writer hdf5Writer )
+		{
+			throw new RuntimeException( cause );
+		}
+	}
+
+	private static final WriteItem END = new ViewLoaded();
+
+	private final SequenceDescription seq;
+
+	private final ArrayList< int[][] > perSetupResolutions;
+
+	private final ArrayList< int[][] > perSetupSubdivisions;
+
+	private final Partition partition;
+
+	private final Hdf5Compression compression;
+
+	/**
+	 * Whether to compute each mipmap level from the previous one, instead of
+	 * from the full resolution image.
+	 */
+	private final boolean incremental;
+
+	/**
+	 * number of threads for cell extraction and downsampling.
+	 */
+	private final int numThreads;
+
+	private final ProgressWriter progressWriter;
+
+	private final int numTasks;
+
+	private int numCompletedTasks;
+
+	private final BlockingQueue< WriteItem > writeQueue;
+
+	private final ExecutorService loader;
+
+	private final ExecutorService workers;
+
+	/**
+	 * One permit for every view that may be in flight, see
+	 * {@link #MAX_VIEWS_IN_FLIGHT}.
+	 */
+	private final Semaphore viewsInFlight;
+
+	/**
+	 * @param numThreads
+	 *            number of worker threads for cell extraction and
+	 *            downsampling.
+	 * @param incremental
+	 *            whether to compute each mipmap level from the previous level
+	 *            (by the relative subsampling factors), where possible.
+	 *            Otherwise, every level is computed from the full resolution
+	 *            image.
+	 * @param numTasks
+	 *            total number of tasks for the {@link ProgressWriter}.
+	 * @param numCompletedTasks
+	 *            number of tasks completed before the pipeline is run.
+	 */
+	Hdf5ExportPipeline( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final Partition partition, final Hdf5Compression compression, final int numThreads, final boolean incremental, final ProgressWriter progressWriter, final int numTasks, final int numCompletedTasks )
+	{
+		this.seq = seq;
+		this.perSetupResolutions = perSetupResolutions;
+		this.perSetupSubdivisions = perSetupSubdivisions;
+		this.partition = partition;
+		this.compression = compression;
+		this.incremental = incremental;
+		this.numThreads = Math.max( 1, numThreads );
+		this.progressWriter = progressWriter;
+		this.numTasks = numTasks;
+		this.numCompletedTasks = numCompletedTasks;
+		writeQueue = new ArrayBlockingQueue< WriteItem >( WRITE_QUEUE_CAPACITY );
+		loader = Executors.newSingleThreadExecutor();
+		workers = Executors.newFixedThreadPool( this.numThreads );
+		viewsInFlight = new Semaphore( MAX_VIEWS_IN_FLIGHT );
+	}
+
+	/**
+	 * Run the pipeline, writing to the given hdf5 writer from the calling
+	 * thread. Returns when all image data has been written.
+	 *
+	 * @throws RuntimeException
+	 *             if loading, downsampling, or writing failed.
+	 */
+	void run( final IHDF5Writer hdf5Writer )
+	{
+		final Thread producer = new Thread( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					produce();
+					writeQueue.put( END );
+				}
+				catch ( final InterruptedException e )
+				{}
+				catch ( final Throwable t )
+				{
+					fail( t );
+				}
+			}
+		}, "hdf5 export" );
+		producer.setDaemon( true );
+		producer.start();
+		try
+		{
+			while ( true )
+			{
+				final WriteItem item = writeQueue.take();
+				if ( item == END )
+					break;
+				if ( item.write( hdf5Writer ) )
+					progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		finally
+		{
+			producer.interrupt();
+			loader.shutdownNow();
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Pass a failure to the writing thread.
+	 */
+	private void fail( final Throwable t )
+	{
+		try
+		{
+			writeQueue.put( new Failure( t ) );
+		}
+		catch ( final InterruptedException e )
+		{}
+	}
+
+	private void produce() throws Exception
+	{
+		final int timepointOffsetSeq = partition.getTimepointOffset() + partition.getTimepointStart();
+		final int timepointOffsetFile = partition.getTimepointStart();
+		final int numTimepoints = partition.getTimepointLength();
+		final int setupOffsetSeq = partition.getSetupOffset() + partition.getSetupStart();
+		final int setupOffsetFile = partition.getSetupStart();
+		final int numSetups = partition.getSetupLength();
+		final int numViews = numTimepoints * numSetups;
+
+		if ( numViews == 0 )
+			return;
+
+		viewsInFlight.acquire();
+		Future< RandomAccessibleInterval< UnsignedShortType > > nextImg = loadView( timepointOffsetSeq, setupOffsetSeq );
+		for ( int i = 0; i < numViews; ++i )
+		{
+			final int timepoint = i / numSetups;
+			final int setup = i % numSetups;
+			final int timepointSeq = timepoint + timepointOffsetSeq;
+			final int timepointFile = timepoint + timepointOffsetFile;
+			final int setupSeq = setup + setupOffsetSeq;
+			final int setupFile = setup + setupOffsetFile;
+			final int[][] resolutions = perSetupResolutions.get( setupSeq );
+			final int[][] subdivisions = perSetupSubdivisions.get( setupSeq );
+			final int numLevels = resolutions.length;
+
+			if ( setup == 0 )
+				progressWriter.out().printf( "proccessing timepoint %d / %d\n", timepoint + 1, numTimepoints );
+			progressWriter.out().printf( "proccessing setup %d / %d\n", setup + 1, numSetups );
+			final RandomAccessibleInterval< UnsignedShortType > img = nextImg.get();
+			final ViewInFlight viewInFlight = new ViewInFlight();
+			if ( i + 1 < numViews )
+			{
+				// wait until an earlier view has been written completely
+				viewsInFlight.acquire();
+				nextImg = loadView( ( i + 1 ) / numSetups + timepointOffsetSeq, ( i + 1 ) % numSetups + setupOffsetSeq );
+			}
+			writeQueue.put( new ViewLoaded() );
+
+			// In incremental mode, find the relative factors with respect to
+			// the previous level.
+			final int[][] relativeFactors = new int[ numLevels ][];
+			if ( incremental )
+				for ( int level = 1; level < numLevels; ++level )
+					relativeFactors[ level ] = getRelativeFactor( resolutions[ level - 1 ], resolutions[ level ] );
+
+			final int n = 3;
+			final long[] dimensions = new long[ n ];
+			RandomAccessibleInterval< UnsignedShortType > previousLevel = null;
+			for ( int level = 0; level < numLevels; ++level )
+			{
+				progressWriter.out().println( "writing level " + level );
+				final RandomAccessibleInterval< UnsignedShortType > input;
+				final int[] factor;
+				if ( relativeFactors[ level ] != null )
+				{
+					input = previousLevel;
+					factor = relativeFactors[ level ];
+				}
+				else
+				{
+					input = img;
+					factor = resolutions[ level ];
+				}
+				input.dimensions( dimensions );
+				final RandomAccessibleInterval< UnsignedShortType > source;
+				if ( factor[ 0 ] == 1 && factor[ 1 ] == 1 && factor[ 2 ] == 1 )
+					source = input;
+				else
+				{
+					for ( int d = 0; d < n; ++d )
+						dimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
+
+					final Img< UnsignedShortType > downsampled = ArrayImgs.unsignedShorts( dimensions );
+					Downsample.downsample( input, downsampled, factor, numThreads );
+					source = downsampled;
+				}
+				previousLevel = source;
+
+				final int[] cellDimensions = subdivisions[ level ];
+				final String path = Util.getCellsPath( timepointFile, setupFile, level );
+				writeQueue.put( new CreateDataset( Util.getGroupPath( timepointFile, setupFile, level ), path, dimensions, cellDimensions, compression ) );
+				submitCells( source, dimensions, cellDimensions, path, viewInFlight );
+			}
+			viewInFlight.done();
+		}
+
+		workers.shutdown();
+		workers.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+	}
+
+	/**
+	 * Get the subsampling factors of a mipmap level relative to the previous
+	 * level.
+	 *
+	 * @return the relative factors, or null if the factors of the level are
+	 *         not integer multiples of the factors of the previous level.
+	 */
+	static int[] getRelativeFactor( final int[] previousFactor, final int[] factor )
+	{
+		final int[] relative = new int[ factor.length ];
+		for ( int d = 0; d < factor.length; ++d )
+		{
+			if ( factor[ d ] % previousFactor[ d ] != 0 )
+				return null;
+			relative[ d ] = factor[ d ] / previousFactor[ d ];
+		}
+		return relative;
+	}
+
+	private Future< RandomAccessibleInterval< UnsignedShortType > > loadView( final int timepointSeq, final int setupSeq )
+	{
+		final ImgLoader imgLoader = seq.imgLoader;
+		return loader.submit( new Callable< RandomAccessibleInterval< UnsignedShortType > >()
+		{
+			@Override
+			public RandomAccessibleInterval< UnsignedShortType > call()
+			{
+				final View view = new View( seq, timepointSeq, setupSeq, null );
+				return imgLoader.getUnsignedShortImage( view );
+			}
+		} );
+	}
+
+	/**
+	 * Submit extraction tasks for all cells of one mipmap level to the worker
+	 * threads.
+	 */
+	private void submitCells( final RandomAccessible< UnsignedShortType > source, final long[] dimensions, final int[] cellDimensions, final String path, final ViewInFlight view )
+	{
+		final int n = 3;
+		final long[] numCells = new long[ n ];
+		final int[] borderSize = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+			borderSize[ d ] = ( int ) ( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
+		}
+		final Level level = new Level( ( int ) ( numCells[ 0 ] * numCells[ 1 ] * numCells[ 2 ] ) );
+
+		final LocalizingZeroMinIntervalIterator i = new LocalizingZeroMinIntervalIterator( numCells );
+		final long[] currentCellPos = new long[ n ];
+		while ( i.hasNext() )
+		{
+			i.fwd();
+			i.localize( currentCellPos );
+			final long[] currentCellMin = new long[ n ];
+			final long[] currentCellMax = new long[ n ];
+			final long[] currentCellDim = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
+				currentCellDim[ d ] = ( currentCellPos[ d ] + 1 == numCells[ d ] ) ? borderSize[ d ] : cellDimensions[ d ];
+				currentCellMax[ d ] = currentCellMin[ d ] + currentCellDim[ d ] - 1;
+			}
+			view.cellSubmitted();
+			workers.execute( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						final ArrayImg< UnsignedShortType, ? > cell = ArrayImgs.unsignedShorts( currentCellDim );
+						final Cursor< UnsignedShortType > c = Views.flatIterable( Views.interval( source, new FinalInterval( currentCellMin, currentCellMax ) ) ).cursor();
+						for ( final UnsignedShortType t : cell )
+							t.set( c.next() );
+
+						final MDShortArray array = new MDShortArray( ( ( ShortArray ) cell.update( null ) ).getCurrentStorageArray(), reorder( currentCellDim ) );
+						writeQueue.put( new WriteCell( path, array, reorder( currentCellMin ), level, view ) );
+					}
+					catch ( final InterruptedException e )
+					{}
+					catch ( final Throwable t )
+					{
+						fail( t );
+					}
+				}
+			} );
+		}
+	}
+}
@@ -1,33 +1,17 @@
 package bdv.export;
 
-import static bdv.img.hdf5.Util.reorder;
-
 import java.io.File;
 import java.util.ArrayList;
 
 import mpicbg.spim.data.ImgLoader;
 import mpicbg.spim.data.SequenceDescription;
-import mpicbg.spim.data.View;
 import mpicbg.spim.data.ViewSetup;
 import mpicbg.spim.data.XmlHelpers;
-import net.imglib2.Cursor;
-import net.imglib2.FinalInterval;
-import net.imglib2.RandomAccessible;
-import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImg;
-import net.imglib2.img.array.ArrayImgs;
-import net.imglib2.img.basictypeaccess.array.ShortArray;
 import net.imglib2.img.cell.CellImg;
-import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
-import net.imglib2.type.numeric.integer.UnsignedShortType;
-import net.imglib2.view.Views;
 import bdv.img.hdf5.Hdf5ImageLoader;
 import bdv.img.hdf5.Partition;
 import bdv.img.hdf5.Util;
-import ch.systemsx.cisd.base.mdarray.MDShortArray;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
-import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 
 /**
@@ -154,18 +138,71 @@ public class WriteSequenceToHdf5
 	 * @param progressWriter
 	 *            completion ratio and status output will be directed here.
 	 */
-	public static void writeHdf5PartitionFile( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final Partition partition, ProgressWriter progressWriter )
+	public static void writeHdf5PartitionFile( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final Partition partition, final ProgressWriter progressWriter )
+	{
+		writeHdf5PartitionFile( seq, perSetupResolutions, perSetupSubdivisions, partition, Hdf5Compression.NONE, progressWriter );
+	}
+
+	/**
+	 * Create a hdf5 partition file containing image data for a subset of views
+	 * and timepoints in a chunked, mipmaped representation. This is the same
+	 * as
+	 * {@link WriteSequenceToHdf5#writeHdf5PartitionFile(SequenceDescription, ArrayList, ArrayList, Partition, ProgressWriter)}
+	 * except that the chunks are compressed as specified.
+	 *
+	 * @param compression
+	 *            how to compress the chunks of the image datasets.
+	 */
+	public static void writeHdf5PartitionFile( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final Partition partition, final Hdf5Compression compression, final ProgressWriter progressWriter )
+	{
+		writeHdf5PartitionFile( seq, perSetupResolutions, perSetupSubdivisions, partition, compression, Runtime.getRuntime().availableProcessors(), progressWriter );
+	}
+
+	/**
+	 * Create a hdf5 partition file containing image data for a subset of views
+	 * and timepoints in a chunked, mipmaped representation. This is the same
+	 * as
+	 * {@link WriteSequenceToHdf5#writeHdf5PartitionFile(SequenceDescription, ArrayList, ArrayList, Partition, Hdf5Compression, ProgressWriter)}
+	 * except that the number of threads is specified.
+	 *
+	 * The export runs as a pipeline: The source image of the next view is
+	 * loaded while the current view is processed, the cells of each mipmap
+	 * level are extracted by <code>numThreads</code> worker threads, and the
+	 * calling thread writes them to the hdf5 file.
+	 *
+	 * @param numThreads
+	 *            how many threads to use for extracting cells.
+	 */
+	public static void writeHdf5PartitionFile( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final Partition partition, final Hdf5Compression compression, final int numThreads, final ProgressWriter progressWriter )
+	{
+		writeHdf5PartitionFile( seq, perSetupResolutions, perSetupSubdivisions, partition, compression, numThreads, false, progressWriter );
+	}
+
+	/**
+	 * Create a hdf5 partition file containing image data for a subset of views
+	 * and timepoints in a chunked, mipmaped representation. This is the same
+	 * as
+	 * {@link WriteSequenceToHdf5#writeHdf5PartitionFile(SequenceDescription, ArrayList, ArrayList, Partition, Hdf5Compression, int, ProgressWriter)}
+	 * except that the mipmap pyramid can be computed incrementally.
+	 *
+	 * @param incremental
+	 *            if true, each mipmap level is downsampled from the previous
+	 *            level by the relative subsampling factors, if these are
+	 *            integers. This is much cheaper for deep pyramids, and allows
+	 *            the full resolution image to be released early. (At the
+	 *            image border, results may differ slightly from downsampling
+	 *            the full resolution image.) If false, each level is
+	 *            downsampled from the full resolution image.
+	 */
+	public static void writeHdf5PartitionFile( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final Partition partition, final Hdf5Compression compression, final int numThreads, final boolean incremental, ProgressWriter progressWriter )
 	{
 		if ( progressWriter == null )
 			progressWriter = new ProgressWriterConsole();
 
-		final int timepointOffsetSeq = partition.getTimepointOffset() + partition.getTimepointStart();
-		final int timepointOffsetFile = partition.getTimepointStart();
 		final int numTimepoints = partition.getTimepointLength();
 		final int setupOffsetSeq = partition.getSetupOffset() + partition.getSetupStart();
 		final int setupOffsetFile = partition.getSetupStart();
 		final int numSetups = partition.getSetupLength();
-		final ImgLoader imgLoader = seq.imgLoader;
 
 		// for progressWriter
 		// initial 1 is for writing resolutions etc.
@@ -213,91 +250,14 @@ public class WriteSequenceToHdf5
 		progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
 
 		// write image data for all views to the HDF5 file
-		final int n = 3;
-		final long[] dimensions = new long[ n ];
-		for ( int timepoint = 0; timepoint < numTimepoints; ++timepoint )
+		try
 		{
-			final int timepointSeq = timepoint + timepointOffsetSeq;
-			final int timepointFile = timepoint + timepointOffsetFile;
-			progressWriter.out().printf( "proccessing timepoint %d / %d\n", timepoint + 1, numTimepoints );
-			for ( int setup = 0; setup < numSetups; ++setup )
-			{
-				final int setupSeq = setup + setupOffsetSeq;
-				final int setupFile = setup + setupOffsetFile;
-				final int[][] resolutions = perSetupResolutions.get( setupSeq );
-				final int[][] subdivisions = perSetupSubdivisions.get( setupSeq );
-				final int numLevels = resolutions.length;
-
-				progressWriter.out().printf( "proccessing setup %d / %d\n", setup + 1, numSetups );
-				final View view = new View( seq, timepointSeq, setupSeq, null );
-				progressWriter.out().println( "loading image" );
-				final RandomAccessibleInterval< UnsignedShortType > img = imgLoader.getUnsignedShortImage( view );
-				progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
-
-				for ( int level = 0; level < numLevels; ++level )
-				{
-					progressWriter.out().println( "writing level " + level );
-					img.dimensions( dimensions );
-					final RandomAccessible< UnsignedShortType > source;
-					final int[] factor = resolutions[ level ];
-					if ( factor[ 0 ] == 1 && factor[ 1 ] == 1 && factor[ 2 ] == 1 )
-						source = img;
-					else
-					{
-						for ( int d = 0; d < n; ++d )
-							dimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
-
-						final Img< UnsignedShortType > downsampled = ArrayImgs.unsignedShorts( dimensions );
-						Downsample.downsample( Views.extendBorder( img ), downsampled, factor );
-						source = downsampled;
-					}
-
-					final int[] cellDimensions = subdivisions[ level ];
-					hdf5Writer.createGroup( Util.getGroupPath( timepointFile, setupFile, level ) );
-					final String path = Util.getCellsPath( timepointFile, setupFile, level );
-					hdf5Writer.createShortMDArray( path, reorder( dimensions ), reorder( cellDimensions ), HDF5IntStorageFeatures.INT_AUTO_SCALING );
-
-					final long[] numCells = new long[ n ];
-					final int[] borderSize = new int[ n ];
-					for ( int d = 0; d < n; ++d )
-					{
-						numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
-						borderSize[ d ] = ( int ) ( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
-					}
-
-					final LocalizingZeroMinIntervalIterator i = new LocalizingZeroMinIntervalIterator( numCells );
-					final long[] currentCellMin = new long[ n ];
-					final long[] currentCellMax = new long[ n ];
-					final long[] currentCellDim = new long[ n ];
-					final long[] currentCellPos = new long[ n ];
-					final long[] currentCellMinRM = new long[ n ];
-					final long[] currentCellDimRM = new long[ n ];
-					while ( i.hasNext() )
-					{
-						i.fwd();
-						i.localize( currentCellPos );
-						for ( int d = 0; d < n; ++d )
-						{
-							currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
-							currentCellDim[ d ] = ( currentCellPos[ d ] + 1 == numCells[ d ] ) ? borderSize[ d ] : cellDimensions[ d ];
-							currentCellMax[ d ] = currentCellMin[ d ] + currentCellDim[ d ] - 1;
-						}
-						reorder( currentCellMin, currentCellMinRM );
-						reorder( currentCellDim, currentCellDimRM );
-
-						final ArrayImg< UnsignedShortType, ? > cell = ArrayImgs.unsignedShorts( currentCellDim );
-						final Cursor< UnsignedShortType > c = Views.flatIterable( Views.interval( source, new FinalInterval( currentCellMin, currentCellMax ) ) ).cursor();
-						for ( final UnsignedShortType t : cell )
-							t.set( c.next() );
-
-						final MDShortArray array = new MDShortArray( ( ( ShortArray ) cell.update( null ) ).getCurrentStorageArray(), currentCellDimRM );
-						hdf5Writer.writeShortMDArrayBlockWithOffset( path, array, currentCellMinRM );
-					}
-					progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
-				}
-			}
+			new Hdf5ExportPipeline( seq, perSetupResolutions, perSetupSubdivisions, partition, compression, numThreads, incremental, progressWriter, numTasks, numCompletedTasks ).run( hdf5Writer );
+		}
+		finally
+		{
+			hdf5Writer.close();
 		}
-		hdf5Writer.close();
 	}
 
 	/**
@@ -322,9 +282,23 @@ public class WriteSequenceToHdf5
 	 *            completion ratio and status output will be directed here.
 	 */
 	public static void writeHdf5File( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final File hdf5File, final ProgressWriter progressWriter )
+	{
+		writeHdf5File( seq, perSetupResolutions, perSetupSubdivisions, hdf5File, Hdf5Compression.NONE, progressWriter );
+	}
+
+	/**
+	 * Create a hdf5 file containing image data from all views and all
+	 * timepoints in a chunked, mipmaped representation. This is the same as
+	 * {@link WriteSequenceToHdf5#writeHdf5File(SequenceDescription, ArrayList, ArrayList, File, ProgressWriter)}
+	 * except that the chunks are compressed as specified.
+	 *
+	 * @param compression
+	 *            how to compress the chunks of the image datasets.
+	 */
+	public static void writeHdf5File( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final File hdf5File, final Hdf5Compression compression, final ProgressWriter progressWriter )
 	{
 		final Partition partition = new Partition( hdf5File.getPath(), 0, 0, seq.numTimepoints(), 0, 0, seq.numViewSetups() );
-		writeHdf5PartitionFile( seq, perSetupResolutions, perSetupSubdivisions, partition, progressWriter );
+		writeHdf5PartitionFile( seq, perSetupResolutions, perSetupSubdivisions, partition, compression, progressWriter );
 	}
 
 	/**
@@ -352,6 +326,20 @@ public class WriteSequenceToHdf5
 	 *            completion ratio and status output will be directed here.
 	 */
 	public static void writeHdf5File( final SequenceDescription seq, final int[][] resolutions, final int[][] subdivisions, final File hdf5File, final ProgressWriter progressWriter )
+	{
+		writeHdf5File( seq, resolutions, subdivisions, hdf5File, Hdf5Compression.NONE, progressWriter );
+	}
+
+	/**
+	 * Create a hdf5 file containing image data from all views and all
+	 * timepoints in a chunked, mipmaped representation. This is the same as
+	 * {@link WriteSequenceToHdf5#writeHdf5File(SequenceDescription, int[][], int[][], File, ProgressWriter)}
+	 * except that the chunks are compressed as specified.
+	 *
+	 * @param compression
+	 *            how to compress the chunks of the image datasets.
+	 */
+	public static void writeHdf5File( final SequenceDescription seq, final int[][] resolutions, final int[][] subdivisions, final File hdf5File, final Hdf5Compression compression, final ProgressWriter progressWriter )
 	{
 		final int numSetups = seq.numViewSetups();
 		final ArrayList< int[][] > perSetupResolutions = new ArrayList< int[][] >();
@@ -361,6 +349,6 @@ public class WriteSequenceToHdf5
 			perSetupResolutions.add( resolutions );
 			perSetupSubdivisions.add( subdivisions );
 		}
-		writeHdf5File( seq, perSetupResolutions, perSetupSubdivisions, hdf5File, progressWriter );
+		writeHdf5File( seq, perSetupResolutions, perSetupSubdivisions, hdf5File, compression, progressWriter );
 	}
 }
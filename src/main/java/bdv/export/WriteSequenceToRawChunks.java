@@ -0,0 +1,201 @@
+package bdv.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import mpicbg.spim.data.ImgLoader;
+import mpicbg.spim.data.SequenceDescription;
+import mpicbg.spim.data.View;
+import mpicbg.spim.data.ViewSetup;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+import bdv.img.raw.RawChunkImageLoader;
+import bdv.img.raw.RawChunkIndex;
+
+/**
+ * Create a raw chunk store (see {@link RawChunkIndex}) containing image data
+ * from all views and all timepoints in a chunked, mipmaped representation.
+ * This is the counterpart of {@link WriteSequenceToHdf5} for the
+ * {@link RawChunkImageLoader}. Resolutions and subdivisions are specified in
+ * the same way.
+ */
+public class WriteSequenceToRawChunks
+{
+	/**
+	 * Create a raw chunk store containing image data from all views and all
+	 * timepoints in a chunked, mipmaped representation.
+	 *
+	 * @param seq
+	 *            description of the sequence to be stored. (The
+	 *            {@link SequenceDescription} contains the number of setups and
+	 *            timepoints as well as an {@link ImgLoader} that provides the
+	 *            image data, Registration information is not needed here, that
+	 *            will go into the accompanying xml).
+	 * @param perSetupResolutions
+	 *            this list of nested arrays contains per {@link ViewSetup}, per
+	 *            mipmap level, the subsampling factors.
+	 * @param perSetupSubdivisions
+	 *            this list of nested arrays contains per {@link ViewSetup}, per
+	 *            mipmap level, the subdivision block sizes.
+	 * @param directory
+	 *            directory to which the chunk store is written.
+	 * @param progressWriter
+	 *            completion ratio and status output will be directed here.
+	 */
+	public static void writeRawChunks( final SequenceDescription seq, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final File directory, ProgressWriter progressWriter ) throws IOException
+	{
+		if ( progressWriter == null )
+			progressWriter = new ProgressWriterConsole();
+
+		final int numTimepoints = seq.numTimepoints();
+		final int numSetups = seq.numViewSetups();
+		final ImgLoader imgLoader = seq.imgLoader;
+
+		// for progressWriter
+		// (numLevels + 1) is for writing each of the levels plus reading the source image
+		int numTasks = 0;
+		for ( int setup = 0; setup < numSetups; ++setup )
+		{
+			final int numLevels = perSetupResolutions.get( setup ).length;
+			numTasks += numTimepoints * ( numLevels + 1 );
+		}
+		int numCompletedTasks = 0;
+		progressWriter.setProgress( 0 );
+
+		final ArrayList< double[][] > perSetupMipmapResolutions = new ArrayList< double[][] >();
+		for ( int setup = 0; setup < numSetups; ++setup )
+		{
+			final int[][] resolutions = perSetupResolutions.get( setup );
+			final double[][] dres = new double[ resolutions.length ][];
+			for ( int l = 0; l < resolutions.length; ++l )
+			{
+				dres[ l ] = new double[ resolutions[ l ].length ];
+				for ( int d = 0; d < resolutions[ l ].length; ++d )
+					dres[ l ][ d ] = resolutions[ l ][ d ];
+			}
+			perSetupMipmapResolutions.add( dres );
+		}
+		final ByteOrder byteOrder = ByteOrder.nativeOrder();
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final RawChunkIndex index = new RawChunkIndex( directory, byteOrder, numTimepoints, perSetupMipmapResolutions, perSetupSubdivisions );
+
+		// write image data for all views
+		final int n = 3;
+		final long[] dimensions = new long[ n ];
+		for ( int timepoint = 0; timepoint < numTimepoints; ++timepoint )
+		{
+			progressWriter.out().printf( "proccessing timepoint %d / %d\n", timepoint + 1, numTimepoints );
+			for ( int setup = 0; setup < numSetups; ++setup )
+			{
+				final int[][] resolutions = perSetupResolutions.get( setup );
+				final int[][] subdivisions = perSetupSubdivisions.get( setup );
+				final int numLevels = resolutions.length;
+
+				progressWriter.out().printf( "proccessing setup %d / %d\n", setup + 1, numSetups );
+				final View view = new View( seq, timepoint, setup, null );
+				progressWriter.out().println( "loading image" );
+				final RandomAccessibleInterval< UnsignedShortType > img = imgLoader.getUnsignedShortImage( view );
+				progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
+
+				for ( int level = 0; level < numLevels; ++level )
+				{
+					progressWriter.out().println( "writing level " + level );
+					img.dimensions( dimensions );
+					final RandomAccessible< UnsignedShortType > source;
+					final int[] factor = resolutions[ level ];
+					if ( factor[ 0 ] == 1 && factor[ 1 ] == 1 && factor[ 2 ] == 1 )
+						source = img;
+					else
+					{
+						for ( int d = 0; d < n; ++d )
+							dimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
+
+						final Img< UnsignedShortType > downsampled = ArrayImgs.unsignedShorts( dimensions );
+						Downsample.downsample( img, downsampled, factor, numThreads );
+						source = downsampled;
+					}
+
+					index.setDimensions( timepoint, setup, level, dimensions );
+					writeChunks( source, dimensions, subdivisions[ level ], index.getChunksFile( timepoint, setup, level ), index.getChunkSlotSizeInBytes( setup, level ), byteOrder );
+					progressWriter.setProgress( ( double ) numCompletedTasks++ / numTasks );
+				}
+			}
+		}
+		index.write();
+		progressWriter.setProgress( 1 );
+	}
+
+	/**
+	 * Write all chunks of one image into a chunks file, each at the start of
+	 * its fixed-size slot. (Package-private for testing.)
+	 */
+	static void writeChunks( final RandomAccessible< UnsignedShortType > source, final long[] dimensions, final int[] cellDimensions, final File file, final long slotSizeInBytes, final ByteOrder byteOrder ) throws IOException
+	{
+		final int n = 3;
+		file.getParentFile().mkdirs();
+		if ( file.exists() )
+			file.delete();
+		final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+		try
+		{
+			final FileChannel channel = raf.getChannel();
+
+			final long[] numCells = new long[ n ];
+			final int[] borderSize = new int[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+				borderSize[ d ] = ( int ) ( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
+			}
+			raf.setLength( numCells[ 0 ] * numCells[ 1 ] * numCells[ 2 ] * slotSizeInBytes );
+
+			final ByteBuffer buffer = ByteBuffer.allocateDirect( ( int ) slotSizeInBytes ).order( byteOrder );
+			final LocalizingZeroMinIntervalIterator i = new LocalizingZeroMinIntervalIterator( numCells );
+			final long[] currentCellMin = new long[ n ];
+			final long[] currentCellMax = new long[ n ];
+			final long[] currentCellDim = new long[ n ];
+			final long[] currentCellPos = new long[ n ];
+			long chunkIndex = 0;
+			while ( i.hasNext() )
+			{
+				i.fwd();
+				i.localize( currentCellPos );
+				for ( int d = 0; d < n; ++d )
+				{
+					currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
+					currentCellDim[ d ] = ( currentCellPos[ d ] + 1 == numCells[ d ] ) ? borderSize[ d ] : cellDimensions[ d ];
+					currentCellMax[ d ] = currentCellMin[ d ] + currentCellDim[ d ] - 1;
+				}
+
+				buffer.clear();
+				final Cursor< UnsignedShortType > c = Views.flatIterable( Views.interval( source, new FinalInterval( currentCellMin, currentCellMax ) ) ).cursor();
+				while ( c.hasNext() )
+					buffer.putShort( ( short ) c.next().get() );
+				buffer.flip();
+
+				// LocalizingZeroMinIntervalIterator iterates cells in flat
+				// order, so chunkIndex is the flat cell index.
+				long position = chunkIndex * slotSizeInBytes;
+				while ( buffer.hasRemaining() )
+					position += channel.write( buffer, position );
+				++chunkIndex;
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+}
@@ -21,6 +21,7 @@ import mpicbg.spim.data.ViewRegistration;
 import mpicbg.spim.data.ViewRegistrations;
 import mpicbg.spim.data.ViewSetup;
 import net.imglib2.realtransform.AffineTransform3D;
+import bdv.export.Hdf5Compression;
 import bdv.export.ProgressWriter;
 import bdv.export.SubTaskProgressWriter;
 import bdv.export.WriteSequenceToHdf5;
@@ -118,7 +119,7 @@ public class ExportImagePlusPlugIn implements PlugIn
 		final ArrayList< Integer > timepoints = new ArrayList< Integer >( numTimepoints );
 		for ( int t = 0; t < numTimepoints; ++t )
 			timepoints.add( t );
-		WriteSequenceToHdf5.writeHdf5File( new SequenceDescription( setups, timepoints, null, imgLoader ), resolutions, subdivisions, hdf5File, new SubTaskProgressWriter( progressWriter, 0, 0.95 ) );
+		WriteSequenceToHdf5.writeHdf5File( new SequenceDescription( setups, timepoints, null, imgLoader ), resolutions, subdivisions, hdf5File, params.compression, new SubTaskProgressWriter( progressWriter, 0, 0.95 ) );
 
 		// write xml sequence description
 		final Hdf5ImageLoader hdf5Loader = new Hdf5ImageLoader( hdf5File, null );
@@ -157,7 +158,9 @@ public class ExportImagePlusPlugIn implements PlugIn
 
 		final double rangeMax;
 
-		public Parameters( final int[][] resolutions, final int[][] subdivisions, final File seqFile, final File hdf5File, final MinMaxOption minMaxOption, final double rangeMin, final double rangeMax )
+		final Hdf5Compression compression;
+
+		public Parameters( final int[][] resolutions, final int[][] subdivisions, final File seqFile, final File hdf5File, final MinMaxOption minMaxOption, final double rangeMin, final double rangeMax, final Hdf5Compression compression )
 		{
 			this.resolutions = resolutions;
 			this.subdivisions = subdivisions;
@@ -166,6 +169,7 @@ public class ExportImagePlusPlugIn implements PlugIn
 			this.minMaxOption = minMaxOption;
 			this.rangeMin = rangeMin;
 			this.rangeMax = rangeMax;
+			this.compression = compression;
 		}
 	}
 
@@ -173,6 +177,8 @@ public class ExportImagePlusPlugIn implements PlugIn
 
 	static String lastChunkSizes = "{32,32,4}, {16,16,8}, {8,8,8}";
 
+	static int lastCompressionChoice = 0;
+
 	static int lastMinMaxChoice = 2;
 
 	static double lastMin = 0;
@@ -195,6 +201,8 @@ public class ExportImagePlusPlugIn implements PlugIn
 
 			gd.addStringField( "Subsampling factors", lastSubsampling, 25 );
 			gd.addStringField( "Hdf5 chunk sizes", lastChunkSizes, 25 );
+			final String[] compressionChoices = Hdf5Compression.getDescriptions();
+			gd.addChoice( "Hdf5 compression", compressionChoices, compressionChoices[ lastCompressionChoice ] );
 
 			gd.addMessage( "" );
 			final String[] minMaxChoices = new String[] { "Use ImageJ's current min/max setting", "Compute min/max of the (hyper-)stack", "Use values specified below" };
@@ -236,6 +244,7 @@ public class ExportImagePlusPlugIn implements PlugIn
 
 			lastSubsampling = gd.getNextString();
 			lastChunkSizes = gd.getNextString();
+			lastCompressionChoice = gd.getNextChoiceIndex();
 			lastMinMaxChoice = gd.getNextChoiceIndex();
 			lastMin = gd.getNextNumber();
 			lastMax = gd.getNextNumber();
@@ -281,7 +290,9 @@ public class ExportImagePlusPlugIn implements PlugIn
 			final String hdf5Filename = seqFilename.substring( 0, seqFilename.length() - 4 ) + ".h5";
 			final File hdf5File = new File( hdf5Filename );
 
-			return new Parameters( resolutions, subdivisions, seqFile, hdf5File, minMaxOption, lastMin, lastMax );
+			final Hdf5Compression compression = Hdf5Compression.values()[ lastCompressionChoice ];
+
+			return new Parameters( resolutions, subdivisions, seqFile, hdf5File, minMaxOption, lastMin, lastMax, compression );
 		}
 	}
 }
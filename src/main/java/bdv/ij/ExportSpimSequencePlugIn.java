@@ -26,6 +26,7 @@ import mpicbg.spim.io.SPIMConfiguration;
 import mpicbg.spim.io.TextFileAccess;
 import mpicbg.spim.registration.ViewStructure;
 import spimopener.SPIMExperiment;
+import bdv.export.Hdf5Compression;
 import bdv.export.ProgressWriter;
 import bdv.export.SubTaskProgressWriter;
 import bdv.export.WriteSequenceToHdf5;
@@ -50,7 +51,7 @@ public class ExportSpimSequencePlugIn implements PlugIn
 		progress.out().println( "starting export..." );
 		final SpimRegistrationSequence sequence = new SpimRegistrationSequence( params.conf );
 		final SequenceDescription desc = sequence.getSequenceDescription();
-		WriteSequenceToHdf5.writeHdf5File( desc, params.perSetupResolutions, params.perSetupSubdivisions, params.hdf5File, new SubTaskProgressWriter( progress, 0, 0.95 ) );
+		WriteSequenceToHdf5.writeHdf5File( desc, params.perSetupResolutions, params.perSetupSubdivisions, params.hdf5File, params.compression, new SubTaskProgressWriter( progress, 0, 0.95 ) );
 
 		final Hdf5ImageLoader loader = new Hdf5ImageLoader( params.hdf5File, null, false );
 		final SequenceDescription sequenceDescription = new SequenceDescription( desc.setups, desc.timepoints, params.seqFile.getParentFile(), loader );
@@ -70,6 +71,7 @@ public class ExportSpimSequencePlugIn implements PlugIn
 
 	public static String fusionType[] = new String[] { "Single-channel", "Multi-channel" };
 	public static String allChannels = "0, 1";
+	public static int compressionChoice = 0;
 
 	protected static class Parameters
 	{
@@ -78,14 +80,16 @@ public class ExportSpimSequencePlugIn implements PlugIn
 		final ArrayList< int[][] > perSetupSubdivisions;
 		final File seqFile;
 		final File hdf5File;
+		final Hdf5Compression compression;
 
-		public Parameters( final SPIMConfiguration conf, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final File seqFile, final File hdf5File )
+		public Parameters( final SPIMConfiguration conf, final ArrayList< int[][] > perSetupResolutions, final ArrayList< int[][] > perSetupSubdivisions, final File seqFile, final File hdf5File, final Hdf5Compression compression )
 		{
 			this.conf = conf;
 			this.perSetupResolutions = perSetupResolutions;
 			this.perSetupSubdivisions = perSetupSubdivisions;
 			this.seqFile = seqFile;
 			this.hdf5File = hdf5File;
+			this.compression = compression;
 		}
 	}
 
@@ -407,6 +411,8 @@ public class ExportSpimSequencePlugIn implements PlugIn
 		gd2.addMessage( "Mip-map definition:" );
 		gd2.addStringField( "Subsampling factors", defaultMipmapResolutions, 25 );
 		gd2.addStringField( "Hdf5 chunk sizes", defaultCellSizes, 25 );
+		final String[] compressionChoices = Hdf5Compression.getDescriptions();
+		gd2.addChoice( "Hdf5 compression", compressionChoices, compressionChoices[ compressionChoice ] );
 
 		final ViewStructure viewStructure = ViewStructure.initViewStructure( conf, 0, new mpicbg.models.AffineModel3D(), "ViewStructure Timepoint " + conf.timepoints[ 0 ], conf.debugLevelInt );
 
@@ -473,6 +479,8 @@ public class ExportSpimSequencePlugIn implements PlugIn
 		// parse mipmap resolutions and cell sizes
 		final String subsampling = gd2.getNextString();
 		final String chunksizes = gd2.getNextString();
+		compressionChoice = gd2.getNextChoiceIndex();
+		final Hdf5Compression compression = Hdf5Compression.values()[ compressionChoice ];
 		final int[][] resolutions = PluginHelper.parseResolutionsString( subsampling );
 		final int[][] subdivisions = PluginHelper.parseResolutionsString( chunksizes );
 		if ( resolutions.length == 0 )
@@ -511,7 +519,7 @@ public class ExportSpimSequencePlugIn implements PlugIn
 		final String hdf5Filename = seqFilename.substring( 0, seqFilename.length() - 4 ) + ".h5";
 		final File hdf5File = new File( hdf5Filename );
 
-		return new Parameters( conf, perSetupResolutions, perSetupSubdivisions, seqFile, hdf5File );
+		return new Parameters( conf, perSetupResolutions, perSetupSubdivisions, seqFile, hdf5File, compression );
 	}
 
 	protected static double loadZStretching( final String file )
@@ -1,20 +1,27 @@
 package bdv.img.cache;
 
 import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.locks.Condition;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Queueing structure (intended for cells to be fetched). There is an array of
- * {@link ArrayDeque}s, ordered by priority. Elements are
- * {@link #put(Object, int)} with a priority and added to one of the queues,
- * accordingly. {@link #take()} returns an element from the highest priority
- * non-empty queue. Furthermore, there is a prefetch deque of bounded size to
- * provides elements when all the queues are exhausted. {@link #clear()} empties
- * all queues, and moves the removed elements to the prefetch queue.
+ * queues, ordered by priority. Elements are {@link #put(Object, int)} with a
+ * priority and added to one of the queues, accordingly. {@link #take()}
+ * returns an element from the highest priority non-empty queue. Furthermore,
+ * there is a prefetch deque of bounded size to provides elements when all the
+ * queues are exhausted. {@link #clear()} empties all queues, and moves the
+ * removed elements to the prefetch queue.
  *
- * Locking is adapted from {@link ArrayBlockingQueue}.
+ * The priority queues are lock-free, so that many producers can
+ * {@link #put(Object, int)} elements concurrently. Only the prefetch deque is
+ * guarded by a lock (adapted from {@link ArrayBlockingQueue}). The prefetch
+ * deque contains every element at most once. If an {@link Obsolete} filter is
+ * given, elements that have become obsolete (e.g., cells that have been loaded
+ * in the meantime) are dropped instead of being returned by {@link #take()}.
  *
  * @param <E>
  *            element type.
@@ -23,36 +30,78 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class BlockingFetchQueues< E >
 {
-	private final ArrayDeque< E >[] queues;
+	/**
+	 * Decides whether an element no longer needs to be fetched.
+	 */
+	public static interface Obsolete< E >
+	{
+		public boolean isObsolete( E element );
+	}
+
+	/**
+	 * Default capacity of the prefetch deque.
+	 */
+	public static final int DEFAULT_PREFETCH_CAPACITY = 16384;
+
+	private final ConcurrentLinkedQueue< E >[] queues;
 
 	private final int prefetchCapacity;
 
 	private final ArrayDeque< E > prefetch;
 
-	/** Number of elements in the queue */
-	private int count;
+	/**
+	 * The elements in the {@link #prefetch} deque, to avoid adding them twice.
+	 */
+	private final HashSet< E > prefetchSet;
+
+	private final Obsolete< E > obsolete;
 
-	/** Main lock guarding all access */
-	private final ReentrantLock lock;
+	/**
+	 * One permit for every element in the queues and the prefetch deque.
+	 * {@link #put(Object, int)} releases a permit after adding its element.
+	 * When elements are dropped (as obsolete, as duplicates, or for lack of
+	 * prefetch capacity), their permits are removed by
+	 * {@link #dropPermits(int)}, such that fetchers do not wake up for
+	 * elements that no longer exist. Under concurrent access there may
+	 * temporarily be fewer elements than permits. {@link #take()} then tries
+	 * again.
+	 */
+	private final Semaphore available;
 
-	/** Condition for waiting takes */
-	private final Condition notEmpty;
+	/** Lock guarding the prefetch deque */
+	private final ReentrantLock lock;
 
 	public BlockingFetchQueues( final int numPriorities )
 	{
-		this( numPriorities, 16384 );
+		this( numPriorities, DEFAULT_PREFETCH_CAPACITY );
 	}
 
-	@SuppressWarnings( "unchecked" )
 	public BlockingFetchQueues( final int numPriorities, final int prefetchCapacity )
 	{
-		queues = new ArrayDeque[ numPriorities ];
+		this( numPriorities, prefetchCapacity, null );
+	}
+
+	/**
+	 * @param numPriorities
+	 *            number of priority levels.
+	 * @param prefetchCapacity
+	 *            maximum number of elements in the prefetch deque.
+	 * @param obsolete
+	 *            decides which elements can be dropped without being returned
+	 *            by {@link #take()}. May be null.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public BlockingFetchQueues( final int numPriorities, final int prefetchCapacity, final Obsolete< E > obsolete )
+	{
+		queues = new ConcurrentLinkedQueue[ numPriorities ];
 		for ( int i = 0; i < numPriorities; ++i )
-			queues[ i ] = new ArrayDeque< E >();
+			queues[ i ] = new ConcurrentLinkedQueue< E >();
 		this.prefetchCapacity = prefetchCapacity;
-		prefetch = new ArrayDeque< E >( prefetchCapacity );
+		this.obsolete = obsolete;
+		prefetch = new ArrayDeque< E >( Math.max( 16, Math.min( prefetchCapacity, DEFAULT_PREFETCH_CAPACITY ) ) );
+		prefetchSet = new HashSet< E >();
+		available = new Semaphore( 0 );
 		lock = new ReentrantLock();
-		notEmpty = lock.newCondition();
 	}
 
 	/**
@@ -61,18 +110,8 @@ public class BlockingFetchQueues< E >
 	 */
 	public void put( final E element, final int priority )
 	{
-		final ReentrantLock lock = this.lock;
-		lock.lock();
-		try
-		{
-			queues[ priority ].add( element );
-			++count;
-			notEmpty.signal();
-		}
-		finally
-		{
-			lock.unlock();
-		}
+		queues[ priority ].add( element );
+		available.release();
 	}
 
 	/**
@@ -84,18 +123,63 @@ public class BlockingFetchQueues< E >
 	 * @throws InterruptedException
 	 */
 	public E take() throws InterruptedException
+	{
+		final int[] numDropped = new int[ 1 ];
+		while ( true )
+		{
+			available.acquire();
+			numDropped[ 0 ] = 0;
+			E element = pollQueues( numDropped );
+			if ( element == null )
+				element = pollPrefetch( numDropped );
+			// if no element was found, the acquired permit belonged to one of
+			// the dropped elements.
+			dropPermits( element == null ? numDropped[ 0 ] - 1 : numDropped[ 0 ] );
+			if ( element != null )
+				return element;
+		}
+	}
+
+	/**
+	 * Remove and return a non-obsolete element from the highest priority
+	 * non-empty queue, or null if there is none. Obsolete elements are
+	 * dropped along the way, and counted in <code>numDropped[0]</code>.
+	 */
+	private E pollQueues( final int[] numDropped )
+	{
+		for ( final ConcurrentLinkedQueue< E > q : queues )
+		{
+			E element;
+			while ( ( element = q.poll() ) != null )
+			{
+				if ( !isObsolete( element ) )
+					return element;
+				++numDropped[ 0 ];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove and return a non-obsolete element from the prefetch deque, or
+	 * null if there is none. Obsolete elements are dropped along the way, and
+	 * counted in <code>numDropped[0]</code>.
+	 */
+	private E pollPrefetch( final int[] numDropped )
 	{
 		final ReentrantLock lock = this.lock;
-		lock.lockInterruptibly();
+		lock.lock();
 		try
 		{
-			while ( count == 0 )
-				notEmpty.await();
-			--count;
-			for ( final ArrayDeque< E > q : queues )
-				if ( !q.isEmpty() )
-					return q.remove();
-			return prefetch.poll();
+			E element;
+			while ( ( element = prefetch.poll() ) != null )
+			{
+				prefetchSet.remove( element );
+				if ( !isObsolete( element ) )
+					return element;
+				++numDropped[ 0 ];
+			}
+			return null;
 		}
 		finally
 		{
@@ -103,56 +187,102 @@ public class BlockingFetchQueues< E >
 		}
 	}
 
+	/**
+	 * Remove up to <code>n</code> permits for dropped elements. If fewer
+	 * permits are available, the missing ones have been acquired by
+	 * {@link #take()} calls that will not find an element and try again.
+	 */
+	private void dropPermits( final int n )
+	{
+		for ( int i = 0; i < n; ++i )
+			if ( !available.tryAcquire() )
+				return;
+	}
+
+	/**
+	 * Get the number of permits, i.e., of elements that {@link #take()} can
+	 * return without blocking if there is no concurrent access.
+	 * (Package-private for testing.)
+	 */
+	int availablePermits()
+	{
+		return available.availablePermits();
+	}
+
+	private boolean isObsolete( final E element )
+	{
+		return obsolete != null && obsolete.isObsolete( element );
+	}
+
 	/**
 	 * Atomically removes all of the elements from this queue. The queue will be
 	 * empty after this call returns. Removed elements are moved to the
-	 * {@link #prefetch} deque.
+	 * {@link #prefetch} deque, unless they are obsolete or already in the
+	 * prefetch deque. Permits of elements that are dropped are removed.
 	 */
 	public void clear()
 	{
+		final int[] numDropped = new int[ 1 ];
 		final ReentrantLock lock = this.lock;
 		lock.lock();
 		try
 		{
-//			System.out.println( "prefetch size before clear = " + prefetch.size() );
+			// drain the queues. Elements that are put concurrently may or may
+			// not end up in the prefetch.
+			final ArrayDeque< E > q0 = drain( queues[ 0 ], numDropped );
+			final ArrayDeque< E > rest = new ArrayDeque< E >();
+			for ( int j = 1; j < queues.length; ++j )
+				rest.addAll( drain( queues[ j ], numDropped ) );
 
 			// make room in the prefetch deque
-			final int toRemoveFromPrefetch = Math.max( 0, Math.min( prefetch.size(), count - prefetchCapacity ) );
-//			System.out.println( "toRemoveFromPrefetch = " + toRemoveFromPrefetch );
-			if ( toRemoveFromPrefetch == prefetch.size() )
-				prefetch.clear();
-			else
-				for ( int i = 0; i < toRemoveFromPrefetch; ++i )
-					prefetch.remove();
+			final int toRemoveFromPrefetch = Math.max( 0, Math.min( prefetch.size(), q0.size() + rest.size() + prefetch.size() - prefetchCapacity ) );
+			for ( int i = 0; i < toRemoveFromPrefetch; ++i )
+				prefetchSet.remove( prefetch.removeFirst() );
+			numDropped[ 0 ] += toRemoveFromPrefetch;
 
-			// move queue contents to the prefetch
-			int c = prefetchCapacity; // prefetch capacity left
 			// add elements of first queue to the front of the prefetch
-			final ArrayDeque< E > q0 = queues[ 0 ];
-			final int q0n = Math.min( q0.size(), c );
-			for ( int i = 0; i < q0n; ++i )
-				prefetch.addFirst( q0.removeLast() );
-			q0.clear();
-			c -= q0n;
+			while ( !q0.isEmpty() && prefetch.size() < prefetchCapacity )
+			{
+				final E element = q0.removeLast();
+				if ( prefetchSet.add( element ) )
+					prefetch.addFirst( element );
+				else
+					++numDropped[ 0 ];
+			}
 			// add elements of remaining queues to the end of the prefetch
-			for ( int j = 1; j < queues.length; ++j )
+			while ( !rest.isEmpty() && prefetch.size() < prefetchCapacity )
 			{
-				final ArrayDeque< E > q = queues[ j ];
-				final int qn = Math.min( q.size(), c );
-				for ( int i = 0; i < qn; ++i )
-					prefetch.addLast( q.removeFirst() );
-				q.clear();
-				c -= qn;
+				final E element = rest.removeFirst();
+				if ( prefetchSet.add( element ) )
+					prefetch.addLast( element );
+				else
+					++numDropped[ 0 ];
 			}
-
-			// update count: only prefetch is non-empty now
-			count = prefetch.size();
-
-//			System.out.println( "prefetch size after clear = " + prefetch.size() );
+			// elements that did not fit
+			numDropped[ 0 ] += q0.size() + rest.size();
 		}
 		finally
 		{
 			lock.unlock();
 		}
+		dropPermits( numDropped[ 0 ] );
+	}
+
+	/**
+	 * Remove all non-obsolete elements from the given queue and return them in
+	 * order. Obsolete elements are counted in <code>numDropped[0]</code>.
+	 */
+	private ArrayDeque< E > drain( final ConcurrentLinkedQueue< E > q, final int[] numDropped )
+	{
+		final ArrayDeque< E > elements = new ArrayDeque< E >();
+		E element;
+		while ( ( element = q.poll() ) != null )
+		{
+			if ( !isObsolete( element ) )
+				elements.add( element );
+			else
+				++numDropped[ 0 ];
+		}
+		return elements;
 	}
 }
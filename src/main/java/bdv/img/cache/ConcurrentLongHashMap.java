@@ -0,0 +1,355 @@
+package bdv.img.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent hash map from primitive non-negative <code>long</code> keys to
+ * objects. It uses open addressing with linear probing, such that lookups do
+ * not allocate any objects.
+ * <p>
+ * The map is split into a number of segments, each guarded by its own lock.
+ * Modifications lock the segment of the key. {@link #get(long)} does not lock.
+ * It may miss a value that is concurrently being inserted, that is, a
+ * <code>null</code> return value should be double-checked by a locking
+ * operation such as {@link #putIfAbsent(long, Object)} if it matters.
+ * <p>
+ * Removed values leave their key in the table as a tombstone. If the same key
+ * is inserted again, the slot is reused. Tombstones are discarded when the
+ * segment is rehashed.
+ *
+ * @param <V>
+ *            value type.
+ */
+public class ConcurrentLongHashMap< V >
+{
+	private static final long EMPTY = -1;
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private static final int DEFAULT_NUM_SEGMENTS = 32;
+
+	private static final int DEFAULT_SEGMENT_CAPACITY = 1024;
+
+	private static class Table< V >
+	{
+		final AtomicLongArray keys;
+
+		final AtomicReferenceArray< V > values;
+
+		final int mask;
+
+		Table( final int capacity )
+		{
+			keys = new AtomicLongArray( capacity );
+			for ( int i = 0; i < capacity; ++i )
+				keys.set( i, EMPTY );
+			values = new AtomicReferenceArray< V >( capacity );
+			mask = capacity - 1;
+		}
+	}
+
+	private static class Segment< V > extends ReentrantLock
+	{
+		private static final long serialVersionUID = 1L;
+
+		volatile Table< V > table;
+
+		/**
+		 * number of non-null values.
+		 */
+		int size;
+
+		/**
+		 * number of slots with a key (including tombstones).
+		 */
+		int used;
+
+		int threshold;
+
+		Segment( final int capacity )
+		{
+			setTable( new Table< V >( capacity ) );
+			size = 0;
+			used = 0;
+		}
+
+		private void setTable( final Table< V > t )
+		{
+			threshold = ( int ) ( ( t.mask + 1 ) * LOAD_FACTOR );
+			table = t;
+		}
+
+		V get( final long key, final int hash )
+		{
+			final Table< V > t = table;
+			for ( int i = hash & t.mask;; i = ( i + 1 ) & t.mask )
+			{
+				final long k = t.keys.get( i );
+				if ( k == key )
+					return t.values.get( i );
+				else if ( k == EMPTY )
+					return null;
+			}
+		}
+
+		/**
+		 * Find the slot for key, inserting the key if it is not present.
+		 * Must be called with the lock held.
+		 */
+		private int slot( final long key, final int hash )
+		{
+			Table< V > t = table;
+			int i = hash & t.mask;
+			for ( ;; i = ( i + 1 ) & t.mask )
+			{
+				final long k = t.keys.get( i );
+				if ( k == key )
+					return i;
+				else if ( k == EMPTY )
+					break;
+			}
+			if ( used + 1 > threshold )
+			{
+				rehash();
+				t = table;
+				for ( i = hash & t.mask; t.keys.get( i ) != EMPTY; i = ( i + 1 ) & t.mask )
+					;
+			}
+			t.keys.set( i, key );
+			++used;
+			return i;
+		}
+
+		/**
+		 * Copy all live mappings into a new table, discarding tombstones. The
+		 * new table is twice as large if the segment is more than half full
+		 * of live mappings. Must be called with the lock held.
+		 */
+		private void rehash()
+		{
+			final Table< V > t = table;
+			final int oldCapacity = t.mask + 1;
+			final int capacity = ( size + 1 > threshold / 2 ) ? 2 * oldCapacity : oldCapacity;
+			final Table< V > n = new Table< V >( capacity );
+			int count = 0;
+			for ( int j = 0; j < oldCapacity; ++j )
+			{
+				final V v = t.values.get( j );
+				if ( v != null )
+				{
+					final long k = t.keys.get( j );
+					int i = hash( k ) & n.mask;
+					while ( n.keys.get( i ) != EMPTY )
+						i = ( i + 1 ) & n.mask;
+					n.values.set( i, v );
+					n.keys.set( i, k );
+					++count;
+				}
+			}
+			used = count;
+			size = count;
+			setTable( n );
+		}
+
+		V put( final long key, final int hash, final V value, final boolean onlyIfAbsent )
+		{
+			lock();
+			try
+			{
+				final int i = slot( key, hash );
+				final Table< V > t = table;
+				final V old = t.values.get( i );
+				if ( old == null )
+				{
+					t.values.set( i, value );
+					++size;
+				}
+				else if ( !onlyIfAbsent )
+					t.values.set( i, value );
+				return old;
+			}
+			finally
+			{
+				unlock();
+			}
+		}
+
+		boolean replace( final long key, final int hash, final V oldValue, final V newValue )
+		{
+			lock();
+			try
+			{
+				final Table< V > t = table;
+				for ( int i = hash & t.mask;; i = ( i + 1 ) & t.mask )
+				{
+					final long k = t.keys.get( i );
+					if ( k == key )
+					{
+						if ( t.values.get( i ) != oldValue )
+							return false;
+						t.values.set( i, newValue );
+						if ( newValue == null )
+							--size;
+						return true;
+					}
+					else if ( k == EMPTY )
+						return false;
+				}
+			}
+			finally
+			{
+				unlock();
+			}
+		}
+
+		int size()
+		{
+			lock();
+			try
+			{
+				return size;
+			}
+			finally
+			{
+				unlock();
+			}
+		}
+	}
+
+	private final Segment< V >[] segments;
+
+	private final int segmentShift;
+
+	public ConcurrentLongHashMap()
+	{
+		this( DEFAULT_NUM_SEGMENTS, DEFAULT_SEGMENT_CAPACITY );
+	}
+
+	/**
+	 * @param numSegments
+	 *            number of independently locked segments. This is rounded up
+	 *            to the next power of two.
+	 * @param initialSegmentCapacity
+	 *            initial number of slots per segment. This is rounded up to
+	 *            the next power of two.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public ConcurrentLongHashMap( final int numSegments, final int initialSegmentCapacity )
+	{
+		final int n = nextPowerOfTwo( Math.max( 1, numSegments ) );
+		final int c = nextPowerOfTwo( Math.max( 2, initialSegmentCapacity ) );
+		segments = new Segment[ n ];
+		for ( int i = 0; i < n; ++i )
+			segments[ i ] = new Segment< V >( c );
+		segmentShift = 32 - Integer.numberOfTrailingZeros( n );
+	}
+
+	/**
+	 * Get the value mapped to key.
+	 *
+	 * @param key
+	 *            non-negative key.
+	 * @return the value mapped to key, or null. (See the class description for
+	 *         the semantics of concurrent modifications.)
+	 */
+	public V get( final long key )
+	{
+		final int hash = hash( key );
+		return segmentFor( hash ).get( key, hash );
+	}
+
+	/**
+	 * Map key to value.
+	 *
+	 * @return the previous value mapped to key, or null.
+	 */
+	public V put( final long key, final V value )
+	{
+		if ( value == null )
+			throw new NullPointerException();
+		final int hash = hash( key );
+		return segmentFor( hash ).put( key, hash, value, false );
+	}
+
+	/**
+	 * Map key to value, unless the key is already mapped.
+	 *
+	 * @return the value already mapped to key, or null if value was put.
+	 */
+	public V putIfAbsent( final long key, final V value )
+	{
+		if ( value == null )
+			throw new NullPointerException();
+		final int hash = hash( key );
+		return segmentFor( hash ).put( key, hash, value, true );
+	}
+
+	/**
+	 * Replace the value mapped to key, if it is currently mapped to oldValue.
+	 * Values are compared by identity.
+	 *
+	 * @return whether the value was replaced.
+	 */
+	public boolean replace( final long key, final V oldValue, final V newValue )
+	{
+		if ( oldValue == null || newValue == null )
+			throw new NullPointerException();
+		final int hash = hash( key );
+		return segmentFor( hash ).replace( key, hash, oldValue, newValue );
+	}
+
+	/**
+	 * Remove the mapping for key, if it is currently mapped to value. Values
+	 * are compared by identity.
+	 *
+	 * @return whether the mapping was removed.
+	 */
+	public boolean remove( final long key, final V value )
+	{
+		if ( value == null )
+			return false;
+		final int hash = hash( key );
+		return segmentFor( hash ).replace( key, hash, value, null );
+	}
+
+	/**
+	 * @return the number of mappings.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for ( final Segment< V > s : segments )
+			size += s.size();
+		return size;
+	}
+
+	private Segment< V > segmentFor( final int hash )
+	{
+		return segments[ segmentShift == 32 ? 0 : hash >>> segmentShift ];
+	}
+
+	/**
+	 * Scramble the bits of the key (finalizer of the MurmurHash3 64-bit
+	 * variant).
+	 */
+	private static int hash( final long key )
+	{
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return ( int ) h;
+	}
+
+	private static int nextPowerOfTwo( final int n )
+	{
+		int p = 1;
+		while ( p < n )
+			p <<= 1;
+		return p;
+	}
+}
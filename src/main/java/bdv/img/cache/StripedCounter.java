@@ -0,0 +1,47 @@
+package bdv.img.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment concurrently with little
+ * contention. Increments go to one of several stripes, chosen by thread id,
+ * and the stripes are summed when the counter is read. Stripes are spaced
+ * apart such that they do not share cache lines.
+ */
+class StripedCounter
+{
+	/**
+	 * Distance (in longs) between stripes, i.e., 128 bytes.
+	 */
+	private static final int SPACING = 16;
+
+	private final int mask;
+
+	private final AtomicLongArray counts;
+
+	StripedCounter()
+	{
+		int numStripes = 1;
+		while ( numStripes < 2 * Runtime.getRuntime().availableProcessors() )
+			numStripes <<= 1;
+		mask = numStripes - 1;
+		counts = new AtomicLongArray( numStripes * SPACING );
+	}
+
+	void increment()
+	{
+		counts.incrementAndGet( ( ( int ) Thread.currentThread().getId() & mask ) * SPACING );
+	}
+
+	/**
+	 * Get the sum of all increments. Increments that happen concurrently may
+	 * or may not be included.
+	 */
+	long get()
+	{
+		long sum = 0;
+		for ( int i = 0; i < counts.length(); i += SPACING )
+			sum += counts.get( i );
+		return sum;
+	}
+}
@@ -1,12 +1,12 @@
 package bdv.img.cache;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import bdv.img.cache.CacheIoTiming.IoStatistics;
@@ -15,6 +15,14 @@ import bdv.img.cache.VolatileImgCells.CellCache;
 
 public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cache
 {
+	/**
+	 * System property that sets the capacity of the prefetch deque of the
+	 * fetch queue, i.e., how many cells requested in previous frames are kept
+	 * around to be loaded when there is nothing else to do. Defaults to
+	 * {@link BlockingFetchQueues#DEFAULT_PREFETCH_CAPACITY}.
+	 */
+	public static final String PREFETCH_CAPACITY_PROPERTY = "bdv.cache.prefetchCapacity";
+
 	private final int numTimepoints;
 
 	private final int numSetups;
@@ -23,106 +31,260 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 	private final int[] maxLevels;
 
-	class Key
+	/**
+	 * Compute the key of a cell in the {@link #softReferenceCache}. The
+	 * coordinates are packed into a single <code>long</code> by mixed-radix
+	 * encoding (see {@link #checkKeyRange(int, int, int)}).
+	 */
+	protected long getKey( final int timepoint, final int setup, final int level, final int index )
+	{
+		return ( ( ( long ) index * maxNumLevels + level ) * numSetups + setup ) * numTimepoints + timepoint;
+	}
+
+	/**
+	 * Check that {@link #getKey(int, int, int, int)} cannot overflow for any
+	 * non-negative <code>int</code> index.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if numTimepoints * numSetups * maxNumLevels exceeds 2^32.
+	 */
+	private static void checkKeyRange( final int numTimepoints, final int numSetups, final int maxNumLevels )
+	{
+		if ( ( long ) numTimepoints * numSetups * maxNumLevels > ( 1l << 32 ) )
+			throw new IllegalArgumentException( "too many timepoints, setups, and levels: " + numTimepoints + " * " + numSetups + " * " + maxNumLevels + " exceeds 2^32" );
+	}
+
+	class Entry
 	{
+		private final long key;
+
 		private final int timepoint;
 
 		private final int setup;
 
 		private final int level;
 
-		private final int index;
+		private VolatileCell< A > data;
+
+		/**
+		 * When was this entry last enqueued for loading (see
+		 * {@link VolatileGlobalCellCache#currentQueueFrame}). This is initialized
+		 * to -1. When the entry's data becomes valid, it is set to
+		 * {@link Long#MAX_VALUE}.
+		 */
+		private long enqueueFrame;
+
+		/**
+		 * When was this entry last enqueued for loading by a
+		 * {@link VolatileGlobalCellCache#setPredictiveRequests(boolean)
+		 * predictive} request. This is tracked separately from
+		 * {@link #enqueueFrame}, such that a predictive request does not
+		 * prevent a regular request in the same frame from enqueueing the
+		 * entry with higher priority.
+		 */
+		private long predictiveEnqueueFrame;
 
-		public Key( final int timepoint, final int setup, final int level, final int index )
+		/**
+		 * Reference bit for {@link Clock} eviction. This is set whenever the
+		 * entry is accessed and cleared when the clock hand passes over it.
+		 */
+		private volatile boolean referenced;
+
+		public Entry( final long key, final int timepoint, final int setup, final int level, final VolatileCell< A > data )
 		{
+			this.key = key;
 			this.timepoint = timepoint;
 			this.setup = setup;
 			this.level = level;
-			this.index = index;
+			this.data = data;
+			enqueueFrame = -1;
+			predictiveEnqueueFrame = -1;
+			referenced = true;
+		}
+	}
 
-			final long value = ( ( index * maxNumLevels + level ) * numSetups + setup ) * numTimepoints + timepoint;
-			hashcode = ( int ) ( value ^ ( value >>> 32 ) );
+	/**
+	 * A {@link Reference} to an {@link Entry} which remembers the key of the
+	 * entry. When the reference is cleared by the garbage collector, it
+	 * is put into {@link VolatileGlobalCellCache#clearedReferences}, and the
+	 * key is removed from the cache in {@link VolatileGlobalCellCache#cleanUp()}.
+	 */
+	interface KeyedReference
+	{
+		public long getKey();
+	}
+
+	class EntrySoftReference extends SoftReference< Entry > implements KeyedReference
+	{
+		private final long key;
+
+		public EntrySoftReference( final Entry entry )
+		{
+			super( entry, clearedReferences );
+			this.key = entry.key;
 		}
 
 		@Override
-		public boolean equals( final Object other )
+		public long getKey()
 		{
-			if ( this == other )
-				return true;
-			if ( !( other instanceof VolatileGlobalCellCache.Key ) )
-				return false;
-			@SuppressWarnings( "unchecked" )
-			final Key that = ( Key ) other;
-			return ( this.timepoint == that.timepoint ) && ( this.setup == that.setup ) && ( this.level == that.level ) && ( this.index == that.index );
+			return key;
 		}
+	}
 
-		final int hashcode;
+	class EntryWeakReference extends WeakReference< Entry > implements KeyedReference
+	{
+		private final long key;
+
+		public EntryWeakReference( final Entry entry )
+		{
+			super( entry, clearedReferences );
+			this.key = entry.key;
+		}
 
 		@Override
-		public int hashCode()
+		public long getKey()
 		{
-			return hashcode;
+			return key;
 		}
 	}
 
-	class Entry
+	/**
+	 * Keeps loaded {@link Entry entries} of a bounded cache strongly reachable
+	 * and evicts them according to the CLOCK (second chance) policy when the
+	 * total size of loaded data exceeds {@link #maxCacheSizeInBytes}.
+	 */
+	class Clock
 	{
-		private final Key key;
+		private final ArrayList< Entry > entries = new ArrayList< Entry >();
 
-		private VolatileCell< A > data;
+		private int hand = 0;
 
-		/**
-		 * When was this entry last enqueued for loading (see
-		 * {@link VolatileGlobalCellCache#currentQueueFrame}). This is initialized
-		 * to -1. When the entry's data becomes valid, it is set to
-		 * {@link Long#MAX_VALUE}.
-		 */
-		private long enqueueFrame;
+		private long sizeInBytes = 0;
 
-		public Entry( final Key key, final VolatileCell< A > data )
+		public synchronized void add( final Entry entry )
 		{
-			this.key = key;
-			this.data = data;
-			enqueueFrame = -1;
+			entry.referenced = true;
+			entries.add( entry );
+			sizeInBytes += getEntrySizeInBytes( entry );
+			while ( sizeInBytes > maxCacheSizeInBytes && entries.size() > 1 )
+				evictOne();
 		}
 
-		@Override
-		public void finalize()
+		public synchronized long getSizeInBytes()
+		{
+			return sizeInBytes;
+		}
+
+		/**
+		 * Advance the clock hand until an entry is found which has not been
+		 * referenced since the hand passed over it the last time. Remove that
+		 * entry from the cache.
+		 */
+		private void evictOne()
 		{
-			synchronized ( softReferenceCache )
+			while ( true )
 			{
-				// System.out.println( "finalizing..." );
-				softReferenceCache.remove( key );
-				// System.out.println( softReferenceCache.size() +
-				// " tiles cached." );
+				if ( hand >= entries.size() )
+					hand = 0;
+				final Entry entry = entries.get( hand );
+				if ( entry.referenced )
+				{
+					entry.referenced = false;
+					++hand;
+				}
+				else
+				{
+					final int last = entries.size() - 1;
+					entries.set( hand, entries.get( last ) );
+					entries.remove( last );
+					sizeInBytes -= getEntrySizeInBytes( entry );
+					removeEntry( entry );
+					return;
+				}
 			}
 		}
 	}
 
-	protected final ConcurrentHashMap< Key, Reference< Entry > > softReferenceCache = new ConcurrentHashMap< Key, Reference< Entry > >();
+	protected final ConcurrentLongHashMap< Reference< Entry > > softReferenceCache = new ConcurrentLongHashMap< Reference< Entry > >();
+
+	/**
+	 * References to {@link Entry entries} that have been cleared by the garbage
+	 * collector are enqueued here. Their keys are removed from the
+	 * {@link #softReferenceCache} in {@link #cleanUp()}.
+	 */
+	protected final ReferenceQueue< Entry > clearedReferences = new ReferenceQueue< Entry >();
 
 	/**
 	 * Keeps references to the {@link Entry entries} accessed in the current
 	 * frame, such that they cannot be cleared from the cache prematurely.
 	 */
-	protected final List< Entry > currentFrameEntries = Collections.synchronizedList( new ArrayList< Entry >() );
+	protected final ConcurrentLinkedQueue< Entry > currentFrameEntries = new ConcurrentLinkedQueue< Entry >();
 
-	protected final BlockingFetchQueues< Key > queue;
+	protected final BlockingFetchQueues< Entry > queue;
 
 	protected volatile long currentQueueFrame = 0;
 
+	/**
+	 * Whether {@link #numCacheHits} and {@link #numCacheMisses} are counted.
+	 * Counting is off until {@link #enableCacheStatistics()} is called, such
+	 * that cell accesses do not touch shared counters unless someone is
+	 * interested.
+	 */
+	protected volatile boolean recordCacheStatistics = false;
+
+	/**
+	 * Number of cell requests for which valid data was in the cache.
+	 */
+	protected final StripedCounter numCacheHits = new StripedCounter();
+
+	/**
+	 * Number of cell requests for which no valid data was in the cache.
+	 */
+	protected final StripedCounter numCacheMisses = new StripedCounter();
+
+	/**
+	 * Total time (in nanoseconds) spent in {@link CacheArrayLoader#loadArray}
+	 * per priority level (0 is the coarsest mipmap level of a setup).
+	 */
+	protected final AtomicLongArray loadNanoTimes;
+
+	/**
+	 * Number of cells loaded per priority level.
+	 */
+	protected final AtomicLongArray numLoads;
+
+	/**
+	 * Whether requests of the current thread are
+	 * {@link #setPredictiveRequests(boolean) predictive}.
+	 */
+	protected final ThreadLocal< Boolean > predictiveRequests = new ThreadLocal< Boolean >()
+	{
+		@Override
+		protected Boolean initialValue()
+		{
+			return Boolean.FALSE;
+		}
+	};
+
+	/**
+	 * The priority with which {@link #setPredictiveRequests(boolean)
+	 * predictive} requests are enqueued. This is lower than the priority of
+	 * any mipmap level.
+	 */
+	protected final int predictivePriority;
+
 	class Fetcher extends Thread
 	{
 		@Override
 		public final void run()
 		{
-			Key key = null;
+			Entry entry = null;
 			while ( true )
 			{
-				while ( key == null )
+				while ( entry == null )
 					try
 					{
-						key = queue.take();
+						entry = queue.take();
 					}
 					catch ( final InterruptedException e )
 					{}
@@ -142,8 +304,8 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 				}
 				try
 				{
-					loadIfNotValid( key );
-					key = null;
+					loadIfNotValid( entry );
+					entry = null;
 				}
 				catch ( final InterruptedException e )
 				{}
@@ -203,15 +365,83 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 	private final CacheArrayLoader< A > loader;
 
+	/**
+	 * Maximum total size (in bytes) of loaded cell data held by the cache. If
+	 * this is negative, the cache is unbounded and loaded cells are only
+	 * {@link SoftReference softly} reachable, i.e., eviction is left to the
+	 * garbage collector.
+	 */
+	private final long maxCacheSizeInBytes;
+
+	/**
+	 * Evicts loaded entries if the cache is bounded. null if the cache is
+	 * unbounded.
+	 */
+	private final Clock clock;
+
 	public VolatileGlobalCellCache( final CacheArrayLoader< A > loader, final int numTimepoints, final int numSetups, final int maxNumLevels, final int[] maxLevels, final int numFetcherThreads )
+	{
+		this( loader, numTimepoints, numSetups, maxNumLevels, maxLevels, numFetcherThreads, -1 );
+	}
+
+	/**
+	 * Create a cache with the prefetch capacity given by the
+	 * {@link #PREFETCH_CAPACITY_PROPERTY} system property.
+	 */
+	public VolatileGlobalCellCache( final CacheArrayLoader< A > loader, final int numTimepoints, final int numSetups, final int maxNumLevels, final int[] maxLevels, final int numFetcherThreads, final long maxCacheSizeInBytes )
+	{
+		this( loader, numTimepoints, numSetups, maxNumLevels, maxLevels, numFetcherThreads, maxCacheSizeInBytes, Integer.getInteger( PREFETCH_CAPACITY_PROPERTY, BlockingFetchQueues.DEFAULT_PREFETCH_CAPACITY ) );
+	}
+
+	/**
+	 * @param loader
+	 *            loads cell data.
+	 * @param numTimepoints
+	 *            number of timepoints in the dataset.
+	 * @param numSetups
+	 *            number of setups in the dataset.
+	 * @param maxNumLevels
+	 *            maximum number of mipmap levels of any setup.
+	 * @param maxLevels
+	 *            the index of the coarsest mipmap level for each setup.
+	 * @param numFetcherThreads
+	 *            how many {@link Fetcher} threads to start.
+	 * @param maxCacheSizeInBytes
+	 *            maximum total size of loaded cell data (computed from
+	 *            {@link CacheArrayLoader#getBytesPerElement()} and the cell
+	 *            dimensions). When this is exceeded, loaded cells are evicted
+	 *            using the CLOCK policy. If negative, the cache is unbounded
+	 *            and eviction is left to the garbage collector.
+	 * @param prefetchCapacity
+	 *            how many cells requested in previous frames are kept in the
+	 *            prefetch deque of the fetch queue.
+	 */
+	public VolatileGlobalCellCache( final CacheArrayLoader< A > loader, final int numTimepoints, final int numSetups, final int maxNumLevels, final int[] maxLevels, final int numFetcherThreads, final long maxCacheSizeInBytes, final int prefetchCapacity )
 	{
 		this.loader = loader;
 		this.numTimepoints = numTimepoints;
 		this.numSetups = numSetups;
 		this.maxNumLevels = maxNumLevels;
 		this.maxLevels = maxLevels;
-
-		queue = new BlockingFetchQueues< Key >( maxNumLevels );
+		checkKeyRange( numTimepoints, numSetups, maxNumLevels );
+		this.maxCacheSizeInBytes = maxCacheSizeInBytes;
+		clock = maxCacheSizeInBytes < 0 ? null : new Clock();
+
+		loadNanoTimes = new AtomicLongArray( maxNumLevels );
+		numLoads = new AtomicLongArray( maxNumLevels );
+		predictivePriority = maxNumLevels;
+		queue = new BlockingFetchQueues< Entry >( maxNumLevels + 1, prefetchCapacity, new BlockingFetchQueues.Obsolete< Entry >()
+		{
+			@Override
+			public boolean isObsolete( final Entry entry )
+			{
+				// loaded, or no longer in the cache
+				if ( entry.data.getData().isValid() )
+					return true;
+				final Reference< Entry > ref = softReferenceCache.get( entry.key );
+				return ref == null || ref.get() != entry;
+			}
+		} );
 		fetchers = new ArrayList< Fetcher >();
 		for ( int i = 0; i < numFetcherThreads; ++i )
 		{
@@ -223,24 +453,20 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	}
 
 	/**
-	 * Load the data for the {@link VolatileCell} referenced by k, if
+	 * Load the data for the {@link Entry}, if
 	 * <ul>
-	 * <li>the {@link VolatileCell} is in the cache, and
+	 * <li>the {@link Entry} is (still) in the cache, and
 	 * <li>the data is not yet loaded (valid).
 	 * </ul>
 	 *
-	 * @param k
+	 * @param entry
 	 * @throws InterruptedException
 	 */
-	protected void loadIfNotValid( final Key k ) throws InterruptedException
+	protected void loadIfNotValid( final Entry entry ) throws InterruptedException
 	{
-		final Reference< Entry > ref = softReferenceCache.get( k );
-		if ( ref != null )
-		{
-			final Entry entry = ref.get();
-			if ( entry != null )
-				loadEntryIfNotValid( entry );
-		}
+		final Reference< Entry > ref = softReferenceCache.get( entry.key );
+		if ( ref != null && ref.get() == entry )
+			loadEntryIfNotValid( entry );
 	}
 
 	/**
@@ -254,18 +480,28 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 		{
 			final int[] cellDims = c.getDimensions();
 			final long[] cellMin = c.getMin();
-			final Key k = entry.key;
-			final int timepoint = k.timepoint;
-			final int setup = k.setup;
-			final int level = k.level;
+			final int timepoint = entry.timepoint;
+			final int setup = entry.setup;
+			final int level = entry.level;
 			synchronized ( entry )
 			{
 				if ( !entry.data.getData().isValid() )
 				{
+					final long t0 = System.nanoTime();
 					final VolatileCell< A > cell = new VolatileCell< A >( cellDims, cellMin, loader.loadArray( timepoint, setup, level, cellDims, cellMin ) );
+					final int priority = maxLevels[ setup ] - level;
+					loadNanoTimes.addAndGet( priority, System.nanoTime() - t0 );
+					numLoads.incrementAndGet( priority );
 					entry.data = cell;
 					entry.enqueueFrame = Long.MAX_VALUE;
-					softReferenceCache.put( entry.key, new SoftReference< Entry >( entry ) );
+					final Reference< Entry > ref = softReferenceCache.get( entry.key );
+					if ( ref != null && ref.get() == entry )
+					{
+						if ( clock == null )
+							softReferenceCache.replace( entry.key, ref, new EntrySoftReference( entry ) );
+						else
+							clock.add( entry );
+					}
 					entry.notifyAll();
 				}
 			}
@@ -278,12 +514,22 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 */
 	protected void enqueueEntry( final Entry entry )
 	{
-		if ( entry.enqueueFrame < currentQueueFrame )
+		final long frame = currentQueueFrame;
+		if ( entry.enqueueFrame >= frame )
+			return;
+		if ( predictiveRequests.get() )
 		{
-			entry.enqueueFrame = currentQueueFrame;
-			final Key k = entry.key;
-			final int priority = maxLevels[ k.setup ] - k.level;
-			queue.put( k, priority );
+			if ( entry.predictiveEnqueueFrame < frame )
+			{
+				entry.predictiveEnqueueFrame = frame;
+				queue.put( entry, predictivePriority );
+				currentFrameEntries.add( entry );
+			}
+		}
+		else
+		{
+			entry.enqueueFrame = frame;
+			queue.put( entry, maxLevels[ entry.setup ] - entry.level );
 			currentFrameEntries.add( entry );
 		}
 	}
@@ -297,8 +543,7 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	{
 		final IoStatistics stats = CacheIoTiming.getThreadGroupIoStatistics();
 		final IoTimeBudget budget = stats.getIoTimeBudget();
-		final Key k = entry.key;
-		final int priority = maxLevels[ k.setup ] - k.level;
+		final int priority = maxLevels[ entry.setup ] - entry.level;
 		final long timeLeft = budget.timeLeft( priority );
 		if ( timeLeft > 0 )
 		{
@@ -356,14 +601,19 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 */
 	public VolatileCell< A > getGlobalIfCached( final int timepoint, final int setup, final int level, final int index, final LoadingStrategy loadingStrategy )
 	{
-		final Key k = new Key( timepoint, setup, level, index );
+		final long k = getKey( timepoint, setup, level, index );
 		final Reference< Entry > ref = softReferenceCache.get( k );
 		if ( ref != null )
 		{
 			final Entry entry = ref.get();
 			if ( entry != null )
 			{
-				switch ( loadingStrategy )
+				if ( !entry.referenced )
+					entry.referenced = true;
+				final boolean predictive = predictiveRequests.get();
+				if ( recordCacheStatistics && !predictive )
+					countAccess( entry );
+				switch ( predictive ? LoadingStrategy.VOLATILE : loadingStrategy )
 				{
 				case VOLATILE:
 				default:
@@ -407,9 +657,10 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 	 *
 	 * @return a cell with the specified coordinates.
 	 */
-	public synchronized VolatileCell< A > createGlobal( final int[] cellDims, final long[] cellMin, final int timepoint, final int setup, final int level, final int index, final LoadingStrategy loadingStrategy )
+	public VolatileCell< A > createGlobal( final int[] cellDims, final long[] cellMin, final int timepoint, final int setup, final int level, final int index, final LoadingStrategy loadingStrategy )
 	{
-		final Key k = new Key( timepoint, setup, level, index );
+		final boolean predictive = predictiveRequests.get();
+		final long k = getKey( timepoint, setup, level, index );
 		Entry entry = null;
 
 		final Reference< Entry > ref = softReferenceCache.get( k );
@@ -418,12 +669,25 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 
 		if ( entry == null )
 		{
-			final VolatileCell< A > cell = new VolatileCell< A >( cellDims, cellMin, loader.emptyArray( cellDims ) );
-			entry = new Entry( k, cell );
-			softReferenceCache.put( k, new WeakReference< Entry >( entry ) );
+			final Entry created = new Entry( k, timepoint, setup, level, new VolatileCell< A >( cellDims, cellMin, loader.emptyArray( cellDims ) ) );
+			entry = putEntryIfAbsent( created );
+			if ( recordCacheStatistics && !predictive )
+			{
+				if ( entry == created )
+					numCacheMisses.increment();
+				else
+					countAccess( entry );
+			}
+		}
+		else
+		{
+			if ( !entry.referenced )
+				entry.referenced = true;
+			if ( recordCacheStatistics && !predictive )
+				countAccess( entry );
 		}
 
-		switch ( loadingStrategy )
+		switch ( predictive ? LoadingStrategy.VOLATILE : loadingStrategy )
 		{
 		case VOLATILE:
 		default:
@@ -447,6 +711,38 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 		return entry.data;
 	}
 
+	/**
+	 * Put the given {@link Entry} into the cache, unless another thread has
+	 * concurrently put an entry for the same key. This does not lock the
+	 * cache, so misses on different cells can be handled in parallel. If two
+	 * threads miss the same cell at the same time, both create an entry, but
+	 * only one of them is put into the cache and returned to both.
+	 *
+	 * @return the {@link Entry} that is in the cache. This is the given entry
+	 *         if and only if it was inserted.
+	 */
+	protected Entry putEntryIfAbsent( final Entry entry )
+	{
+		cleanUp();
+		final long k = entry.key;
+		final Reference< Entry > entryRef = new EntryWeakReference( entry );
+		while ( true )
+		{
+			final Reference< Entry > ref = softReferenceCache.putIfAbsent( k, entryRef );
+			if ( ref == null )
+				return entry;
+			final Entry existing = ref.get();
+			if ( existing != null )
+			{
+				if ( !existing.referenced )
+					existing.referenced = true;
+				return existing;
+			}
+			if ( softReferenceCache.replace( k, ref, entryRef ) )
+				return entry;
+		}
+	}
+
 	/**
 	 * Prepare the cache for providing data for the "next frame":
 	 * <ul>
@@ -461,6 +757,138 @@ public class VolatileGlobalCellCache< A extends VolatileAccess > implements Cach
 		queue.clear();
 		currentFrameEntries.clear();
 		++currentQueueFrame;
+		cleanUp();
+	}
+
+	/**
+	 * Remove the keys of {@link Entry entries} that have been garbage
+	 * collected from the cache.
+	 */
+	protected void cleanUp()
+	{
+		while ( true )
+		{
+			@SuppressWarnings( "unchecked" )
+			final Reference< Entry > ref = ( Reference< Entry > ) clearedReferences.poll();
+			if ( ref == null )
+				break;
+			final long key = ( ( KeyedReference ) ref ).getKey();
+			softReferenceCache.remove( key, ref );
+		}
+	}
+
+	/**
+	 * Remove an evicted {@link Entry} from the cache, unless its key has
+	 * already been mapped to a new entry.
+	 */
+	protected void removeEntry( final Entry entry )
+	{
+		final Reference< Entry > ref = softReferenceCache.get( entry.key );
+		if ( ref != null && ref.get() == entry )
+			softReferenceCache.remove( entry.key, ref );
+	}
+
+	/**
+	 * Get the size in bytes of the data of the given {@link Entry}.
+	 */
+	protected long getEntrySizeInBytes( final Entry entry )
+	{
+		long numElements = 1;
+		for ( final int d : entry.data.getDimensions() )
+			numElements *= d;
+		return numElements * loader.getBytesPerElement();
+	}
+
+	/**
+	 * Get the total size in bytes of loaded cell data held by a bounded cache.
+	 *
+	 * @return total size of loaded data, or -1 if the cache is unbounded.
+	 */
+	public long getCacheSizeInBytes()
+	{
+		return clock == null ? -1 : clock.getSizeInBytes();
+	}
+
+	/**
+	 * Set whether cell requests made by the calling thread are predictive,
+	 * i.e., for data that is expected to be needed soon, but not for the
+	 * current frame. Predictive requests never load data on the calling
+	 * thread, and are enqueued with a priority lower than any regular
+	 * request. This is used to prefetch data along the predicted navigation
+	 * path.
+	 */
+	public void setPredictiveRequests( final boolean predictive )
+	{
+		predictiveRequests.set( predictive );
+	}
+
+	/**
+	 * Count a non-predictive request for an existing entry as hit or miss.
+	 */
+	private void countAccess( final Entry entry )
+	{
+		if ( entry.data.getData().isValid() )
+			numCacheHits.increment();
+		else
+			numCacheMisses.increment();
+	}
+
+	/**
+	 * Start counting {@link #getNumCacheHits() cache hits} and
+	 * {@link #getNumCacheMisses() misses}. Counting stays enabled once
+	 * started.
+	 */
+	public void enableCacheStatistics()
+	{
+		recordCacheStatistics = true;
+	}
+
+	/**
+	 * Get the number of cell requests for which valid data was in the cache,
+	 * since {@link #enableCacheStatistics() counting was enabled}.
+	 */
+	public long getNumCacheHits()
+	{
+		return numCacheHits.get();
+	}
+
+	/**
+	 * Get the number of cell requests for which no valid data was in the
+	 * cache (i.e., the cell had to be created, or its data was not loaded
+	 * yet), since {@link #enableCacheStatistics() counting was enabled}.
+	 */
+	public long getNumCacheMisses()
+	{
+		return numCacheMisses.get();
+	}
+
+	/**
+	 * Get the number of priority levels for which
+	 * {@link #getLoadNanoTime(int) load statistics} are recorded. This is the
+	 * maximum number of mipmap levels of any setup.
+	 */
+	public int getNumPriorities()
+	{
+		return maxNumLevels;
+	}
+
+	/**
+	 * Get the total time (in nanoseconds) spent loading cells of the given
+	 * priority level (0 is the coarsest mipmap level of a setup), by fetcher
+	 * threads and blocking requests, since the cache was created.
+	 */
+	public long getLoadNanoTime( final int priority )
+	{
+		return loadNanoTimes.get( priority );
+	}
+
+	/**
+	 * Get the number of cells of the given priority level (0 is the coarsest
+	 * mipmap level of a setup) loaded since the cache was created.
+	 */
+	public long getNumLoads( final int priority )
+	{
+		return numLoads.get( priority );
 	}
 
 	/**
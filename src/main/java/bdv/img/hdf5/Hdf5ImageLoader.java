@@ -36,12 +36,46 @@ import ch.systemsx.cisd.hdf5.IHDF5Reader;
 
 public class Hdf5ImageLoader implements ViewerImgLoader
 {
+	/**
+	 * System property that bounds the total size (in megabytes) of loaded
+	 * image data kept in the {@link VolatileGlobalCellCache}. If it is not
+	 * set, loaded cells are only softly referenced and eviction is left to the
+	 * garbage collector.
+	 */
+	public static final String MAX_CACHE_SIZE_PROPERTY = "bdv.cache.maxSizeInMB";
+
+	/**
+	 * System property that sets the number of fetcher threads (and hdf5
+	 * readers) used to load image blocks. For partitioned datasets, this is
+	 * also the maximum number of readers per partition file. If set, it
+	 * overrides the <code>numFetcherThreads</code> element of the XML
+	 * ImageLoader description.
+	 */
+	public static final String NUM_FETCHER_THREADS_PROPERTY = "bdv.hdf5.numFetcherThreads";
+
+	/**
+	 * Number of fetcher threads if neither the XML nor the
+	 * {@link #NUM_FETCHER_THREADS_PROPERTY system property} specify it.
+	 */
+	public static final int DEFAULT_NUM_FETCHER_THREADS = 1;
+
 	protected File hdf5File;
 
 	protected IHDF5Reader hdf5Reader;
 
 	protected VolatileGlobalCellCache< VolatileShortArray > cache;
 
+	/**
+	 * Loads the cells of the {@link #cache}, if the dataset is not
+	 * partitioned.
+	 */
+	protected Hdf5VolatileShortArrayLoader shortArrayLoader;
+
+	/**
+	 * Loads the cells of the {@link #cache}, if the dataset is partitioned.
+	 */
+	protected PartitionedHdf5VolatileShortArrayLoader partitionedShortArrayLoader;
+
 	protected final ArrayList< double[][] > perSetupMipmapResolutions;
 
 	protected final ArrayList< int[][] > perSetupSubdivisions;
@@ -79,6 +113,12 @@ public class Hdf5ImageLoader implements ViewerImgLoader
 
 	protected final boolean isCoarsestLevelBlocking = true;
 
+	/**
+	 * Number of fetcher threads as specified in the XML ImageLoader
+	 * description, or -1 if it was not specified.
+	 */
+	protected int numFetcherThreads = -1;
+
 	public Hdf5ImageLoader()
 	{
 		this( null );
@@ -118,6 +158,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader
 
 	private void open()
 	{
+		close();
 		hdf5Reader = HDF5Factory.openForReading( hdf5File );
 		numTimepoints = hdf5Reader.readInt( "numTimepoints" );
 		numSetups = hdf5Reader.readInt( "numSetups" );
@@ -141,7 +182,64 @@ public class Hdf5ImageLoader implements ViewerImgLoader
 		cachedDimensions = new long[ numTimepoints * numSetups * maxNumLevels ][];
 		cachedExistence = new Boolean[ numTimepoints * numSetups * maxNumLevels ];
 
-		cache = new VolatileGlobalCellCache< VolatileShortArray >( new Hdf5VolatileShortArrayLoader( hdf5Reader ), numTimepoints, numSetups, maxNumLevels, maxLevels, 1 );
+		final long maxCacheSizeInMB = Long.getLong( MAX_CACHE_SIZE_PROPERTY, -1 );
+		final long maxCacheSizeInBytes = maxCacheSizeInMB < 0 ? -1 : maxCacheSizeInMB * 1024 * 1024;
+		final int numFetchers = getNumFetcherThreads();
+		if ( partitions.isEmpty() )
+		{
+			shortArrayLoader = new Hdf5VolatileShortArrayLoader( hdf5File, numFetchers );
+			cache = new VolatileGlobalCellCache< VolatileShortArray >( shortArrayLoader, numTimepoints, numSetups, maxNumLevels, maxLevels, numFetchers, maxCacheSizeInBytes );
+		}
+		else
+		{
+			// read directly from the partition files. JHDF5 serializes native
+			// reads anyway, so more fetcher threads than numFetchers would
+			// only wait for its lock.
+			partitionedShortArrayLoader = new PartitionedHdf5VolatileShortArrayLoader( hdf5File, partitions, numFetchers );
+			cache = new VolatileGlobalCellCache< VolatileShortArray >( partitionedShortArrayLoader, numTimepoints, numSetups, maxNumLevels, maxLevels, numFetchers, maxCacheSizeInBytes );
+		}
+	}
+
+	/**
+	 * Close the hdf5 readers opened by this loader. Cells that are requested
+	 * afterwards are not loaded.
+	 */
+	public void close()
+	{
+		if ( shortArrayLoader != null )
+		{
+			shortArrayLoader.close();
+			shortArrayLoader = null;
+		}
+		if ( partitionedShortArrayLoader != null )
+		{
+			partitionedShortArrayLoader.close();
+			partitionedShortArrayLoader = null;
+		}
+		if ( hdf5Reader != null )
+		{
+			synchronized ( hdf5Reader )
+			{
+				hdf5Reader.close();
+			}
+			hdf5Reader = null;
+		}
+	}
+
+	/**
+	 * Get the number of fetcher threads to use. This is taken from the
+	 * {@link #NUM_FETCHER_THREADS_PROPERTY system property} if it is set, from
+	 * the XML ImageLoader description otherwise, or
+	 * {@link #DEFAULT_NUM_FETCHER_THREADS} if neither is specified.
+	 */
+	protected int getNumFetcherThreads()
+	{
+		final Integer n = Integer.getInteger( NUM_FETCHER_THREADS_PROPERTY );
+		if ( n != null && n > 0 )
+			return n;
+		if ( numFetcherThreads > 0 )
+			return numFetcherThreads;
+		return DEFAULT_NUM_FETCHER_THREADS;
 	}
 
 	@Override
@@ -154,6 +252,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader
 			for ( final Element p : elem.getChildren( "partition" ) )
 				partitions.add( new Partition( p, basePath ) );
 			hdf5File = new File( path );
+			numFetcherThreads = XmlHelpers.getInt( elem, "numFetcherThreads", -1 );
 			open();
 			tryInitImageDimensions( elem );
 //			initCachedDimensionsFromHdf5();
@@ -172,6 +271,8 @@ public class Hdf5ImageLoader implements ViewerImgLoader
 		elem.addContent( XmlHelpers.pathElement( "hdf5", hdf5File, basePath ) );
 		for ( final Partition partition : partitions )
 			elem.addContent( partition.toXml( basePath ) );
+		if ( numFetcherThreads > 0 )
+			elem.addContent( XmlHelpers.intElement( "numFetcherThreads", numFetcherThreads ) );
 		return elem;
 	}
 
@@ -261,6 +362,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader
 		return img;
 	}
 
+	@Override
 	public VolatileGlobalCellCache< VolatileShortArray > getCache()
 	{
 		return cache;
@@ -2,38 +2,171 @@ package bdv.img.hdf5;
 
 import static bdv.img.hdf5.Util.getCellsPath;
 import static bdv.img.hdf5.Util.reorder;
+
+import java.io.File;
+import java.util.ArrayDeque;
+
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
 import bdv.img.cache.CacheArrayLoader;
 import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 
+/**
+ * Loads {@link VolatileShortArray} blocks from an hdf5 file. Blocks are read
+ * through a pool of {@link IHDF5Reader readers}. Each reader is used by at most
+ * one thread at a time.
+ * <p>
+ * Note that JHDF5 runs all native HDF5 calls under one global lock, so block
+ * reads (including decompression) are still serialized, even with several
+ * readers. Only the Java side of loading overlaps, i.e., copying the block
+ * into a {@link VolatileShortArray} and the cache bookkeeping around it.
+ * <p>
+ * Readers opened by the loader are closed by {@link #close()}.
+ */
 public class Hdf5VolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
 {
-	private final IHDF5Reader hdf5Reader;
+	/**
+	 * The hdf5 file from which additional readers are opened. null if only a
+	 * single shared reader is used.
+	 */
+	private final File hdf5File;
+
+	private final int maxNumReaders;
+
+	/**
+	 * How many readers have been opened so far. Guarded by this.
+	 */
+	private int numReaders;
+
+	/**
+	 * Readers that are currently not used by any thread. Guarded by this.
+	 */
+	private final ArrayDeque< IHDF5Reader > idleReaders;
+
+	/**
+	 * Whether {@link #close()} has been called. Guarded by this.
+	 */
+	private boolean closed;
 
 	private VolatileShortArray theEmptyArray;
 
+	/**
+	 * Load blocks through a single reader. Reads are synchronized on the
+	 * reader, so it can be shared with other code that synchronizes on it.
+	 */
 	public Hdf5VolatileShortArrayLoader( final IHDF5Reader hdf5Reader )
 	{
-		this.hdf5Reader = hdf5Reader;
+		hdf5File = null;
+		maxNumReaders = 1;
+		numReaders = 1;
+		idleReaders = new ArrayDeque< IHDF5Reader >( 1 );
+		idleReaders.add( hdf5Reader );
+		closed = false;
 		theEmptyArray = new VolatileShortArray( 32 * 32 * 32, false );
 	}
 
-	private final int[] reorderedDimensions = new int[ 3 ];
+	/**
+	 * Load blocks through up to <code>maxNumReaders</code> readers opened on
+	 * the given file. Readers are opened lazily, when all existing readers are
+	 * in use.
+	 *
+	 * @param hdf5File
+	 *            the hdf5 file to read blocks from.
+	 * @param maxNumReaders
+	 *            maximum number of readers, i.e., of concurrent block reads.
+	 *            This should usually match the number of fetcher threads.
+	 */
+	public Hdf5VolatileShortArrayLoader( final File hdf5File, final int maxNumReaders )
+	{
+		this.hdf5File = hdf5File;
+		this.maxNumReaders = Math.max( 1, maxNumReaders );
+		numReaders = 0;
+		idleReaders = new ArrayDeque< IHDF5Reader >( this.maxNumReaders );
+		closed = false;
+		theEmptyArray = new VolatileShortArray( 32 * 32 * 32, false );
+	}
 
-	private final long[] reorderedMin = new long[ 3 ];
+	/**
+	 * Get an idle reader. Open a new one if there is none and the maximum
+	 * number of readers has not been reached yet. Otherwise wait until a reader
+	 * is released.
+	 *
+	 * @return a reader, or null if the loader has been {@link #close() closed}.
+	 */
+	private synchronized IHDF5Reader acquireReader() throws InterruptedException
+	{
+		while ( true )
+		{
+			if ( closed )
+				return null;
+			if ( !idleReaders.isEmpty() )
+				return idleReaders.poll();
+			if ( numReaders < maxNumReaders )
+			{
+				++numReaders;
+				return HDF5Factory.openForReading( hdf5File );
+			}
+			wait();
+		}
+	}
+
+	private synchronized void releaseReader( final IHDF5Reader reader )
+	{
+		if ( closed )
+		{
+			if ( hdf5File != null )
+				reader.close();
+		}
+		else
+		{
+			idleReaders.add( reader );
+			notify();
+		}
+	}
+
+	/**
+	 * Close all readers opened by this loader. Readers that are currently in
+	 * use are closed when the block read completes. A reader given to the
+	 * {@link #Hdf5VolatileShortArrayLoader(IHDF5Reader) constructor} is not
+	 * closed, because it is owned by the caller. Blocks that are requested
+	 * after closing are not loaded, i.e., an invalid {@link #emptyArray(int[])
+	 * empty array} is returned.
+	 */
+	public synchronized void close()
+	{
+		if ( closed )
+			return;
+		closed = true;
+		if ( hdf5File != null )
+			for ( final IHDF5Reader reader : idleReaders )
+				reader.close();
+		idleReaders.clear();
+		notifyAll();
+	}
 
 	@Override
 	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
+		final int[] reorderedDimensions = reorder( dimensions );
+		final long[] reorderedMin = reorder( min );
+		final String cellsPath = getCellsPath( timepoint, setup, level );
 		final MDShortArray array;
-		synchronized ( hdf5Reader )
+		final IHDF5Reader hdf5Reader = acquireReader();
+		if ( hdf5Reader == null )
+			return emptyArray( dimensions );
+		try
+		{
+			synchronized ( hdf5Reader )
+			{
+				if ( Thread.interrupted() )
+					throw new InterruptedException();
+				array = hdf5Reader.readShortMDArrayBlockWithOffset( cellsPath, reorderedDimensions, reorderedMin );
+			}
+		}
+		finally
 		{
-			if ( Thread.interrupted() )
-				throw new InterruptedException();
-			reorder( dimensions, reorderedDimensions );
-			reorder( min, reorderedMin );
-			array = hdf5Reader.readShortMDArrayBlockWithOffset( getCellsPath( timepoint, setup, level ), reorderedDimensions, reorderedMin );
+			releaseReader( hdf5Reader );
 		}
 		return new VolatileShortArray( array.getAsFlatArray(), true );
 	}
@@ -0,0 +1,87 @@
+package bdv.img.hdf5;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import bdv.img.cache.CacheArrayLoader;
+
+/**
+ * Loads {@link VolatileShortArray} blocks of a dataset that is split into
+ * {@link Partition partition} files. Instead of following the external links
+ * of the aggregating hdf5 file, blocks are read directly from the partition
+ * file that {@link Partition#contains(int, int) contains} the requested
+ * timepoint and setup. Each partition has its own
+ * {@link Hdf5VolatileShortArrayLoader} with its own pool of readers. (As for a
+ * single file, native reads are still serialized by JHDF5.)
+ * <p>
+ * Blocks that are not contained in any partition (or whose partition file does
+ * not exist) are read through the aggregating file.
+ * <p>
+ * All readers are closed by {@link #close()}.
+ */
+public class PartitionedHdf5VolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
+{
+	private final Partition[] partitions;
+
+	private final Hdf5VolatileShortArrayLoader[] partitionLoaders;
+
+	private final Hdf5VolatileShortArrayLoader fallbackLoader;
+
+	/**
+	 * @param hdf5File
+	 *            the aggregating hdf5 file, linking the partition files.
+	 * @param partitions
+	 *            the partitions of the dataset.
+	 * @param numReadersPerPartition
+	 *            maximum number of readers opened for each partition file
+	 *            (and for the aggregating file).
+	 */
+	public PartitionedHdf5VolatileShortArrayLoader( final File hdf5File, final List< Partition > partitions, final int numReadersPerPartition )
+	{
+		final ArrayList< Partition > existing = new ArrayList< Partition >();
+		for ( final Partition partition : partitions )
+			if ( new File( partition.getPath() ).exists() )
+				existing.add( partition );
+		this.partitions = existing.toArray( new Partition[ existing.size() ] );
+		partitionLoaders = new Hdf5VolatileShortArrayLoader[ this.partitions.length ];
+		for ( int i = 0; i < this.partitions.length; ++i )
+			partitionLoaders[ i ] = new Hdf5VolatileShortArrayLoader( new File( this.partitions[ i ].getPath() ), numReadersPerPartition );
+		fallbackLoader = new Hdf5VolatileShortArrayLoader( hdf5File, numReadersPerPartition );
+	}
+
+	@Override
+	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		for ( int i = 0; i < partitions.length; ++i )
+		{
+			final Partition partition = partitions[ i ];
+			if ( partition.contains( timepoint, setup ) )
+				return partitionLoaders[ i ].loadArray( timepoint - partition.getTimepointOffset(), setup - partition.getSetupOffset(), level, dimensions, min );
+		}
+		return fallbackLoader.loadArray( timepoint, setup, level, dimensions, min );
+	}
+
+	/**
+	 * Close the readers of all partition files and of the aggregating file.
+	 */
+	public void close()
+	{
+		for ( final Hdf5VolatileShortArrayLoader loader : partitionLoaders )
+			loader.close();
+		fallbackLoader.close();
+	}
+
+	@Override
+	public VolatileShortArray emptyArray( final int[] dimensions )
+	{
+		return fallbackLoader.emptyArray( dimensions );
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return 2;
+	}
+}
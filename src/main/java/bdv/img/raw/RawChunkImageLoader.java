@@ -0,0 +1,238 @@
+package bdv.img.raw;
+
+import static mpicbg.spim.data.XmlHelpers.loadPath;
+
+import java.io.File;
+import java.io.IOException;
+
+import mpicbg.spim.data.View;
+import mpicbg.spim.data.XmlHelpers;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.sampler.special.ConstantRandomAccessible;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.jdom2.Element;
+
+import bdv.ViewerImgLoader;
+import bdv.img.cache.VolatileCell;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.cache.VolatileGlobalCellCache.LoadingStrategy;
+import bdv.img.cache.VolatileImgCells;
+import bdv.img.cache.VolatileImgCells.CellCache;
+import bdv.img.hdf5.Hdf5ImageLoader;
+
+/**
+ * A {@link ViewerImgLoader} for raw chunk stores (see {@link RawChunkIndex}).
+ * Blocks are read from memory-mapped files by
+ * {@link RawChunkVolatileShortArrayLoader}, without going through JHDF5.
+ * <p>
+ * The number of fetcher threads is read from the
+ * <code>numFetcherThreads</code> element of the XML ImageLoader description,
+ * and can be overridden by the
+ * {@link Hdf5ImageLoader#NUM_FETCHER_THREADS_PROPERTY} system property.
+ */
+public class RawChunkImageLoader implements ViewerImgLoader
+{
+	/**
+	 * Number of fetcher threads if neither the XML nor the system property
+	 * specify it. Reading from memory-mapped files does not lock, so this
+	 * defaults to more than one thread.
+	 */
+	public static final int DEFAULT_NUM_FETCHER_THREADS = 4;
+
+	protected File directory;
+
+	protected RawChunkIndex index;
+
+	protected VolatileGlobalCellCache< VolatileShortArray > cache;
+
+	/**
+	 * Number of fetcher threads as specified in the XML ImageLoader
+	 * description, or -1 if it was not specified.
+	 */
+	protected int numFetcherThreads = -1;
+
+	public RawChunkImageLoader()
+	{
+		directory = null;
+		index = null;
+		cache = null;
+	}
+
+	/**
+	 * Open an existing chunk store.
+	 *
+	 * @param directory
+	 *            the chunk store directory.
+	 */
+	public RawChunkImageLoader( final File directory )
+	{
+		this.directory = directory;
+		open();
+	}
+
+	private void open()
+	{
+		try
+		{
+			index = RawChunkIndex.read( directory );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		final int maxNumLevels = index.getMaxNumLevels();
+		final int[] maxLevels = new int[ index.numSetups() ];
+		for ( int setup = 0; setup < maxLevels.length; ++setup )
+			maxLevels[ setup ] = index.getMipmapResolutions( setup ).length - 1;
+
+		final long maxCacheSizeInMB = Long.getLong( Hdf5ImageLoader.MAX_CACHE_SIZE_PROPERTY, -1 );
+		final long maxCacheSizeInBytes = maxCacheSizeInMB < 0 ? -1 : maxCacheSizeInMB * 1024 * 1024;
+		cache = new VolatileGlobalCellCache< VolatileShortArray >( new RawChunkVolatileShortArrayLoader( index ), index.numTimepoints(), index.numSetups(), maxNumLevels, maxLevels, getNumFetcherThreads(), maxCacheSizeInBytes );
+	}
+
+	protected int getNumFetcherThreads()
+	{
+		final Integer n = Integer.getInteger( Hdf5ImageLoader.NUM_FETCHER_THREADS_PROPERTY );
+		if ( n != null && n > 0 )
+			return n;
+		if ( numFetcherThreads > 0 )
+			return numFetcherThreads;
+		return DEFAULT_NUM_FETCHER_THREADS;
+	}
+
+	@Override
+	public void init( final Element elem, final File basePath )
+	{
+		try
+		{
+			directory = loadPath( elem, "path", basePath );
+			numFetcherThreads = XmlHelpers.getInt( elem, "numFetcherThreads", -1 );
+			open();
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	@Override
+	public Element toXml( final File basePath )
+	{
+		final Element elem = new Element( "ImageLoader" );
+		elem.setAttribute( "class", getClass().getCanonicalName() );
+		elem.addContent( XmlHelpers.pathElement( "path", directory, basePath ) );
+		if ( numFetcherThreads > 0 )
+			elem.addContent( XmlHelpers.intElement( "numFetcherThreads", numFetcherThreads ) );
+		return elem;
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	@Override
+	public RandomAccessibleInterval< FloatType > getImage( final View view )
+	{
+		throw new UnsupportedOperationException( "currently not used" );
+	}
+
+	@Override
+	public RandomAccessibleInterval< UnsignedShortType > getUnsignedShortImage( final View view )
+	{
+		return getUnsignedShortImage( view, 0 );
+	}
+
+	@Override
+	public RandomAccessibleInterval< UnsignedShortType > getUnsignedShortImage( final View view, final int level )
+	{
+		if ( ! existsImageData( view, level ) )
+		{
+			System.err.println( "image data for " + view.getBasename() + " level " + level + " could not be found." );
+			return getMissingDataImage( new UnsignedShortType() );
+		}
+		final CellImg< UnsignedShortType, VolatileShortArray, VolatileCell< VolatileShortArray > >  img = prepareCachedImage( view, level, LoadingStrategy.BLOCKING );
+		final UnsignedShortType linkedType = new UnsignedShortType( img );
+		img.setLinkedType( linkedType );
+		return img;
+	}
+
+	@Override
+	public RandomAccessibleInterval< VolatileUnsignedShortType > getVolatileUnsignedShortImage( final View view, final int level )
+	{
+		if ( ! existsImageData( view, level ) )
+		{
+			System.err.println( "image data for " + view.getBasename() + " level " + level + " could not be found." );
+			return getMissingDataImage( new VolatileUnsignedShortType() );
+		}
+		final CellImg< VolatileUnsignedShortType, VolatileShortArray, VolatileCell< VolatileShortArray > >  img = prepareCachedImage( view, level, LoadingStrategy.BUDGETED );
+		final VolatileUnsignedShortType linkedType = new VolatileUnsignedShortType( img );
+		img.setLinkedType( linkedType );
+		return img;
+	}
+
+	@Override
+	public VolatileGlobalCellCache< VolatileShortArray > getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public double[][] getMipmapResolutions( final int setup )
+	{
+		return index.getMipmapResolutions( setup );
+	}
+
+	public int[][] getSubdivisions( final int setup )
+	{
+		return index.getSubdivisions( setup );
+	}
+
+	@Override
+	public int numMipmapLevels( final int setup )
+	{
+		return getMipmapResolutions( setup ).length;
+	}
+
+	protected boolean existsImageData( final View view, final int level )
+	{
+		return index.exists( view.getTimepointIndex(), view.getSetupIndex(), level );
+	}
+
+	/**
+	 * For images that are missing in the chunk store, a 1x1x1 constant image
+	 * is created.
+	 */
+	protected < T > RandomAccessibleInterval< T > getMissingDataImage( final T constant )
+	{
+		return Views.interval( new ConstantRandomAccessible< T >( constant, 3 ), new FinalInterval( 1, 1, 1 ) );
+	}
+
+	/**
+	 * (Almost) create a {@link CellImg} backed by the cache.
+	 * The created image needs a {@link NativeImg#setLinkedType(net.imglib2.type.Type) linked type} before it can be used.
+	 * The type should be either {@link UnsignedShortType} and {@link VolatileUnsignedShortType}.
+	 */
+	protected < T extends NativeType< T > > CellImg< T, VolatileShortArray, VolatileCell< VolatileShortArray > > prepareCachedImage( final View view, final int level, final LoadingStrategy loadingStrategy )
+	{
+		if ( index == null )
+			throw new RuntimeException( "no chunk store open" );
+
+		final long[] dimensions = index.getDimensions( view.getTimepointIndex(), view.getSetupIndex(), level );
+		final int[] cellDimensions = index.getSubdivisions( view.getSetupIndex() )[ level ];
+
+		final CellCache< VolatileShortArray > c = cache.new Hdf5CellCache( view.getTimepointIndex(), view.getSetupIndex(), level, loadingStrategy );
+		final VolatileImgCells< VolatileShortArray > cells = new VolatileImgCells< VolatileShortArray >( c, 1, dimensions, cellDimensions );
+		final CellImg< T, VolatileShortArray, VolatileCell< VolatileShortArray > > img = new CellImg< T, VolatileShortArray, VolatileCell< VolatileShortArray > >( null, cells );
+		return img;
+	}
+}
@@ -0,0 +1,275 @@
+package bdv.img.raw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import bdv.img.hdf5.Util;
+
+/**
+ * The index of a raw chunk store. A raw chunk store is a directory containing
+ * the index file {@value #INDEX_FILE_NAME} and one flat file of uint16 chunks
+ * per (timepoint, setup, level) image at {@link #getChunksFile(int, int, int)}.
+ * <p>
+ * Every chunk occupies a slot of fixed size (the full cell size given by the
+ * subdivisions of the level), so the offset of a chunk in the file is its flat
+ * cell index times the slot size. Border chunks, which are smaller than a full
+ * cell, are stored at the start of their slot. The voxels of a chunk are
+ * stored in flat (x fastest) order.
+ * <p>
+ * The index stores the byte order of the chunk files, the number of
+ * timepoints and setups, the mipmap resolutions and subdivisions of each
+ * setup, and the dimensions of every image (all zero, if the image is
+ * missing).
+ */
+public class RawChunkIndex
+{
+	public static final String INDEX_FILE_NAME = "chunks.index";
+
+	private static final int MAGIC = 0x42445652;
+
+	private static final int VERSION = 1;
+
+	private final File directory;
+
+	private final ByteOrder byteOrder;
+
+	private final int numTimepoints;
+
+	private final int numSetups;
+
+	private final ArrayList< double[][] > perSetupMipmapResolutions;
+
+	private final ArrayList< int[][] > perSetupSubdivisions;
+
+	private final int maxNumLevels;
+
+	/**
+	 * Dimensions of each image, indexed by
+	 * {@link #getImageIndex(int, int, int)}.
+	 */
+	private final long[][] dimensions;
+
+	/**
+	 * Create an index for a new chunk store. The dimensions of all images are
+	 * initially zero, i.e., missing.
+	 */
+	public RawChunkIndex( final File directory, final ByteOrder byteOrder, final int numTimepoints, final ArrayList< double[][] > perSetupMipmapResolutions, final ArrayList< int[][] > perSetupSubdivisions )
+	{
+		this.directory = directory;
+		this.byteOrder = byteOrder;
+		this.numTimepoints = numTimepoints;
+		this.numSetups = perSetupMipmapResolutions.size();
+		this.perSetupMipmapResolutions = perSetupMipmapResolutions;
+		this.perSetupSubdivisions = perSetupSubdivisions;
+		int n = 0;
+		for ( final double[][] resolutions : perSetupMipmapResolutions )
+			n = Math.max( n, resolutions.length );
+		maxNumLevels = n;
+		dimensions = new long[ numTimepoints * numSetups * maxNumLevels ][];
+		for ( int i = 0; i < dimensions.length; ++i )
+			dimensions[ i ] = new long[ 3 ];
+	}
+
+	/**
+	 * Read the index of an existing chunk store.
+	 *
+	 * @param directory
+	 *            the chunk store directory.
+	 */
+	public static RawChunkIndex read( final File directory ) throws IOException
+	{
+		final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( new File( directory, INDEX_FILE_NAME ) ) ) );
+		try
+		{
+			if ( in.readInt() != MAGIC )
+				throw new IOException( "not a chunk store index: " + new File( directory, INDEX_FILE_NAME ) );
+			final int version = in.readInt();
+			if ( version != VERSION )
+				throw new IOException( "unsupported chunk store index version " + version );
+			final ByteOrder byteOrder = in.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+			final int numTimepoints = in.readInt();
+			final int numSetups = in.readInt();
+			final ArrayList< double[][] > perSetupMipmapResolutions = new ArrayList< double[][] >();
+			final ArrayList< int[][] > perSetupSubdivisions = new ArrayList< int[][] >();
+			for ( int setup = 0; setup < numSetups; ++setup )
+			{
+				final int numLevels = in.readInt();
+				final double[][] resolutions = new double[ numLevels ][ 3 ];
+				final int[][] subdivisions = new int[ numLevels ][ 3 ];
+				for ( int level = 0; level < numLevels; ++level )
+				{
+					for ( int d = 0; d < 3; ++d )
+						resolutions[ level ][ d ] = in.readDouble();
+					for ( int d = 0; d < 3; ++d )
+						subdivisions[ level ][ d ] = in.readInt();
+				}
+				perSetupMipmapResolutions.add( resolutions );
+				perSetupSubdivisions.add( subdivisions );
+			}
+			final RawChunkIndex index = new RawChunkIndex( directory, byteOrder, numTimepoints, perSetupMipmapResolutions, perSetupSubdivisions );
+			for ( int timepoint = 0; timepoint < numTimepoints; ++timepoint )
+				for ( int setup = 0; setup < numSetups; ++setup )
+					for ( int level = 0; level < perSetupMipmapResolutions.get( setup ).length; ++level )
+					{
+						final long[] dims = index.dimensions[ index.getImageIndex( timepoint, setup, level ) ];
+						for ( int d = 0; d < 3; ++d )
+							dims[ d ] = in.readLong();
+					}
+			return index;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Write the index to the chunk store directory.
+	 */
+	public void write() throws IOException
+	{
+		directory.mkdirs();
+		final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( new File( directory, INDEX_FILE_NAME ) ) ) );
+		try
+		{
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+			out.writeBoolean( byteOrder == ByteOrder.BIG_ENDIAN );
+			out.writeInt( numTimepoints );
+			out.writeInt( numSetups );
+			for ( int setup = 0; setup < numSetups; ++setup )
+			{
+				final double[][] resolutions = perSetupMipmapResolutions.get( setup );
+				final int[][] subdivisions = perSetupSubdivisions.get( setup );
+				out.writeInt( resolutions.length );
+				for ( int level = 0; level < resolutions.length; ++level )
+				{
+					for ( int d = 0; d < 3; ++d )
+						out.writeDouble( resolutions[ level ][ d ] );
+					for ( int d = 0; d < 3; ++d )
+						out.writeInt( subdivisions[ level ][ d ] );
+				}
+			}
+			for ( int timepoint = 0; timepoint < numTimepoints; ++timepoint )
+				for ( int setup = 0; setup < numSetups; ++setup )
+					for ( int level = 0; level < perSetupMipmapResolutions.get( setup ).length; ++level )
+					{
+						final long[] dims = dimensions[ getImageIndex( timepoint, setup, level ) ];
+						for ( int d = 0; d < 3; ++d )
+							out.writeLong( dims[ d ] );
+					}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public ByteOrder getByteOrder()
+	{
+		return byteOrder;
+	}
+
+	public int numTimepoints()
+	{
+		return numTimepoints;
+	}
+
+	public int numSetups()
+	{
+		return numSetups;
+	}
+
+	public int getMaxNumLevels()
+	{
+		return maxNumLevels;
+	}
+
+	public double[][] getMipmapResolutions( final int setup )
+	{
+		return perSetupMipmapResolutions.get( setup );
+	}
+
+	public int[][] getSubdivisions( final int setup )
+	{
+		return perSetupSubdivisions.get( setup );
+	}
+
+	/**
+	 * Get the dimensions of an image.
+	 *
+	 * @return dimensions of the image. These are all zero if the image is
+	 *         missing.
+	 */
+	public long[] getDimensions( final int timepoint, final int setup, final int level )
+	{
+		return dimensions[ getImageIndex( timepoint, setup, level ) ];
+	}
+
+	public void setDimensions( final int timepoint, final int setup, final int level, final long[] dims )
+	{
+		System.arraycopy( dims, 0, dimensions[ getImageIndex( timepoint, setup, level ) ], 0, 3 );
+	}
+
+	/**
+	 * @return whether the data of the image is present.
+	 */
+	public boolean exists( final int timepoint, final int setup, final int level )
+	{
+		final long[] dims = getDimensions( timepoint, setup, level );
+		return dims[ 0 ] > 0 && dims[ 1 ] > 0 && dims[ 2 ] > 0;
+	}
+
+	/**
+	 * Get the file containing the chunks of an image.
+	 */
+	public File getChunksFile( final int timepoint, final int setup, final int level )
+	{
+		return new File( directory, Util.getCellsPath( timepoint, setup, level ) );
+	}
+
+	/**
+	 * Get the size in bytes of the slot of one chunk in the chunks file of the
+	 * given setup and level.
+	 */
+	public long getChunkSlotSizeInBytes( final int setup, final int level )
+	{
+		final int[] cellDims = getSubdivisions( setup )[ level ];
+		return 2l * cellDims[ 0 ] * cellDims[ 1 ] * cellDims[ 2 ];
+	}
+
+	/**
+	 * Get the flat index of the chunk with the given minimum, i.e., the
+	 * position of the chunk in its chunks file.
+	 */
+	public long getChunkIndex( final int timepoint, final int setup, final int level, final long[] min )
+	{
+		final long[] dims = getDimensions( timepoint, setup, level );
+		final int[] cellDims = getSubdivisions( setup )[ level ];
+		long index = 0;
+		for ( int d = 2; d >= 0; --d )
+		{
+			final long numCells = ( dims[ d ] - 1 ) / cellDims[ d ] + 1;
+			index = index * numCells + min[ d ] / cellDims[ d ];
+		}
+		return index;
+	}
+
+	int getImageIndex( final int timepoint, final int setup, final int level )
+	{
+		return level + maxNumLevels * ( setup + numSetups * timepoint );
+	}
+}
@@ -0,0 +1,131 @@
+package bdv.img.raw;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import bdv.img.cache.CacheArrayLoader;
+
+/**
+ * Loads {@link VolatileShortArray} blocks from a raw chunk store (see
+ * {@link RawChunkIndex}). The chunks file of each image is memory-mapped when
+ * it is accessed for the first time, and blocks are copied directly from the
+ * mapped region. Loading does not lock, so any number of fetcher threads can
+ * load blocks concurrently.
+ */
+public class RawChunkVolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
+{
+	/**
+	 * The memory-mapped chunks file of one image. Because a single mapping
+	 * cannot exceed 2GB, the file is mapped in segments of
+	 * {@link #chunksPerSegment} chunk slots each.
+	 */
+	private static class MappedChunks
+	{
+		final MappedByteBuffer[] segments;
+
+		final long chunksPerSegment;
+
+		final long slotSizeInBytes;
+
+		MappedChunks( final File file, final long slotSizeInBytes ) throws IOException
+		{
+			this.slotSizeInBytes = slotSizeInBytes;
+			chunksPerSegment = Math.max( 1, Integer.MAX_VALUE / slotSizeInBytes );
+			final long segmentSizeInBytes = chunksPerSegment * slotSizeInBytes;
+			final RandomAccessFile raf = new RandomAccessFile( file, "r" );
+			try
+			{
+				final FileChannel channel = raf.getChannel();
+				final long size = channel.size();
+				final int numSegments = ( int ) ( ( size + segmentSizeInBytes - 1 ) / segmentSizeInBytes );
+				segments = new MappedByteBuffer[ numSegments ];
+				for ( int i = 0; i < numSegments; ++i )
+				{
+					final long position = i * segmentSizeInBytes;
+					segments[ i ] = channel.map( FileChannel.MapMode.READ_ONLY, position, Math.min( segmentSizeInBytes, size - position ) );
+				}
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+	}
+
+	private final RawChunkIndex index;
+
+	/**
+	 * {@link MappedChunks} for every image, indexed by
+	 * {@link RawChunkIndex#getImageIndex(int, int, int)}. Entries are null
+	 * until the image is accessed for the first time.
+	 */
+	private final AtomicReferenceArray< MappedChunks > mappedChunks;
+
+	private VolatileShortArray theEmptyArray;
+
+	public RawChunkVolatileShortArrayLoader( final RawChunkIndex index )
+	{
+		this.index = index;
+		mappedChunks = new AtomicReferenceArray< MappedChunks >( index.numTimepoints() * index.numSetups() * index.getMaxNumLevels() );
+		theEmptyArray = new VolatileShortArray( 32 * 32 * 32, false );
+	}
+
+	private MappedChunks getMappedChunks( final int timepoint, final int setup, final int level )
+	{
+		final int i = index.getImageIndex( timepoint, setup, level );
+		MappedChunks chunks = mappedChunks.get( i );
+		if ( chunks == null )
+		{
+			try
+			{
+				chunks = new MappedChunks( index.getChunksFile( timepoint, setup, level ), index.getChunkSlotSizeInBytes( setup, level ) );
+			}
+			catch ( final IOException e )
+			{
+				throw new RuntimeException( e );
+			}
+			if ( !mappedChunks.compareAndSet( i, null, chunks ) )
+				chunks = mappedChunks.get( i );
+		}
+		return chunks;
+	}
+
+	@Override
+	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+		final MappedChunks chunks = getMappedChunks( timepoint, setup, level );
+		final long chunk = index.getChunkIndex( timepoint, setup, level, min );
+		final int segment = ( int ) ( chunk / chunks.chunksPerSegment );
+		final int offset = ( int ) ( ( chunk % chunks.chunksPerSegment ) * chunks.slotSizeInBytes );
+		final short[] data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final ByteBuffer buffer = chunks.segments[ segment ].duplicate();
+		buffer.position( offset );
+		buffer.order( index.getByteOrder() ).asShortBuffer().get( data );
+		return new VolatileShortArray( data, true );
+	}
+
+	@Override
+	public VolatileShortArray emptyArray( final int[] dimensions )
+	{
+		int numEntities = 1;
+		for ( int i = 0; i < dimensions.length; ++i )
+			numEntities *= dimensions[ i ];
+		if ( theEmptyArray.getCurrentStorageArray().length < numEntities )
+			theEmptyArray = new VolatileShortArray( numEntities, false );
+		return theEmptyArray;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return 2;
+	}
+}
@@ -0,0 +1,190 @@
+package bdv.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import bdv.export.ProgressWriter;
+import bdv.img.cache.Cache;
+import bdv.viewer.animate.SimilarityTransformAnimator;
+import bdv.viewer.state.ViewerState;
+
+/**
+ * A camera path through a dataset, given by a list of keyframes. Each keyframe
+ * specifies a viewer transform, a timepoint, and the number of frames it takes
+ * to get there from the previous keyframe. Viewer transforms between keyframes
+ * are interpolated by a {@link SimilarityTransformAnimator}, timepoints
+ * linearly.
+ * <p>
+ * The path can be turned into a list of {@link ViewerState} snapshots (see
+ * {@link #createFrames(ViewerState)}), or {@link #render(ViewerState, int, int, Cache, File, ProgressWriter) rendered}
+ * to PNG images with a {@link MovieRenderer}.
+ */
+public class CameraPath
+{
+	public static class Keyframe
+	{
+		private final AffineTransform3D transform;
+
+		private final int timepoint;
+
+		private final int numFrames;
+
+		/**
+		 * @param transform
+		 *            viewer transform at the keyframe.
+		 * @param timepoint
+		 *            timepoint at the keyframe.
+		 * @param numFrames
+		 *            number of frames from the previous keyframe to this one
+		 *            (ignored for the first keyframe).
+		 */
+		public Keyframe( final AffineTransform3D transform, final int timepoint, final int numFrames )
+		{
+			this.transform = transform.copy();
+			this.timepoint = timepoint;
+			this.numFrames = Math.max( 1, numFrames );
+		}
+
+		public AffineTransform3D getTransform()
+		{
+			return transform.copy();
+		}
+
+		public int getTimepoint()
+		{
+			return timepoint;
+		}
+
+		public int getNumFrames()
+		{
+			return numFrames;
+		}
+	}
+
+	private final ArrayList< Keyframe > keyframes = new ArrayList< Keyframe >();
+
+	private final double viewerCenterX;
+
+	private final double viewerCenterY;
+
+	/**
+	 * @param width
+	 *            width of the rendered frames. Rotations between keyframes are
+	 *            around the center of the frame.
+	 * @param height
+	 *            height of the rendered frames.
+	 */
+	public CameraPath( final int width, final int height )
+	{
+		viewerCenterX = width / 2.0;
+		viewerCenterY = height / 2.0;
+	}
+
+	/**
+	 * Append a keyframe.
+	 *
+	 * @param transform
+	 *            viewer transform at the keyframe.
+	 * @param timepoint
+	 *            timepoint at the keyframe.
+	 * @param numFrames
+	 *            number of frames from the previous keyframe to this one
+	 *            (ignored for the first keyframe).
+	 */
+	public void addKeyframe( final AffineTransform3D transform, final int timepoint, final int numFrames )
+	{
+		keyframes.add( new Keyframe( transform, timepoint, numFrames ) );
+	}
+
+	public List< Keyframe > getKeyframes()
+	{
+		return keyframes;
+	}
+
+	/**
+	 * Get the total number of frames of the path.
+	 */
+	public int numFrames()
+	{
+		if ( keyframes.isEmpty() )
+			return 0;
+		int n = 1;
+		for ( int k = 1; k < keyframes.size(); ++k )
+			n += keyframes.get( k ).getNumFrames();
+		return n;
+	}
+
+	/**
+	 * Create a {@link ViewerState} for every frame of the path. The frames are
+	 * {@link ViewerState#copy() copies} of the given template (which
+	 * determines visible sources, interpolation, etc.), with viewer transform
+	 * and timepoint set according to the path. The last frame is the last
+	 * keyframe.
+	 *
+	 * @param template
+	 *            the state from which frames are copied.
+	 * @return list of frames.
+	 */
+	public List< ViewerState > createFrames( final ViewerState template )
+	{
+		final ArrayList< ViewerState > frames = new ArrayList< ViewerState >();
+		for ( int k = 1; k < keyframes.size(); ++k )
+		{
+			final Keyframe from = keyframes.get( k - 1 );
+			final Keyframe to = keyframes.get( k );
+			final int n = to.getNumFrames();
+			final SimilarityTransformAnimator animator = new SimilarityTransformAnimator( from.transform, to.transform, viewerCenterX, viewerCenterY, n );
+			for ( int f = 0; f < n; ++f )
+			{
+				final int timepoint = from.timepoint + ( int ) Math.round( ( double ) f * ( to.timepoint - from.timepoint ) / n );
+				frames.add( createFrame( template, animator.getCurrent( f ), timepoint ) );
+			}
+		}
+		if ( !keyframes.isEmpty() )
+		{
+			final Keyframe last = keyframes.get( keyframes.size() - 1 );
+			frames.add( createFrame( template, last.transform, last.timepoint ) );
+		}
+		return frames;
+	}
+
+	private static ViewerState createFrame( final ViewerState template, final AffineTransform3D transform, final int timepoint )
+	{
+		final ViewerState frame = template.copy();
+		frame.setViewerTransform( transform );
+		frame.setCurrentTimepoint( timepoint );
+		return frame;
+	}
+
+	/**
+	 * Render every frame of the path at full quality and write them to PNG
+	 * files in the given directory. The cells needed for the frames ahead of
+	 * the rendering threads are requested in path order (see
+	 * {@link MovieRenderer#setPrefetchWindow(int)}), so that loading overlaps
+	 * with rendering. Frames are rendered concurrently, also where the path
+	 * moves between timepoints; the sources of the template must therefore
+	 * be safe for concurrent access at different timepoints (as
+	 * {@link bdv.AbstractSpimSource} is).
+	 *
+	 * @param template
+	 *            the state from which frames are copied.
+	 * @param width
+	 *            width of the rendered images.
+	 * @param height
+	 *            height of the rendered images.
+	 * @param cache
+	 *            the cache providing the image data.
+	 * @param dir
+	 *            the output directory.
+	 * @param progressWriter
+	 *            completion ratio is reported here. May be null.
+	 */
+	public void render( final ViewerState template, final int width, final int height, final Cache cache, final File dir, final ProgressWriter progressWriter ) throws IOException, InterruptedException
+	{
+		final MovieRenderer renderer = new MovieRenderer( width, height, cache );
+		renderer.render( createFrames( template ), dir, 0, progressWriter );
+	}
+}
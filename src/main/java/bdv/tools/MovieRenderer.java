@@ -0,0 +1,411 @@
+package bdv.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.ui.PainterThread;
+import net.imglib2.ui.RenderTarget;
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterConsole;
+import bdv.img.cache.Cache;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.viewer.Source;
+import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.Prefetcher;
+import bdv.viewer.state.SourceState;
+import bdv.viewer.state.ViewerState;
+
+/**
+ * Renders a sequence of {@link ViewerState} snapshots off-screen and writes
+ * them as PNG images, without touching the viewer.
+ * <p>
+ * Several frames are rendered concurrently, each rendering thread with its own
+ * {@link MultiResolutionRenderer} (at full resolution, with non-volatile
+ * sources). Rendered images are handed to separate writer threads for PNG
+ * encoding, so rendering does not wait for encoding. While frames are
+ * rendered, the cells needed for the next few frames are requested
+ * asynchronously from the {@link VolatileGlobalCellCache}, so that their
+ * loading overlaps with rendering.
+ * <p>
+ * Prefetching is limited to a {@link #setPrefetchWindow(int) window} of frames
+ * ahead of the slowest rendering thread. Requests beyond that would not help:
+ * whenever a viewer showing the same cache repaints, queued requests are moved
+ * to the cache's prefetch queue, which has a bounded capacity, and the excess
+ * is dropped. With a memory-bounded cache, cells fetched too early may also be
+ * evicted before they are rendered. The window should therefore be chosen
+ * such that the cells of that many frames fit into the prefetch capacity (see
+ * {@link VolatileGlobalCellCache#PREFETCH_CAPACITY_PROPERTY}) and into the
+ * cache.
+ */
+public class MovieRenderer
+{
+	private final int width;
+
+	private final int height;
+
+	private final Cache cache;
+
+	private final int numRenderingThreads;
+
+	private final int numWriterThreads;
+
+	/**
+	 * How many frames ahead of the slowest rendering thread to prefetch.
+	 */
+	private int prefetchWindow;
+
+	/**
+	 * @param width
+	 *            width of the rendered images.
+	 * @param height
+	 *            height of the rendered images.
+	 * @param cache
+	 *            the cache providing the image data. If this is a
+	 *            {@link VolatileGlobalCellCache}, cells for upcoming frames are
+	 *            prefetched.
+	 * @param numRenderingThreads
+	 *            how many frames to render concurrently.
+	 * @param numWriterThreads
+	 *            how many threads to use for PNG encoding.
+	 */
+	public MovieRenderer( final int width, final int height, final Cache cache, final int numRenderingThreads, final int numWriterThreads )
+	{
+		this.width = width;
+		this.height = height;
+		this.cache = cache;
+		this.numRenderingThreads = Math.max( 1, numRenderingThreads );
+		this.numWriterThreads = Math.max( 1, numWriterThreads );
+		prefetchWindow = 2 * this.numRenderingThreads;
+	}
+
+	/**
+	 * Create a renderer that uses all available processors for rendering and
+	 * half as many threads for writing.
+	 */
+	public MovieRenderer( final int width, final int height, final Cache cache )
+	{
+		this( width, height, cache, Runtime.getRuntime().availableProcessors(), Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ) );
+	}
+
+	/**
+	 * Set how many frames ahead of the slowest rendering thread the cells
+	 * needed for rendering are requested. Frames are requested in order, and
+	 * every cell only once (the cache ignores repeated requests), so the
+	 * fetcher threads stream the union of the cells needed in the order in
+	 * which they will be rendered. The default is twice the number of
+	 * rendering threads. See the class description for limits.
+	 *
+	 * @param numFrames
+	 *            the size of the prefetch window, 0 to disable prefetching.
+	 */
+	public void setPrefetchWindow( final int numFrames )
+	{
+		prefetchWindow = Math.max( 0, numFrames );
+	}
+
+	/**
+	 * Transform a viewer transform for a canvas of the given size such that the
+	 * same region is visible (centered and scaled) on a canvas of the given
+	 * output size.
+	 */
+	public static void scaleToOutputSize( final AffineTransform3D viewerTransform, final int canvasW, final int canvasH, final int width, final int height )
+	{
+		viewerTransform.set( viewerTransform.get( 0, 3 ) - canvasW / 2, 0, 3 );
+		viewerTransform.set( viewerTransform.get( 1, 3 ) - canvasH / 2, 1, 3 );
+		viewerTransform.scale( ( double ) width / canvasW );
+		viewerTransform.set( viewerTransform.get( 0, 3 ) + width / 2, 0, 3 );
+		viewerTransform.set( viewerTransform.get( 1, 3 ) + height / 2, 1, 3 );
+	}
+
+	/**
+	 * Render frames and write them to <code>img-%03d.png</code> files in the
+	 * given directory. Frame <em>i</em> is written with number
+	 * <code>firstIndex + i</code>.
+	 *
+	 * @param frames
+	 *            the states to render. These should not be modified while
+	 *            rendering (use {@link ViewerState#copy()} snapshots).
+	 * @param dir
+	 *            the output directory.
+	 * @param firstIndex
+	 *            the number of the first frame in the file names.
+	 * @param progressWriter
+	 *            completion ratio is reported here. May be null.
+	 * @throws IOException
+	 *             if writing an image failed.
+	 * @throws InterruptedException
+	 *             if the calling thread was interrupted. Rendering is
+	 *             stopped.
+	 */
+	public void render( final List< ViewerState > frames, final File dir, final int firstIndex, ProgressWriter progressWriter ) throws IOException, InterruptedException
+	{
+		if ( progressWriter == null )
+			progressWriter = new ProgressWriterConsole();
+		final ProgressWriter progress = progressWriter;
+		final int numFrames = frames.size();
+		progress.setProgress( 0 );
+
+		// For every rendering thread, the frame it is rendering, or numFrames
+		// if it is done. Frames up to the prefetch window ahead of the
+		// slowest thread are prefetched, each by the thread that claims it
+		// from nextPrefetchFrame.
+		final int[] renderingFrames = new int[ numRenderingThreads ];
+		final AtomicInteger nextPrefetchFrame = new AtomicInteger();
+		prefetchUpTo( frames, Math.min( numFrames, prefetchWindow ), nextPrefetchFrame );
+
+		final ExecutorService writers = Executors.newFixedThreadPool( numWriterThreads, new WriterThreadFactory() );
+
+		// bound the number of rendered images waiting to be written
+		final Semaphore pendingImages = new Semaphore( 2 * numWriterThreads + numRenderingThreads );
+		final AtomicInteger nextFrame = new AtomicInteger();
+		final AtomicInteger numWritten = new AtomicInteger();
+		final AtomicReference< Exception > failure = new AtomicReference< Exception >();
+
+		final ArrayList< Thread > renderers = new ArrayList< Thread >();
+		for ( int t = 0; t < numRenderingThreads; ++t )
+		{
+			final int threadIndex = t;
+			final Thread renderer = new Thread( "MovieRenderer-render-" + t )
+			{
+				@Override
+				public void run()
+				{
+					final FrameRenderer frameRenderer = new FrameRenderer();
+					try
+					{
+						for ( int i = nextFrame.getAndIncrement(); i < numFrames && failure.get() == null; i = nextFrame.getAndIncrement() )
+						{
+							int slowest;
+							synchronized ( renderingFrames )
+							{
+								renderingFrames[ threadIndex ] = i;
+								slowest = i;
+								for ( final int f : renderingFrames )
+									slowest = Math.min( slowest, f );
+							}
+							prefetchUpTo( frames, Math.min( numFrames, slowest + prefetchWindow + 1 ), nextPrefetchFrame );
+
+							final BufferedImage image = frameRenderer.render( frames.get( i ) );
+							final File file = new File( String.format( "%s/img-%03d.png", dir, firstIndex + i ) );
+							pendingImages.acquire();
+							writers.execute( new Runnable()
+							{
+								@Override
+								public void run()
+								{
+									try
+									{
+										if ( failure.get() == null )
+											ImageIO.write( image, "png", file );
+									}
+									catch ( final IOException e )
+									{
+										failure.compareAndSet( null, e );
+									}
+									finally
+									{
+										pendingImages.release();
+									}
+									final int n = numWritten.incrementAndGet();
+									synchronized ( progress )
+									{
+										progress.setProgress( ( double ) n / numFrames );
+									}
+								}
+							} );
+						}
+					}
+					catch ( final InterruptedException e )
+					{
+						failure.compareAndSet( null, e );
+					}
+					catch ( final RuntimeException e )
+					{
+						failure.compareAndSet( null, e );
+					}
+					finally
+					{
+						frameRenderer.kill();
+						synchronized ( renderingFrames )
+						{
+							renderingFrames[ threadIndex ] = numFrames;
+						}
+					}
+				}
+			};
+			renderers.add( renderer );
+			renderer.start();
+		}
+
+		try
+		{
+			for ( final Thread renderer : renderers )
+				renderer.join();
+		}
+		catch ( final InterruptedException e )
+		{
+			failure.compareAndSet( null, e );
+			for ( final Thread renderer : renderers )
+				renderer.interrupt();
+		}
+		writers.shutdown();
+		writers.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+
+		final Exception e = failure.get();
+		if ( e instanceof IOException )
+			throw ( IOException ) e;
+		if ( e instanceof InterruptedException )
+			throw ( InterruptedException ) e;
+		if ( e instanceof RuntimeException )
+			throw ( RuntimeException ) e;
+	}
+
+	/**
+	 * Prefetch all frames before the given end that have not been claimed by
+	 * another thread yet.
+	 *
+	 * @param end
+	 *            index of the first frame not to prefetch.
+	 * @param nextPrefetchFrame
+	 *            the next frame to prefetch, shared by all threads.
+	 */
+	private void prefetchUpTo( final List< ViewerState > frames, final int end, final AtomicInteger nextPrefetchFrame )
+	{
+		int f;
+		while ( ( f = nextPrefetchFrame.get() ) < end )
+			if ( nextPrefetchFrame.compareAndSet( f, f + 1 ) )
+				prefetch( frames.get( f ) );
+	}
+
+	/**
+	 * Request the cells needed to render the given frame, without waiting
+	 * for them to be loaded. This does nothing if the {@link #cache} is not a
+	 * {@link VolatileGlobalCellCache}, and for sources without a volatile
+	 * version.
+	 */
+	private void prefetch( final ViewerState state )
+	{
+		if ( !( cache instanceof VolatileGlobalCellCache ) )
+			return;
+		final VolatileGlobalCellCache< ? > c = ( VolatileGlobalCellCache< ? > ) cache;
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		final AffineTransform3D screenScaleTransform = new AffineTransform3D();
+		final FinalInterval screenInterval = new FinalInterval( width, height );
+		c.setPredictiveRequests( true );
+		try
+		{
+			synchronized ( state )
+			{
+				state.getViewerTransform( viewerTransform );
+				final int timepoint = state.getCurrentTimepoint();
+				final List< SourceState< ? > > sources = state.getSources();
+				for ( final int i : state.getVisibleSourceIndices() )
+				{
+					final SourceState< ? > source = sources.get( i );
+					if ( source.asVolatile() == null )
+						continue;
+					final Source< ? > volatileSource = source.asVolatile().getSpimSource();
+					if ( !volatileSource.isPresent( timepoint ) )
+						continue;
+					final int level = state.getBestMipMapLevel( screenScaleTransform, i );
+					Prefetcher.fetchCells( viewerTransform, timepoint, state.getInterpolation(), volatileSource, screenScaleTransform, level, screenInterval, null );
+				}
+			}
+		}
+		finally
+		{
+			c.setPredictiveRequests( false );
+		}
+	}
+
+	/**
+	 * Renders frames with its own {@link MultiResolutionRenderer}. Not thread
+	 * safe, every rendering thread has its own instance.
+	 */
+	private class FrameRenderer implements RenderTarget
+	{
+		private final MultiResolutionRenderer renderer;
+
+		private BufferedImage bufferedImage;
+
+		public FrameRenderer()
+		{
+			renderer = new MultiResolutionRenderer( this, new PainterThread( null ), new double[] { 1 }, 0, false, 1, null, false, new Cache()
+			{
+				@Override
+				public void initIoTimeBudget( final long[] partialBudget )
+				{}
+
+				@Override
+				public void prepareNextFrame()
+				{}
+			} );
+		}
+
+		/**
+		 * Shut down the threads of the {@link MultiResolutionRenderer}. This
+		 * instance must not be used afterwards.
+		 */
+		public void kill()
+		{
+			renderer.kill();
+		}
+
+		/**
+		 * Render a frame and return a copy of the rendered image.
+		 */
+		public BufferedImage render( final ViewerState state )
+		{
+			renderer.requestRepaint();
+			renderer.paint( state );
+			// the renderer reuses its image for the next frame
+			return new BufferedImage( bufferedImage.getColorModel(), bufferedImage.copyData( null ), bufferedImage.isAlphaPremultiplied(), null );
+		}
+
+		@Override
+		public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
+		{
+			this.bufferedImage = bufferedImage;
+			return null;
+		}
+
+		@Override
+		public int getWidth()
+		{
+			return width;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return height;
+		}
+	}
+
+	private static final class WriterThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+		@Override
+		public Thread newThread( final Runnable r )
+		{
+			final Thread t = new Thread( r, "MovieRenderer-writer-" + threadNumber.getAndIncrement() );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+}
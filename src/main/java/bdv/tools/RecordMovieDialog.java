@@ -6,11 +6,11 @@ import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 
-import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.ActionMap;
@@ -31,12 +31,8 @@ import javax.swing.event.ChangeListener;
 
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.ui.OverlayRenderer;
-import net.imglib2.ui.PainterThread;
-import net.imglib2.ui.RenderTarget;
 import bdv.export.ProgressWriter;
-import bdv.img.cache.Cache;
 import bdv.viewer.ViewerPanel;
-import bdv.viewer.render.MultiResolutionRenderer;
 import bdv.viewer.state.ViewerState;
 
 public class RecordMovieDialog extends JDialog implements OverlayRenderer
@@ -185,15 +181,23 @@ public class RecordMovieDialog extends JDialog implements OverlayRenderer
 					@Override
 					public void run()
 					{
+						recordButton.setEnabled( false );
 						try
 						{
-							recordButton.setEnabled( false );
 							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, dir );
-							recordButton.setEnabled( true );
+						}
+						catch ( final InterruptedException ex )
+						{
+							err().println( "Recording movie was interrupted." );
 						}
 						catch ( final Exception ex )
 						{
-							ex.printStackTrace();
+							err().println( "Recording movie failed:" );
+							ex.printStackTrace( err() );
+						}
+						finally
+						{
+							recordButton.setEnabled( true );
 						}
 					}
 				}.start();
@@ -220,7 +224,17 @@ public class RecordMovieDialog extends JDialog implements OverlayRenderer
 		setDefaultCloseOperation( JDialog.HIDE_ON_CLOSE );
 	}
 
-	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final File dir ) throws IOException
+	/**
+	 * Render the current view for the given range of timepoints and write the
+	 * images to PNG files in the given directory. Rendering is done by a
+	 * {@link MovieRenderer} on snapshots of the viewer state, so the viewer
+	 * remains usable.
+	 *
+	 * @throws InterruptedException
+	 *             if the calling thread was interrupted before all frames were
+	 *             written.
+	 */
+	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final File dir ) throws IOException, InterruptedException
 	{
 		final ViewerState renderState = viewer.getState();
 		final int canvasW = viewer.getDisplay().getWidth();
@@ -228,56 +242,23 @@ public class RecordMovieDialog extends JDialog implements OverlayRenderer
 
 		final AffineTransform3D affine = new AffineTransform3D();
 		renderState.getViewerTransform( affine );
-		affine.set( affine.get( 0, 3 ) - canvasW / 2, 0, 3 );
-		affine.set( affine.get( 1, 3 ) - canvasH / 2, 1, 3 );
-		affine.scale( ( double ) width / canvasW );
-		affine.set( affine.get( 0, 3 ) + width / 2, 0, 3 );
-		affine.set( affine.get( 1, 3 ) + height / 2, 1, 3 );
+		MovieRenderer.scaleToOutputSize( affine, canvasW, canvasH, width, height );
 		renderState.setViewerTransform( affine );
 
-		class MyTarget implements RenderTarget
-		{
-			BufferedImage bi;
-
-			@Override
-			public BufferedImage setBufferedImage( final BufferedImage bufferedImage )
-			{
-				bi = bufferedImage;
-				return null;
-			}
-
-			@Override
-			public int getWidth()
-			{
-				return width;
-			}
-
-			@Override
-			public int getHeight()
-			{
-				return height;
-			}
-		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer( target, new PainterThread( null ), new double[] { 1 }, 0, false, 1, null, false, new Cache()
-		{
-			@Override
-			public void initIoTimeBudget( final long[] partialBudget )
-			{}
-
-			@Override
-			public void prepareNextFrame()
-			{}
-		} );
-		progressWriter.setProgress( 0 );
+		final ArrayList< ViewerState > frames = new ArrayList< ViewerState >();
 		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 		{
-			renderState.setCurrentTimepoint( timepoint );
-			renderer.requestRepaint();
-			renderer.paint( renderState );
-			ImageIO.write( target.bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
+			final ViewerState frame = renderState.copy();
+			frame.setCurrentTimepoint( timepoint );
+			frames.add( frame );
 		}
+
+		new MovieRenderer( width, height, viewer.getCache() ).render( frames, dir, minTimepointIndex, progressWriter );
+	}
+
+	private PrintStream err()
+	{
+		return progressWriter == null ? System.err : progressWriter.err();
 	}
 
 	@Override
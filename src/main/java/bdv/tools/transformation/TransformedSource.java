@@ -1,6 +1,7 @@
 package bdv.tools.transformation;
 
 import bdv.viewer.Interpolation;
+import bdv.viewer.PrefetchableSource;
 import bdv.viewer.Source;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
@@ -12,13 +13,16 @@ import net.imglib2.realtransform.AffineTransform3D;
  * <p>
  * This extra transformation is made to capture manual editing of the actual
  * transform in the SpimViewer.
+ * <p>
+ * {@link #loadSource(int, int, AffineTransform3D)} is supported if the wrapped
+ * source is a {@link PrefetchableSource}, otherwise it returns null.
  *
  * @author Jean-Yves Tinevez - Sept 2013
  *
  * @param <T>
  *            the type of the original source.
  */
-public class TransformedSource< T > implements Source< T >
+public class TransformedSource< T > implements PrefetchableSource< T >
 {
 	protected final Source< T > source;
 
@@ -38,12 +42,6 @@ public class TransformedSource< T > implements Source< T >
 	 */
 	protected final AffineTransform3D sourceTransform;
 
-	/**
-	 * temporary. concatenation of {@link #sourceTransform} and the transform
-	 * obtained from the decorated source.
-	 */
-	protected final AffineTransform3D composed;
-
 	/**
 	 * Instantiates a new {@link TransformedSource} wrapping the specified
 	 * source with the identity transform.
@@ -57,7 +55,6 @@ public class TransformedSource< T > implements Source< T >
 		incrementalTransform = new AffineTransform3D();
 		fixedTransform = new AffineTransform3D();
 		sourceTransform = new AffineTransform3D();
-		composed = new AffineTransform3D();
 	}
 
 	public TransformedSource( final Source< T > source, final TransformedSource< ? > shareTransform )
@@ -66,7 +63,6 @@ public class TransformedSource< T > implements Source< T >
 		this.incrementalTransform = shareTransform.incrementalTransform;
 		this.fixedTransform = shareTransform.fixedTransform;
 		this.sourceTransform = shareTransform.sourceTransform;
-		this.composed = shareTransform.composed;
 	}
 
 	/*
@@ -147,10 +143,20 @@ public class TransformedSource< T > implements Source< T >
 	 * SOURCE methods
 	 */
 
+	/**
+	 * Get the transform from the {@link #getSource(int, int) source} at
+	 * timepoint t into the global coordinate system. This returns a new
+	 * {@link AffineTransform3D}, so that the result is not changed by
+	 * concurrent calls for other timepoints.
+	 */
 	@Override
-	public synchronized AffineTransform3D getSourceTransform( final int t, final int level )
+	public AffineTransform3D getSourceTransform( final int t, final int level )
 	{
-		composed.set( sourceTransform );
+		final AffineTransform3D composed = new AffineTransform3D();
+		synchronized ( this )
+		{
+			composed.set( sourceTransform );
+		}
 		composed.concatenate( source.getSourceTransform( t, level ) );
 		return composed;
 	}
@@ -173,6 +179,19 @@ public class TransformedSource< T > implements Source< T >
 		return source.getInterpolatedSource( t, level, method );
 	}
 
+	@Override
+	public RandomAccessibleInterval< T > loadSource( final int t, final int level, final AffineTransform3D transform )
+	{
+		if ( !( source instanceof PrefetchableSource ) )
+			return null;
+		final RandomAccessibleInterval< T > img = ( ( PrefetchableSource< T > ) source ).loadSource( t, level, transform );
+		synchronized ( this )
+		{
+			transform.preConcatenate( sourceTransform );
+		}
+		return img;
+	}
+
 	@Override
 	public T getType()
 	{
@@ -0,0 +1,31 @@
+package bdv.viewer;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * A {@link Source} that can provide the image data of arbitrary timepoints
+ * for prefetching, without changing what it keeps loaded for rendering.
+ */
+public interface PrefetchableSource< T > extends Source< T >
+{
+	/**
+	 * Get the 3D stack at timepoint t directly from the underlying image
+	 * loader. Unlike {@link #getSource(int, int)}, this does not load the
+	 * timepoint into the source, so it can be used to request data for
+	 * timepoints that will be shown later, without evicting the timepoints
+	 * being rendered.
+	 *
+	 * @param t
+	 *            timepoint index
+	 * @param level
+	 *            mipmap level
+	 * @param sourceTransform
+	 *            is set to the transform from the returned stack into the
+	 *            global coordinate system (see
+	 *            {@link #getSourceTransform(int, int)}).
+	 * @return the {@link RandomAccessibleInterval stack}, or null if there is
+	 *         no data for timepoint t.
+	 */
+	public RandomAccessibleInterval< T > loadSource( int t, int level, AffineTransform3D sourceTransform );
+}
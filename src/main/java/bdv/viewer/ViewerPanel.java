@@ -21,7 +21,10 @@ import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.event.ChangeEvent;
@@ -51,7 +54,14 @@ import bdv.viewer.animate.TextOverlayAnimator;
 import bdv.viewer.animate.TextOverlayAnimator.TextPosition;
 import bdv.viewer.overlay.MultiBoxOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
+import bdv.viewer.render.DefaultScreenScaleController;
+import bdv.viewer.render.FrameStatisticsListener;
+import bdv.viewer.render.IoTimeBudgetController;
 import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.RenderingStatistics;
+import bdv.viewer.render.ScreenScaleController;
+import bdv.viewer.render.TransformHistory;
+import bdv.viewer.render.TransformPredictor;
 import bdv.viewer.state.SourceGroup;
 import bdv.viewer.state.SourceState;
 import bdv.viewer.state.ViewerState;
@@ -116,6 +126,20 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	 */
 	protected final ExecutorService renderingExecutorService;
 
+	/**
+	 * If this system property is set to true, every viewer publishes its
+	 * {@link RenderingStatistics} as a JMX MBean.
+	 */
+	public static final String RENDERING_STATISTICS_JMX_PROPERTY = "bdv.viewer.jmx";
+
+	private static final AtomicInteger viewerCount = new AtomicInteger();
+
+	/**
+	 * Name of the {@link RenderingStatistics} MBean of this viewer, or null
+	 * if it was not registered.
+	 */
+	protected ObjectName renderingStatisticsName;
+
 	/**
 	 * Keeps track of the current mouse coordinates, which are used to provide
 	 * the current global position (see {@link #getGlobalMouseCoordinates(RealPositionable)}).
@@ -140,7 +164,13 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	 * to make smooth transitions when {@link #align(AlignPlane) aligning to
 	 * orthogonal planes}.
 	 */
-	protected AbstractTransformAnimator currentAnimator = null;
+	protected volatile AbstractTransformAnimator currentAnimator = null;
+
+	/**
+	 * Recent viewer transforms, used to predict the navigation path for
+	 * prefetching.
+	 */
+	protected final TransformHistory transformHistory = new TransformHistory();
 
 	/**
 	 * Currently only used to show initial "press F1 for help" message.
@@ -178,6 +208,16 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 
 		private MessageOverlayAnimator msgOverlay = new MessageOverlayAnimator( 800 );
 
+		private int timepointLookahead = 3;
+
+		private boolean prefetchAroundMouse = false;
+
+		private long[] ioTimeBudget = new long[] { 100l * 1000000l,  10l * 1000000l };
+
+		private boolean adaptiveIoTimeBudget = false;
+
+		private boolean prefetchCells = true;
+
 		public Options width( final int w )
 		{
 			width = w;
@@ -219,6 +259,58 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 			msgOverlay = o;
 			return this;
 		}
+
+		/**
+		 * Set how many timepoints ahead to prefetch while stepping through
+		 * time. 0 disables timepoint look-ahead.
+		 */
+		public Options timepointLookahead( final int n )
+		{
+			timepointLookahead = n;
+			return this;
+		}
+
+		/**
+		 * Set whether cells around the mouse pointer (instead of around the
+		 * center of the screen) should be loaded first.
+		 */
+		public Options prefetchAroundMouse( final boolean b )
+		{
+			prefetchAroundMouse = b;
+			return this;
+		}
+
+		/**
+		 * Set the fixed IO time budget, i.e., how much time (in nanoseconds)
+		 * may be spent per frame in blocking IO for each priority level (0 is
+		 * the coarsest mipmap level).
+		 */
+		public Options ioTimeBudget( final long[] b )
+		{
+			ioTimeBudget = b;
+			return this;
+		}
+
+		/**
+		 * Set whether the IO time budget should be adapted to the measured
+		 * rendering and loading times (see {@link IoTimeBudgetController})
+		 * instead of using the fixed {@link #ioTimeBudget(long[])}.
+		 */
+		public Options adaptiveIoTimeBudget( final boolean b )
+		{
+			adaptiveIoTimeBudget = b;
+			return this;
+		}
+
+		/**
+		 * Set whether the cells needed for rendering should be prefetched
+		 * before rendering.
+		 */
+		public Options prefetchCells( final boolean b )
+		{
+			prefetchCells = b;
+			return this;
+		}
 	}
 
 	/**
@@ -286,8 +378,42 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 				renderTarget, painterThread,
 				optional.screenScales, optional.targetRenderNanos, optional.doubleBuffered,
 				optional.numRenderingThreads, renderingExecutorService, optional.doubleBuffered, cache );
+		imageRenderer.setTimepointLookahead( optional.timepointLookahead );
+		imageRenderer.setIoTimeBudget( optional.ioTimeBudget );
+		imageRenderer.setPrefetchCells( optional.prefetchCells );
+		setAdaptiveIoTimeBudget( optional.adaptiveIoTimeBudget );
+		imageRenderer.setTransformPredictor( new TransformPredictor()
+		{
+			@Override
+			public boolean predictTransform( final long timeMillis, final AffineTransform3D transform )
+			{
+				// an active animator knows where the view is going
+				final AbstractTransformAnimator animator = currentAnimator;
+				if ( animator != null )
+				{
+					transform.set( animator.getPredicted( timeMillis ) );
+					return true;
+				}
+				return transformHistory.predictTransform( timeMillis, display.getWidth() / 2, display.getHeight() / 2, transform );
+			}
+		} );
+
+		renderingStatisticsName = null;
+		if ( Boolean.getBoolean( RENDERING_STATISTICS_JMX_PROPERTY ) )
+		{
+			final RenderingStatistics renderingStatistics = new RenderingStatistics();
+			imageRenderer.addFrameStatisticsListener( renderingStatistics );
+			try
+			{
+				renderingStatisticsName = renderingStatistics.register( "viewer-" + viewerCount.incrementAndGet() );
+			}
+			catch ( final JMException e )
+			{
+				e.printStackTrace();
+			}
+		}
 
-		mouseCoordinates = new MouseCoordinateListener();
+		mouseCoordinates = new MouseCoordinateListener( optional.prefetchAroundMouse );
 		display.addHandler( mouseCoordinates );
 
 		add( display, BorderLayout.CENTER );
@@ -441,6 +567,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	{
 		viewerTransform.set( transform );
 		state.setViewerTransform( transform );
+		transformHistory.add( System.currentTimeMillis(), transform );
 		for ( final TransformListener< AffineTransform3D > l : transformListeners )
 			l.transformChanged( viewerTransform );
 		requestRepaint();
@@ -623,6 +750,16 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		return state.copy();
 	}
 
+	/**
+	 * Get the cache that provides the image data of the sources.
+	 *
+	 * @return the cache.
+	 */
+	public Cache getCache()
+	{
+		return cache;
+	}
+
 	/**
 	 * Get the viewer canvas.
 	 *
@@ -691,12 +828,94 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		}
 	}
 
+	/**
+	 * Add a {@link FrameStatisticsListener} that is notified after every
+	 * rendering pass.
+	 *
+	 * @param listener
+	 *            the listener to add.
+	 */
+	public void addFrameStatisticsListener( final FrameStatisticsListener listener )
+	{
+		imageRenderer.addFrameStatisticsListener( listener );
+	}
+
+	/**
+	 * Remove a {@link FrameStatisticsListener}.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeFrameStatisticsListener( final FrameStatisticsListener listener )
+	{
+		imageRenderer.removeFrameStatisticsListener( listener );
+	}
+
+	/**
+	 * Set the fixed IO time budget, i.e., how much time (in nanoseconds) may be
+	 * spent per frame in blocking IO for each priority level (0 is the
+	 * coarsest mipmap level). This is used unless the
+	 * {@link #setAdaptiveIoTimeBudget(boolean) adaptive IO time budget} is
+	 * enabled.
+	 */
+	public void setIoTimeBudget( final long[] budget )
+	{
+		imageRenderer.setIoTimeBudget( budget );
+	}
+
+	/**
+	 * Set whether the IO time budget should be adapted to the measured
+	 * rendering and loading times (see {@link IoTimeBudgetController}).
+	 */
+	public void setAdaptiveIoTimeBudget( final boolean adaptive )
+	{
+		imageRenderer.setIoTimeBudgetController( adaptive ? new IoTimeBudgetController() : null );
+	}
+
+	/**
+	 * Set whether the cells needed for rendering should be prefetched before
+	 * rendering.
+	 */
+	public void setPrefetchCells( final boolean prefetchCells )
+	{
+		imageRenderer.setPrefetchCells( prefetchCells );
+	}
+
+	/**
+	 * Set the {@link ScreenScaleController} that chooses the coarsest screen
+	 * scale with which rendering of a new frame starts. By default, this is a
+	 * {@link DefaultScreenScaleController} with the
+	 * {@link Options#targetRenderNanos(long) target rendering time} from the
+	 * {@link Options}.
+	 */
+	public void setScreenScaleController( final ScreenScaleController controller )
+	{
+		imageRenderer.setScreenScaleController( controller );
+	}
+
+	public ScreenScaleController getScreenScaleController()
+	{
+		return imageRenderer.getScreenScaleController();
+	}
+
 	protected class MouseCoordinateListener implements MouseMotionListener
 	{
 		private int x;
 
 		private int y;
 
+		/**
+		 * Whether to make the renderer
+		 * {@link MultiResolutionRenderer#setPrefetchFocus(double, double)
+		 * prefetch} around the mouse coordinates.
+		 */
+		private final boolean prefetchAroundMouse;
+
+		public MouseCoordinateListener( final boolean prefetchAroundMouse )
+		{
+			this.prefetchAroundMouse = prefetchAroundMouse;
+		}
+
 		public synchronized void getMouseCoordinates( final Positionable p )
 		{
 			p.setPosition( x, 0 );
@@ -708,6 +927,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		{
 			x = e.getX();
 			y = e.getY();
+			if ( prefetchAroundMouse )
+				imageRenderer.setPrefetchFocus( x, y );
 		}
 
 		@Override
@@ -715,6 +936,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		{
 			x = e.getX();
 			y = e.getY();
+			if ( prefetchAroundMouse )
+				imageRenderer.setPrefetchFocus( x, y );
 			display.repaint(); // TODO: only when overlays are visible
 		}
 
@@ -763,6 +986,19 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	public void stop()
 	{
 		painterThread.interrupt();
+		imageRenderer.kill();
 		renderingExecutorService.shutdown();
+		if ( renderingStatisticsName != null )
+		{
+			try
+			{
+				RenderingStatistics.unregister( renderingStatisticsName );
+			}
+			catch ( final JMException e )
+			{
+				e.printStackTrace();
+			}
+			renderingStatisticsName = null;
+		}
 	}
 }
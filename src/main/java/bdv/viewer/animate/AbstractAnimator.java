@@ -82,4 +82,21 @@ public abstract class AbstractAnimator
 	{
 		return complete;
 	}
+
+	/**
+	 * Returns the completion ratio at the given time, without changing the
+	 * {@link #setTime(long) current time}. If the animation has not started
+	 * yet, 0 is returned.
+	 *
+	 * @param time
+	 *            time (in time units)
+	 * @return the completion ratio at the given time.
+	 */
+	public double ratioComplete( final long time )
+	{
+		if ( ! started )
+			return 0;
+		final double c = ( time - startTime ) / ( double ) duration;
+		return c >= 1 ? 1 : c;
+	}
 }
@@ -42,6 +42,21 @@ public abstract class AbstractTransformAnimator extends AbstractAnimator
 		return get( ratioComplete() );
 	}
 
+	/**
+	 * Returns the {@link AffineTransform3D} for the time specified, without
+	 * changing the {@link #setTime(long) current time} of the animation. This
+	 * can be used to look ahead, e.g., for prefetching data.
+	 *
+	 * @param time
+	 *            the target absolute time for which the transform should be
+	 *            generated (in time units).
+	 * @return viewer transform for the given time.
+	 */
+	public AffineTransform3D getPredicted( final long time )
+	{
+		return get( ratioComplete( time ) );
+	}
+
 	/**
 	 * Returns an {@link AffineTransform3D} for the specified completion factor.
 	 * For values below 0, that starting transform should be returned. For
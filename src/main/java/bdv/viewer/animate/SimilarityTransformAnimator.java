@@ -0,0 +1,104 @@
+package bdv.viewer.animate;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.LinAlgHelpers;
+import bdv.util.Affine3DHelpers;
+
+/**
+ * An animator that interpolates between two viewer transforms comprising
+ * isotropic scaling, rotation, and translation. The rotation is interpolated
+ * along the shortest arc, the scale geometrically, and the global point shown
+ * at the viewer center linearly. This can be used to fly between two views,
+ * e.g., between the keyframes of a camera path.
+ */
+public class SimilarityTransformAnimator extends AbstractTransformAnimator
+{
+	private final double[] qStart;
+
+	private final double[] qAddEnd;
+
+	private final double scaleStart;
+
+	private final double scaleEnd;
+
+	private final double[] centerStart;
+
+	private final double[] centerEnd;
+
+	private final double cX, cY;
+
+	/**
+	 * @param transformStart
+	 *            viewer transform at the start of the animation.
+	 * @param transformEnd
+	 *            viewer transform at the end of the animation.
+	 * @param viewerCenterX
+	 *            x coordinate of the viewer center.
+	 * @param viewerCenterY
+	 *            y coordinate of the viewer center.
+	 * @param duration
+	 *            animation duration (in time units)
+	 */
+	public SimilarityTransformAnimator( final AffineTransform3D transformStart, final AffineTransform3D transformEnd, final double viewerCenterX, final double viewerCenterY, final long duration )
+	{
+		super( duration );
+		cX = viewerCenterX;
+		cY = viewerCenterY;
+
+		qStart = new double[ 4 ];
+		final double[] qEnd = new double[ 4 ];
+		Affine3DHelpers.extractRotation( transformStart, qStart );
+		Affine3DHelpers.extractRotation( transformEnd, qEnd );
+
+		final double[] qTmp = new double[ 4 ];
+		qAddEnd = new double[ 4 ];
+		LinAlgHelpers.quaternionInvert( qStart, qTmp );
+		LinAlgHelpers.quaternionMultiply( qEnd, qTmp, qAddEnd );
+
+		if ( qAddEnd[ 0 ] < 0 )
+			for ( int i = 0; i < 4; ++i )
+				qAddEnd[ i ] = -qAddEnd[ i ];
+
+		scaleStart = Affine3DHelpers.extractScale( transformStart, 0 );
+		scaleEnd = Affine3DHelpers.extractScale( transformEnd, 0 );
+
+		final double[] viewerCenter = new double[] { cX, cY, 0 };
+		centerStart = new double[ 3 ];
+		centerEnd = new double[ 3 ];
+		transformStart.applyInverse( centerStart, viewerCenter );
+		transformEnd.applyInverse( centerEnd, viewerCenter );
+	}
+
+	@Override
+	protected AffineTransform3D get( final double t )
+	{
+		// rotation
+		final double[] qAddCurrent = new double[ 4 ];
+		final double[] qCurrent = new double[ 4 ];
+		LinAlgHelpers.quaternionPower( qAddEnd, t, qAddCurrent );
+		LinAlgHelpers.quaternionMultiply( qAddCurrent, qStart, qCurrent );
+		final double[][] m = new double[ 3 ][ 4 ];
+		LinAlgHelpers.quaternionToR( qCurrent, m );
+
+		// scale
+		final double s = scaleStart * Math.pow( scaleEnd / scaleStart, t );
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				m[ r ][ c ] *= s;
+
+		// translation, such that the interpolated center is shown at the
+		// viewer center
+		final double[] viewerCenter = new double[] { cX, cY, 0 };
+		for ( int r = 0; r < 3; ++r )
+		{
+			double sum = 0;
+			for ( int c = 0; c < 3; ++c )
+				sum += m[ r ][ c ] * ( centerStart[ c ] + t * ( centerEnd[ c ] - centerStart[ c ] ) );
+			m[ r ][ 3 ] = viewerCenter[ r ] - sum;
+		}
+
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set( m );
+		return transform;
+	}
+}
@@ -1,9 +1,11 @@
 package bdv.viewer.render;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.imglib2.Cursor;
@@ -15,6 +17,13 @@ import net.imglib2.ui.InterruptibleProjector;
 import net.imglib2.ui.util.StopWatch;
 import net.imglib2.view.Views;
 
+/**
+ * Accumulates the target images of several {@link VolatileProjector source
+ * projectors} into one target. Source projectors that are not yet valid are
+ * mapped concurrently (if a source projection {@link ExecutorService} is
+ * given), then the accumulation is split into tasks for the rendering
+ * {@link ExecutorService}.
+ */
 public abstract class AccumulateProjector< A, B > implements VolatileProjector
 {
 	protected final ArrayList< VolatileProjector > sourceProjectors;
@@ -43,6 +52,21 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
      */
     protected final int numThreads;
 
+	/**
+	 * Used for the accumulation tasks. If null, an executor is created for
+	 * every {@link #map(boolean)}.
+	 */
+	protected final ExecutorService executorService;
+
+	/**
+	 * Runs the {@link VolatileProjector#map(boolean)} calls of the source
+	 * projectors. These mostly wait for their own rendering tasks (in the
+	 * {@link #executorService}), so this must not be the
+	 * {@link #executorService} or another bounded pool. If null, source
+	 * projectors are mapped one after another in the calling thread.
+	 */
+	protected final ExecutorService sourceProjectionExecutorService;
+
     /**
      * Time needed for rendering the last frame, in nano-seconds.
      */
@@ -58,6 +82,18 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
 			final Converter< ? super A, B > converter,
 			final RandomAccessibleInterval< B > target,
 			final int numThreads )
+	{
+		this( sourceProjectors, sources, converter, target, numThreads, null, null );
+	}
+
+	public AccumulateProjector(
+			final ArrayList< VolatileProjector > sourceProjectors,
+			final ArrayList< ? extends RandomAccessible< A > > sources,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final int numThreads,
+			final ExecutorService executorService,
+			final ExecutorService sourceProjectionExecutorService )
 	{
 		this.sourceProjectors = sourceProjectors;
 		this.sources = new ArrayList< IterableInterval< A > >();
@@ -67,6 +103,8 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
 		this.target = target;
 		this.iterableTarget = Views.flatIterable( target );
 		this.numThreads = numThreads;
+		this.executorService = executorService;
+		this.sourceProjectionExecutorService = sourceProjectionExecutorService;
 		lastFrameRenderNanoTime = -1;
 	}
 
@@ -84,35 +122,30 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
 		final StopWatch stopWatch = new StopWatch();
 		stopWatch.start();
 
-		valid = true;
-		for ( final VolatileProjector p : sourceProjectors )
-			if ( !p.isValid() )
-				if ( !p.map( clearUntouchedTargetPixels ) )
-					return false;
-				else
-					valid &= p.isValid();
+		if ( !mapSourceProjectors( clearUntouchedTargetPixels ) )
+			return false;
 
 		final int width = ( int ) target.dimension( 0 );
 		final int height = ( int ) target.dimension( 1 );
 		final int length = width * height;
 
-		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
 		final int numTasks = Math.max( numThreads * 10, height );
 		final double taskLength = ( double ) length / numTasks;
 		final int numSources = sources.size();
+		final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numTasks );
 		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
 		{
 			final int myOffset = ( int ) ( taskNum * taskLength );
 			final int myLength = ( (taskNum == numTasks - 1 ) ? length : ( int ) ( ( taskNum + 1 ) * taskLength ) ) - myOffset;
 
-			final Runnable r = new Runnable()
+			final Callable< Void > r = new Callable< Void >()
 			{
 				@SuppressWarnings( "unchecked" )
 				@Override
-				public void run()
+				public Void call()
 				{
 					if ( interrupted.get() )
-						return;
+						return null;
 
 					final Cursor< A >[] sourceCursors = new Cursor[ numSources ];
 					for ( int s = 0; s < numSources; ++s )
@@ -130,25 +163,111 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
 							sourceCursors[ s ].fwd();
 						accumulate( sourceCursors, targetCursor.next() );
 					}
+					return null;
 				}
 			};
-			ex.execute( r );
+			tasks.add( r );
 		}
-		ex.shutdown();
+
+		final boolean createExecutor = ( executorService == null );
+		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
 		try
 		{
-			ex.awaitTermination( 1, TimeUnit.HOURS );
+			ex.invokeAll( tasks );
 		}
 		catch ( final InterruptedException e )
 		{
 			e.printStackTrace();
 		}
+		if ( createExecutor )
+			ex.shutdown();
 
 		lastFrameRenderNanoTime = stopWatch.nanoTime();
 
 		return !interrupted.get();
 	}
 
+	/**
+	 * Map all source projectors that are not yet valid, concurrently in the
+	 * {@link #sourceProjectionExecutorService}, and wait until they are
+	 * finished. Sets {@link #valid} to whether all source projectors are
+	 * valid afterwards.
+	 *
+	 * @return false if mapping any of the source projectors was interrupted.
+	 */
+	protected boolean mapSourceProjectors( final boolean clearUntouchedTargetPixels )
+	{
+		if ( sourceProjectionExecutorService == null )
+		{
+			boolean success = true;
+			for ( final VolatileProjector p : sourceProjectors )
+				if ( !p.isValid() && !interrupted.get() )
+					success &= p.map( clearUntouchedTargetPixels );
+			updateValid();
+			return success && !interrupted.get();
+		}
+
+		final ArrayList< Future< Boolean > > futures = new ArrayList< Future< Boolean > >();
+		for ( final VolatileProjector p : sourceProjectors )
+			if ( !p.isValid() )
+				futures.add( sourceProjectionExecutorService.submit( new Callable< Boolean >()
+				{
+					@Override
+					public Boolean call()
+					{
+						return p.map( clearUntouchedTargetPixels );
+					}
+				} ) );
+
+		// wait for all source projectors, even if some fail, such that none
+		// of them is still writing when we return.
+		boolean success = true;
+		boolean threadInterrupted = false;
+		for ( final Future< Boolean > f : futures )
+		{
+			boolean done = false;
+			while ( !done )
+			{
+				try
+				{
+					success &= f.get();
+					done = true;
+				}
+				catch ( final InterruptedException e )
+				{
+					// cancel, then keep waiting for the source projector to return
+					cancel();
+					success = false;
+					threadInterrupted = true;
+				}
+				catch ( final ExecutionException e )
+				{
+					e.printStackTrace();
+					cancel();
+					success = false;
+					done = true;
+				}
+			}
+		}
+
+		if ( threadInterrupted )
+			Thread.currentThread().interrupt();
+
+		updateValid();
+		return success;
+	}
+
+	/**
+	 * Set {@link #valid} to whether all source projectors are valid.
+	 */
+	protected void updateValid()
+	{
+		boolean v = true;
+		for ( final VolatileProjector p : sourceProjectors )
+			v &= p.isValid();
+		valid = v;
+	}
+
 	protected abstract void accumulate( final Cursor< A >[] accesses, final B target );
 
 	@Override
@@ -1,6 +1,7 @@
 package bdv.viewer.render;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccessible;
@@ -16,7 +17,18 @@ public class AccumulateProjectorARGB extends AccumulateProjector< ARGBType, ARGB
 			final RandomAccessibleInterval< ARGBType > target,
 			final int numThreads )
 	{
-		super( sourceProjectors, sources, null, target, numThreads );
+		this( sourceProjectors, sources, target, numThreads, null, null );
+	}
+
+	public AccumulateProjectorARGB(
+			final ArrayList< VolatileProjector > sourceProjectors,
+			final ArrayList< ? extends RandomAccessible< ARGBType > > sources,
+			final RandomAccessibleInterval< ARGBType > target,
+			final int numThreads,
+			final ExecutorService executorService,
+			final ExecutorService sourceProjectionExecutorService )
+	{
+		super( sourceProjectors, sources, null, target, numThreads, executorService, sourceProjectionExecutorService );
 	}
 
 	@Override
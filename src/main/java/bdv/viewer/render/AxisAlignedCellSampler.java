@@ -0,0 +1,330 @@
+package bdv.viewer.render;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileShortAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.util.Util;
+import bdv.img.cache.VolatileCell;
+import bdv.img.cache.VolatileImgCells;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+
+/**
+ * Nearest-neighbor sampling of a {@link VolatileUnsignedShortType}
+ * {@link CellImg} into an ARGB screen image, for source-to-screen transforms
+ * that are axis-aligned, i.e., screen X and Y each correspond to one source
+ * axis (scaled and translated), and the screen plane is a plane of constant
+ * coordinate along the remaining source axis. This is the case for the
+ * default views and after aligning the view with a source plane.
+ * <p>
+ * For such transforms, the source position of every screen column is the same
+ * on every row. It is computed once as cell grid coordinate and offset into
+ * the cell. Rows are then filled by indexing directly into the
+ * {@link VolatileShortArray} data of the cells, and converting with the lookup
+ * table of the {@link RealARGBColorConverter}. Positions are rounded with
+ * {@link Util#round(double)}, like imglib2 nearest-neighbor interpolation does,
+ * so this gives the same result as sampling the zero-extended, interpolated,
+ * and transformed source (including at exact half positions), but avoids the
+ * overhead of the generic accessors for every pixel.
+ */
+public class AxisAlignedCellSampler
+{
+	private final CellImg< ?, ?, ? > img;
+
+	private final RealARGBColorConverter< ? > converter;
+
+	/**
+	 * Dimensions of the source image.
+	 */
+	private final long[] dimensions;
+
+	/**
+	 * Standard size of a source cell.
+	 */
+	private final int[] cellDimensions;
+
+	/**
+	 * The source axes corresponding to screen X, screen Y, and the screen
+	 * plane normal.
+	 */
+	private final int axisX, axisY, axisZ;
+
+	/**
+	 * For every screen column, the cell grid coordinate along
+	 * {@link #axisX}, or -1 if the column is outside the source.
+	 */
+	private final int[] cellX;
+
+	/**
+	 * For every screen column, the position within the cell along
+	 * {@link #axisX}.
+	 */
+	private final int[] offsetX;
+
+	/**
+	 * Source coordinate along {@link #axisY} is <code>scaleY * y + translationY</code>.
+	 */
+	private final double scaleY, translationY;
+
+	/**
+	 * Cell grid coordinate along {@link #axisZ}, or -1 if the screen plane is
+	 * outside the source.
+	 */
+	private final int cellZ;
+
+	/**
+	 * Position within the cell along {@link #axisZ}.
+	 */
+	private final int offsetZ;
+
+	/**
+	 * Create a sampler for the given source, or return null if the fast path
+	 * cannot be used. This is the case if the interpolation is not
+	 * {@link Interpolation#NEARESTNEIGHBOR nearest-neighbor}, the source is not
+	 * a {@link VolatileUnsignedShortType} {@link CellImg} backed by the cache,
+	 * the converter is not a {@link RealARGBColorConverter}, or the transform
+	 * is not axis-aligned.
+	 *
+	 * @param source
+	 *            the source to render.
+	 * @param timepoint
+	 *            timepoint index
+	 * @param mipmapIndex
+	 *            mipmap level of the source.
+	 * @param interpolation
+	 *            the interpolation method.
+	 * @param sourceToScreen
+	 *            source-to-screen transform.
+	 * @param converter
+	 *            converts source values to ARGB.
+	 * @param width
+	 *            width of the screen image.
+	 * @return sampler or null.
+	 */
+	public static AxisAlignedCellSampler create( final Source< ? > source, final int timepoint, final int mipmapIndex, final Interpolation interpolation, final AffineTransform3D sourceToScreen, final Converter< ?, ? > converter, final int width )
+	{
+		if ( interpolation != Interpolation.NEARESTNEIGHBOR || !( converter instanceof RealARGBColorConverter ) || !( source.getType() instanceof VolatileUnsignedShortType ) )
+			return null;
+
+		final RandomAccessibleInterval< ? > img = source.getSource( timepoint, mipmapIndex );
+		if ( !( img instanceof CellImg ) || img.numDimensions() != 3 )
+			return null;
+		final CellImg< ?, ?, ? > cellImg = ( CellImg< ?, ?, ? > ) img;
+		if ( !( cellImg.getCells() instanceof VolatileImgCells ) )
+			return null;
+
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+		final int axisX = getAxis( screenToSource, 0 );
+		final int axisY = getAxis( screenToSource, 1 );
+		if ( axisX < 0 || axisY < 0 || axisX == axisY )
+			return null;
+
+		return new AxisAlignedCellSampler( cellImg, ( RealARGBColorConverter< ? > ) converter, screenToSource, axisX, axisY, width );
+	}
+
+	/**
+	 * Get the source axis along which moving along the given screen axis moves,
+	 * or -1 if moving along the screen axis moves along more than one source
+	 * axis.
+	 */
+	private static int getAxis( final AffineTransform3D screenToSource, final int screenAxis )
+	{
+		final double eps = 1e-6;
+		int axis = -1;
+		for ( int d = 0; d < 3; ++d )
+		{
+			if ( Math.abs( screenToSource.get( d, screenAxis ) ) > eps )
+			{
+				if ( axis >= 0 )
+					return -1;
+				axis = d;
+			}
+		}
+		return axis;
+	}
+
+	private AxisAlignedCellSampler( final CellImg< ?, ?, ? > img, final RealARGBColorConverter< ? > converter, final AffineTransform3D screenToSource, final int axisX, final int axisY, final int width )
+	{
+		this.img = img;
+		this.converter = converter;
+		dimensions = new long[ 3 ];
+		img.dimensions( dimensions );
+		cellDimensions = new int[ 3 ];
+		img.getCells().cellDimensions( cellDimensions );
+		this.axisX = axisX;
+		this.axisY = axisY;
+		axisZ = 3 - axisX - axisY;
+
+		final double scaleX = screenToSource.get( axisX, 0 );
+		final double translationX = screenToSource.get( axisX, 3 );
+		cellX = new int[ width ];
+		offsetX = new int[ width ];
+		for ( int x = 0; x < width; ++x )
+		{
+			final long p = Util.round( scaleX * x + translationX );
+			if ( p < 0 || p >= dimensions[ axisX ] )
+				cellX[ x ] = -1;
+			else
+			{
+				cellX[ x ] = ( int ) ( p / cellDimensions[ axisX ] );
+				offsetX[ x ] = ( int ) ( p - ( long ) cellX[ x ] * cellDimensions[ axisX ] );
+			}
+		}
+
+		scaleY = screenToSource.get( axisY, 1 );
+		translationY = screenToSource.get( axisY, 3 );
+
+		final long z = Util.round( screenToSource.get( axisZ, 3 ) );
+		if ( z < 0 || z >= dimensions[ axisZ ] )
+		{
+			cellZ = -1;
+			offsetZ = 0;
+		}
+		else
+		{
+			cellZ = ( int ) ( z / cellDimensions[ axisZ ] );
+			offsetZ = ( int ) ( z - ( long ) cellZ * cellDimensions[ axisZ ] );
+		}
+	}
+
+	/**
+	 * Create a {@link RowAccess} for filling rows of the screen image. Not
+	 * thread safe, every rendering thread needs its own.
+	 */
+	public RowAccess rowAccess()
+	{
+		return new RowAccess();
+	}
+
+	public class RowAccess
+	{
+		private final RandomAccess< ? > cellsRandomAccess = img.getCells().randomAccess();
+
+		private final long[] cellPosition = new long[ 3 ];
+
+		private final int[] cellSteps = new int[ 3 ];
+
+		private RowAccess()
+		{}
+
+		/**
+		 * Fill those pixels of a screen row that are not yet at the given
+		 * level or better. Pixels for which the source cell is not yet valid
+		 * are left unchanged.
+		 *
+		 * @param y
+		 *            screen y coordinate of the row.
+		 * @param minX
+		 *            screen x coordinate of the first pixel to fill.
+		 * @param length
+		 *            number of pixels to fill.
+		 * @param target
+		 *            ARGB data of the screen image.
+		 * @param mask
+		 *            mask of the screen image. The mask of filled pixels is set
+		 *            to <code>level</code>.
+		 * @param offset
+		 *            index in <code>target</code> and <code>mask</code> of the
+		 *            first pixel to fill.
+		 * @param level
+		 *            the level being rendered.
+		 * @return the number of pixels that are still invalid.
+		 */
+		public int fillRow( final int y, final int minX, final int length, final int[] target, final byte[] mask, final int offset, final byte level )
+		{
+			final long py = Util.round( scaleY * y + translationY );
+			if ( cellZ < 0 || py < 0 || py >= dimensions[ axisY ] )
+			{
+				final int zero = converter.convertUnsignedShort( 0 );
+				for ( int o = offset; o < offset + length; ++o )
+				{
+					if ( mask[ o ] > level )
+					{
+						target[ o ] = zero;
+						mask[ o ] = level;
+					}
+				}
+				return 0;
+			}
+			final int cellY = ( int ) ( py / cellDimensions[ axisY ] );
+			final int offsetY = ( int ) ( py - ( long ) cellY * cellDimensions[ axisY ] );
+
+			int numInvalid = 0;
+			int currentCellX = -1;
+			boolean valid = false;
+			short[] data = null;
+			VolatileShortAccess access = null;
+			int base = 0;
+			int stepX = 0;
+			for ( int i = 0; i < length; ++i )
+			{
+				final int o = offset + i;
+				if ( mask[ o ] <= level )
+					continue;
+
+				final int x = minX + i;
+				final int cx = cellX[ x ];
+				if ( cx < 0 )
+				{
+					target[ o ] = converter.convertUnsignedShort( 0 );
+					mask[ o ] = level;
+					continue;
+				}
+
+				if ( cx != currentCellX )
+				{
+					currentCellX = cx;
+					cellPosition[ axisX ] = cx;
+					cellPosition[ axisY ] = cellY;
+					cellPosition[ axisZ ] = cellZ;
+					cellsRandomAccess.setPosition( cellPosition );
+					final VolatileAccess a = ( ( VolatileCell< ? > ) cellsRandomAccess.get() ).getData();
+					valid = a.isValid();
+					if ( valid )
+					{
+						access = ( VolatileShortAccess ) a;
+						data = ( a instanceof VolatileShortArray ) ? ( ( VolatileShortArray ) a ).getCurrentStorageArray() : null;
+						computeCellSteps();
+						stepX = cellSteps[ axisX ];
+						base = offsetY * cellSteps[ axisY ] + offsetZ * cellSteps[ axisZ ];
+					}
+				}
+
+				if ( !valid )
+				{
+					++numInvalid;
+					continue;
+				}
+
+				final int index = base + offsetX[ x ] * stepX;
+				final int value = ( data != null ? data[ index ] : access.getValue( index ) ) & 0xffff;
+				target[ o ] = converter.convertUnsignedShort( value );
+				mask[ o ] = level;
+			}
+			return numInvalid;
+		}
+
+		/**
+		 * Compute the {@link #cellSteps} of the cell at {@link #cellPosition}.
+		 * Cells at the border of the image may be smaller than the standard
+		 * cell size.
+		 */
+		private void computeCellSteps()
+		{
+			int step = 1;
+			for ( int d = 0; d < 3; ++d )
+			{
+				cellSteps[ d ] = step;
+				final long cellMin = cellPosition[ d ] * cellDimensions[ d ];
+				step *= ( int ) Math.min( cellDimensions[ d ], dimensions[ d ] - cellMin );
+			}
+		}
+	}
+}
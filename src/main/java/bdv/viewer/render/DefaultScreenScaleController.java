@@ -0,0 +1,139 @@
+package bdv.viewer.render;
+
+/**
+ * Default {@link ScreenScaleController}. It keeps an exponentially smoothed
+ * estimate of the rendering time per pixel for every screen scale, predicts the
+ * rendering time of each screen scale from its number of pixels, and chooses
+ * the finest screen scale that is predicted to render within the target time.
+ * <p>
+ * To avoid oscillating between screen scales under varying load, there is a
+ * hysteresis: a finer screen scale is only chosen if it is predicted to take
+ * less than {@link #FINER_FACTOR} times the target time, and a coarser screen
+ * scale is only chosen if the current one is predicted to take more than
+ * {@link #COARSER_FACTOR} times the target time.
+ * <p>
+ * Different targets can be set for while the user is interacting and for
+ * frames that are requested when the viewer was idle.
+ */
+public class DefaultScreenScaleController implements ScreenScaleController
+{
+	/**
+	 * Weight of the newest measurement in the smoothed estimates.
+	 */
+	public static final double SMOOTHING = 0.3;
+
+	/**
+	 * Switch to a finer screen scale only if its predicted rendering time is
+	 * below this fraction of the target.
+	 */
+	public static final double FINER_FACTOR = 0.75;
+
+	/**
+	 * Switch to a coarser screen scale only if the predicted rendering time of
+	 * the current one exceeds this multiple of the target.
+	 */
+	public static final double COARSER_FACTOR = 1.25;
+
+	private long targetRenderNanos;
+
+	private long idleTargetRenderNanos;
+
+	/**
+	 * Smoothed rendering time per pixel, for each screen scale. 0 if no pass
+	 * at that screen scale was measured yet.
+	 */
+	private double[] nanosPerPixel = new double[ 0 ];
+
+	/**
+	 * Smoothed rendering time per pixel over all screen scales. This is used
+	 * for screen scales that were not measured yet.
+	 */
+	private double meanNanosPerPixel = 0;
+
+	/**
+	 * @param targetRenderNanos
+	 *            target rendering time (in nanoseconds) for the highest screen
+	 *            scale while interacting.
+	 * @param idleTargetRenderNanos
+	 *            target rendering time (in nanoseconds) for the highest screen
+	 *            scale of a frame requested when the viewer was idle.
+	 */
+	public DefaultScreenScaleController( final long targetRenderNanos, final long idleTargetRenderNanos )
+	{
+		this.targetRenderNanos = targetRenderNanos;
+		this.idleTargetRenderNanos = idleTargetRenderNanos;
+	}
+
+	public DefaultScreenScaleController( final long targetRenderNanos )
+	{
+		this( targetRenderNanos, targetRenderNanos );
+	}
+
+	public synchronized long getTargetRenderNanos()
+	{
+		return targetRenderNanos;
+	}
+
+	public synchronized void setTargetRenderNanos( final long targetRenderNanos )
+	{
+		this.targetRenderNanos = targetRenderNanos;
+	}
+
+	public synchronized long getIdleTargetRenderNanos()
+	{
+		return idleTargetRenderNanos;
+	}
+
+	public synchronized void setIdleTargetRenderNanos( final long idleTargetRenderNanos )
+	{
+		this.idleTargetRenderNanos = idleTargetRenderNanos;
+	}
+
+	@Override
+	public synchronized void frameRendered( final int screenScaleIndex, final long numPixels, final long renderNanos )
+	{
+		if ( numPixels <= 0 )
+			return;
+		if ( screenScaleIndex >= nanosPerPixel.length )
+		{
+			final double[] n = new double[ screenScaleIndex + 1 ];
+			System.arraycopy( nanosPerPixel, 0, n, 0, nanosPerPixel.length );
+			nanosPerPixel = n;
+		}
+		final double t = ( double ) renderNanos / numPixels;
+		nanosPerPixel[ screenScaleIndex ] = smooth( nanosPerPixel[ screenScaleIndex ], t );
+		meanNanosPerPixel = smooth( meanNanosPerPixel, t );
+	}
+
+	@Override
+	public synchronized int getMaxScreenScaleIndex( final long[] screenScalePixels, final int currentMaxScreenScaleIndex, final boolean interacting )
+	{
+		if ( meanNanosPerPixel == 0 )
+			return currentMaxScreenScaleIndex;
+
+		final double target = interacting ? targetRenderNanos : idleTargetRenderNanos;
+		final int coarsest = screenScalePixels.length - 1;
+		int index = Math.min( currentMaxScreenScaleIndex, coarsest );
+
+		// coarser, if the current screen scale is clearly too slow
+		while ( index < coarsest && predict( index, screenScalePixels ) > COARSER_FACTOR * target )
+			++index;
+
+		// finer, if the next finer screen scale is clearly fast enough
+		while ( index > 0 && predict( index - 1, screenScalePixels ) < FINER_FACTOR * target )
+			--index;
+
+		return index;
+	}
+
+	private double predict( final int screenScaleIndex, final long[] screenScalePixels )
+	{
+		final double n = screenScaleIndex < nanosPerPixel.length ? nanosPerPixel[ screenScaleIndex ] : 0;
+		return ( n == 0 ? meanNanosPerPixel : n ) * screenScalePixels[ screenScaleIndex ];
+	}
+
+	private static double smooth( final double estimate, final double measurement )
+	{
+		return estimate == 0 ? measurement : estimate + SMOOTHING * ( measurement - estimate );
+	}
+}
@@ -0,0 +1,190 @@
+package bdv.viewer.render;
+
+/**
+ * Statistics about one rendering pass of the {@link MultiResolutionRenderer},
+ * as reported to {@link FrameStatisticsListener FrameStatisticsListeners}.
+ * <p>
+ * A pass is either the first pass for a new frame or screen scale (in which
+ * case a new projector was created) or a refinement pass that fills in data
+ * that became available since the last pass.
+ */
+public class FrameStatistics
+{
+	private final boolean newProjector;
+
+	private final boolean completed;
+
+	private final boolean valid;
+
+	private final int timepoint;
+
+	private final int screenScaleIndex;
+
+	private final double screenScale;
+
+	private final int maxScreenScaleIndex;
+
+	private final long renderNanoTime;
+
+	private final long ioNanoTime;
+
+	private final int[] sourceIndices;
+
+	private final int[][] mipmapLevels;
+
+	private final int[][] numInvalidPixels;
+
+	private final long numCacheHits;
+
+	private final long numCacheMisses;
+
+	public FrameStatistics(
+			final boolean newProjector,
+			final boolean completed,
+			final boolean valid,
+			final int timepoint,
+			final int screenScaleIndex,
+			final double screenScale,
+			final int maxScreenScaleIndex,
+			final long renderNanoTime,
+			final long ioNanoTime,
+			final int[] sourceIndices,
+			final int[][] mipmapLevels,
+			final int[][] numInvalidPixels,
+			final long numCacheHits,
+			final long numCacheMisses )
+	{
+		this.newProjector = newProjector;
+		this.completed = completed;
+		this.valid = valid;
+		this.timepoint = timepoint;
+		this.screenScaleIndex = screenScaleIndex;
+		this.screenScale = screenScale;
+		this.maxScreenScaleIndex = maxScreenScaleIndex;
+		this.renderNanoTime = renderNanoTime;
+		this.ioNanoTime = ioNanoTime;
+		this.sourceIndices = sourceIndices;
+		this.mipmapLevels = mipmapLevels;
+		this.numInvalidPixels = numInvalidPixels;
+		this.numCacheHits = numCacheHits;
+		this.numCacheMisses = numCacheMisses;
+	}
+
+	/**
+	 * Whether a new projector was created for this pass (new frame or new
+	 * screen scale), as opposed to a refinement pass of the previous projector.
+	 */
+	public boolean isNewProjector()
+	{
+		return newProjector;
+	}
+
+	/**
+	 * Whether the pass was completed, i.e., not cancelled.
+	 */
+	public boolean isCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * Whether all data was present after the pass.
+	 */
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	public int getTimepoint()
+	{
+		return timepoint;
+	}
+
+	/**
+	 * Index of the screen scale that was rendered.
+	 */
+	public int getScreenScaleIndex()
+	{
+		return screenScaleIndex;
+	}
+
+	/**
+	 * The screen scale that was rendered (1 is full resolution).
+	 */
+	public double getScreenScale()
+	{
+		return screenScale;
+	}
+
+	/**
+	 * Index of the coarsest screen scale with which rendering of new frames
+	 * currently starts.
+	 */
+	public int getMaxScreenScaleIndex()
+	{
+		return maxScreenScaleIndex;
+	}
+
+	/**
+	 * Time needed for rendering, in nano-seconds. This does not include time
+	 * spent in blocking IO.
+	 */
+	public long getRenderNanoTime()
+	{
+		return renderNanoTime;
+	}
+
+	/**
+	 * Time spent in blocking IO, in nano-seconds.
+	 */
+	public long getIoNanoTime()
+	{
+		return ioNanoTime;
+	}
+
+	/**
+	 * Indices of the rendered (visible) sources.
+	 */
+	public int[] getSourceIndices()
+	{
+		return sourceIndices;
+	}
+
+	/**
+	 * For each rendered source, the mipmap levels that were used, from best
+	 * to coarsest.
+	 */
+	public int[][] getMipmapLevels()
+	{
+		return mipmapLevels;
+	}
+
+	/**
+	 * For each rendered source, for each of its {@link #getMipmapLevels()
+	 * mipmap levels}, the number of invalid pixels after rendering that level
+	 * (-1 if that level was not rendered in this pass). The entry for a source
+	 * is null if it was not rendered with volatile data.
+	 */
+	public int[][] getNumInvalidPixels()
+	{
+		return numInvalidPixels;
+	}
+
+	/**
+	 * Number of cell requests during this pass for which valid data was in the
+	 * cache.
+	 */
+	public long getNumCacheHits()
+	{
+		return numCacheHits;
+	}
+
+	/**
+	 * Number of cell requests during this pass for which no valid data was in
+	 * the cache.
+	 */
+	public long getNumCacheMisses()
+	{
+		return numCacheMisses;
+	}
+}
@@ -0,0 +1,14 @@
+package bdv.viewer.render;
+
+/**
+ * Receives {@link FrameStatistics} from a {@link MultiResolutionRenderer}
+ * after every rendering pass.
+ */
+public interface FrameStatisticsListener
+{
+	/**
+	 * Called on the painter thread after every rendering pass. This should
+	 * return quickly.
+	 */
+	public void frameRendered( final FrameStatistics statistics );
+}
@@ -0,0 +1,174 @@
+package bdv.viewer.render;
+
+import bdv.img.cache.CacheIoTiming.IoTimeBudget;
+import bdv.img.cache.VolatileGlobalCellCache;
+
+/**
+ * Adapts the {@link IoTimeBudget} for {@link VolatileGlobalCellCache.LoadingStrategy#BUDGETED
+ * budgeted} loading from frame to frame, such that rendering a frame
+ * (including blocking IO) takes about {@link #getTargetFrameNanos() target
+ * frame time}.
+ * <p>
+ * After every frame, the controller is {@link #update(long, long, long[], long[])
+ * updated} with the wall-clock frame time, the time spent in blocking IO, and
+ * the cumulative cell loading statistics of the cache. It keeps smoothed
+ * estimates of the rendering time without IO and of the latency of loading a
+ * cell at each priority level. The budget for the highest priority level
+ * (coarsest mipmap level) is the part of the target frame time not needed for
+ * rendering. Lower priority levels get {@link #getFineLevelFraction() a
+ * fraction} of that, or nothing if loading a single cell at that level takes
+ * longer than its budget (waiting would then only delay the frame without
+ * producing data).
+ */
+public class IoTimeBudgetController
+{
+	/**
+	 * Weight of the newest measurement in the exponentially smoothed
+	 * estimates.
+	 */
+	private static final double SMOOTHING = 0.25;
+
+	private long targetFrameNanos;
+
+	private double fineLevelFraction;
+
+	/**
+	 * Smoothed estimate of the rendering time of a frame, without blocking
+	 * IO.
+	 */
+	private double renderNanos = 0;
+
+	/**
+	 * Smoothed estimate of the time to load one cell, per priority level. 0 if
+	 * no cell of the level has been loaded yet.
+	 */
+	private double[] loadLatencyNanos = new double[ 0 ];
+
+	/**
+	 * Cumulative load statistics at the last {@link #update(long, long, long[], long[]) update}.
+	 */
+	private long[] previousLoadNanoTimes = new long[ 0 ];
+
+	private long[] previousNumLoads = new long[ 0 ];
+
+	private long[] budget = new long[ 0 ];
+
+	/**
+	 * @param targetFrameNanos
+	 *            target time (in nanoseconds) for rendering a frame, including
+	 *            blocking IO.
+	 * @param fineLevelFraction
+	 *            fraction of the budget of the coarsest mipmap level that is
+	 *            given to finer levels.
+	 */
+	public IoTimeBudgetController( final long targetFrameNanos, final double fineLevelFraction )
+	{
+		this.targetFrameNanos = targetFrameNanos;
+		this.fineLevelFraction = fineLevelFraction;
+		computeBudget();
+	}
+
+	/**
+	 * Create a controller with a target frame time of 100 ms, giving finer
+	 * mipmap levels 10% of the budget of the coarsest level.
+	 */
+	public IoTimeBudgetController()
+	{
+		this( 100l * 1000000l, 0.1 );
+	}
+
+	public synchronized long getTargetFrameNanos()
+	{
+		return targetFrameNanos;
+	}
+
+	public synchronized void setTargetFrameNanos( final long targetFrameNanos )
+	{
+		this.targetFrameNanos = targetFrameNanos;
+		computeBudget();
+	}
+
+	public synchronized double getFineLevelFraction()
+	{
+		return fineLevelFraction;
+	}
+
+	public synchronized void setFineLevelFraction( final double fineLevelFraction )
+	{
+		this.fineLevelFraction = fineLevelFraction;
+		computeBudget();
+	}
+
+	/**
+	 * Get the current budget (in nanoseconds) per priority level, to be passed
+	 * to {@link IoTimeBudget#reset(long[])}.
+	 */
+	public synchronized long[] getBudget()
+	{
+		return budget.clone();
+	}
+
+	/**
+	 * Update estimates after rendering a frame, and compute the budget for the
+	 * next frame.
+	 *
+	 * @param frameNanos
+	 *            wall-clock time of the frame, including blocking IO. This
+	 *            must not be a time from which IO has already been subtracted
+	 *            (such as {@link VolatileProjector#getLastFrameRenderNanoTime()}
+	 *            of a {@link VolatileHierarchyProjector}).
+	 * @param frameIoNanos
+	 *            wall-clock time spent in blocking IO during the frame. This is
+	 *            subtracted from frameNanos to estimate the rendering time.
+	 * @param loadNanoTimes
+	 *            cumulative time spent loading cells, per priority level (see
+	 *            {@link VolatileGlobalCellCache#getLoadNanoTime(int)}).
+	 * @param numLoads
+	 *            cumulative number of loaded cells, per priority level (see
+	 *            {@link VolatileGlobalCellCache#getNumLoads(int)}).
+	 */
+	public synchronized void update( final long frameNanos, final long frameIoNanos, final long[] loadNanoTimes, final long[] numLoads )
+	{
+		final double r = Math.max( 0, frameNanos - frameIoNanos );
+		renderNanos = renderNanos == 0 ? r : renderNanos + SMOOTHING * ( r - renderNanos );
+
+		final int n = loadNanoTimes.length;
+		if ( loadLatencyNanos.length != n )
+		{
+			loadLatencyNanos = new double[ n ];
+			previousLoadNanoTimes = loadNanoTimes.clone();
+			previousNumLoads = numLoads.clone();
+		}
+		else
+		{
+			for ( int i = 0; i < n; ++i )
+			{
+				final long loads = numLoads[ i ] - previousNumLoads[ i ];
+				if ( loads > 0 )
+				{
+					final double latency = ( double ) ( loadNanoTimes[ i ] - previousLoadNanoTimes[ i ] ) / loads;
+					final double l = loadLatencyNanos[ i ];
+					loadLatencyNanos[ i ] = l == 0 ? latency : l + SMOOTHING * ( latency - l );
+				}
+				previousLoadNanoTimes[ i ] = loadNanoTimes[ i ];
+				previousNumLoads[ i ] = numLoads[ i ];
+			}
+		}
+		computeBudget();
+	}
+
+	private void computeBudget()
+	{
+		final int n = Math.max( 2, loadLatencyNanos.length );
+		if ( budget.length != n )
+			budget = new long[ n ];
+		final long coarsest = Math.max( 0, targetFrameNanos - ( long ) renderNanos );
+		budget[ 0 ] = coarsest;
+		final long fine = ( long ) ( coarsest * fineLevelFraction );
+		for ( int i = 1; i < n; ++i )
+		{
+			final double latency = i < loadLatencyNanos.length ? loadLatencyNanos[ i ] : 0;
+			budget[ i ] = ( latency > fine ) ? 0 : Math.min( fine, budget[ i - 1 ] );
+		}
+	}
+}
@@ -6,17 +6,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.imglib2.Dimensions;
-import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.converter.Converter;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
-import net.imglib2.img.cell.CellImg;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
@@ -26,7 +31,10 @@ import net.imglib2.ui.Renderer;
 import net.imglib2.ui.SimpleInterruptibleProjector;
 import net.imglib2.ui.util.GuiUtil;
 import bdv.img.cache.Cache;
+import bdv.img.cache.CacheIoTiming;
+import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.viewer.Interpolation;
+import bdv.viewer.PrefetchableSource;
 import bdv.viewer.Source;
 import bdv.viewer.state.SourceState;
 import bdv.viewer.state.ViewerState;
@@ -58,12 +66,12 @@ import bdv.viewer.state.ViewerState;
  * display remains interactive.
  * <p>
  * The renderer tries to maintain a per-frame rendering time close to a desired
- * number of <code>targetRenderNanos</code> nanoseconds. If the rendering time
- * (in nanoseconds) for the (currently) highest scaled screen image is above
- * this threshold, a coarser screen scale is chosen as the highest screen scale
- * to use. Similarly, if the rendering time for the (currently) second-highest
- * scaled screen image is below this threshold, this finer screen scale chosen
- * as the highest screen scale to use.
+ * number of <code>targetRenderNanos</code> nanoseconds. After every pass, a
+ * {@link ScreenScaleController} chooses the highest screen scale to use, based
+ * on the rendering times of past passes. The
+ * {@link DefaultScreenScaleController default controller} predicts the
+ * rendering time of each screen scale from its number of pixels and chooses
+ * the finest screen scale that can be rendered within the target time.
  * <p>
  * The renderer uses multiple threads (if desired) and double-buffering (if
  * desired).
@@ -86,6 +94,12 @@ import bdv.viewer.state.ViewerState;
  * might differ between visible sources.
  * <p>
  * Rendering timing is tied to a {@link Cache} control for IO budgeting, etc.
+ * <p>
+ * If double buffering is enabled, and the viewer transform changes within the
+ * viewer plane (pan, zoom, in-plane rotation), the last full resolution image
+ * is {@link #paintReprojectedPreview(ViewerState) reprojected} to the new
+ * transform and displayed immediately. Rendering then proceeds coarse-to-fine
+ * as usual, overwriting the preview.
  *
  * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
  */
@@ -173,22 +187,34 @@ public class MultiResolutionRenderer
 	protected AffineTransform3D[] screenScaleTransforms;
 
 	/**
-	 * If the rendering time (in nanoseconds) for the (currently) highest scaled
-	 * screen image is above this threshold, increase the
-	 * {@link #maxScreenScaleIndex index} of the highest screen scale to use.
-	 * Similarly, if the rendering time for the (currently) second-highest
-	 * scaled screen image is below this threshold, decrease the
-	 * {@link #maxScreenScaleIndex index} of the highest screen scale to use.
+	 * The target rendering time (in nanoseconds) for the highest screen scale,
+	 * with which the default {@link #screenScaleController} is created.
 	 */
 	protected final long targetRenderNanos;
 
+	/**
+	 * Chooses the {@link #maxScreenScaleIndex index} of the highest screen
+	 * scale to use.
+	 */
+	protected ScreenScaleController screenScaleController;
+
+	/**
+	 * The user is considered to be interacting if a new frame was requested
+	 * less than this many milliseconds ago.
+	 */
+	protected static final long INTERACTION_TIMEOUT_MILLIS = 500;
+
+	/**
+	 * When (in milliseconds) a new frame was last
+	 * {@link #requestRepaint() requested}.
+	 */
+	protected long lastNewFrameRequestMillis;
+
 	/**
 	 * The index of the (coarsest) screen scale with which to start rendering.
 	 * Once this level is painted, rendering proceeds to lower screen scales
 	 * until index 0 (full resolution) has been reached. While rendering, the
-	 * maxScreenScaleIndex is adapted such that it is the highest index for
-	 * which rendering in {@link #targetRenderNanos} nanoseconds is still
-	 * possible.
+	 * maxScreenScaleIndex is adapted by the {@link #screenScaleController}.
 	 */
 	protected int maxScreenScaleIndex;
 
@@ -214,6 +240,14 @@ public class MultiResolutionRenderer
 	 */
 	protected final ExecutorService renderingExecutorService;
 
+	/**
+	 * Runs the source projectors of an {@link AccumulateProjector}
+	 * concurrently. These wait for their tasks in the
+	 * {@link #renderingExecutorService}, so they need their own threads.
+	 * Threads are created when needed and shut down by {@link #kill()}.
+	 */
+	protected final ExecutorService sourceProjectionExecutorService;
+
 	/**
 	 * Controls IO budgeting and fetcher queue.
 	 */
@@ -236,10 +270,135 @@ public class MultiResolutionRenderer
 	 */
 	protected int previousTimepoint;
 
-	// TODO: should be settable
+	/**
+	 * A reprojected preview is only displayed if at least this fraction of its
+	 * pixels is covered by the previous image.
+	 */
+	protected static final double MIN_PREVIEW_COVERAGE = 0.5;
+
+	/**
+	 * Whether to display a reprojected preview when the viewer transform
+	 * changes.
+	 */
+	protected boolean reprojectPreview = true;
+
+	/**
+	 * The last full resolution {@link #screenImages screen image} that was
+	 * completely rendered, or null. Reprojected previews are never stored
+	 * here, such that previews are always computed from a rendered image.
+	 */
+	protected ARGBScreenImage lastFullResolutionImage;
+
+	/**
+	 * The double-buffer index of {@link #lastFullResolutionImage}, or -1.
+	 * Screen images of all screen scales with this index share the storage of
+	 * {@link #lastFullResolutionImage}, so this index is not used for
+	 * rendering while the image is kept (see {@link #getFreeRenderId()}).
+	 */
+	protected int lastFullResolutionRenderId = -1;
+
+	/**
+	 * The viewer transform with which {@link #lastFullResolutionImage} was
+	 * rendered.
+	 */
+	protected final AffineTransform3D lastFullResolutionTransform = new AffineTransform3D();
+
+	/**
+	 * The timepoint at which {@link #lastFullResolutionImage} was rendered.
+	 */
+	protected int lastFullResolutionTimepoint;
+
+	/**
+	 * The viewer transform with which the {@link #projector current projector}
+	 * was created.
+	 */
+	protected final AffineTransform3D projectorTransform = new AffineTransform3D();
+
+	/**
+	 * Indices of the sources rendered by the {@link #projector current
+	 * projector}.
+	 */
+	protected final ArrayList< Integer > projectorSourceIndices = new ArrayList< Integer >();
+
+	/**
+	 * For each source rendered by the {@link #projector current projector},
+	 * the mipmap levels used (from best to coarsest).
+	 */
+	protected final ArrayList< int[] > projectorMipmapLevels = new ArrayList< int[] >();
+
+	/**
+	 * For each source rendered by the {@link #projector current projector},
+	 * the projector that renders it.
+	 */
+	protected final ArrayList< VolatileProjector > projectorSourceProjectors = new ArrayList< VolatileProjector >();
+
+	/**
+	 * Receive {@link FrameStatistics} after every rendering pass.
+	 */
+	protected final CopyOnWriteArrayList< FrameStatisticsListener > frameStatisticsListeners = new CopyOnWriteArrayList< FrameStatisticsListener >();
+
+	/**
+	 * Predicts viewer transforms for prefetching along the navigation path, or
+	 * null.
+	 */
+	protected TransformPredictor transformPredictor = null;
+
+	/**
+	 * How far (in milliseconds) into the future to predict viewer transforms
+	 * for prefetching.
+	 */
+	protected static final long[] PREDICTION_LOOKAHEAD_MILLIS = new long[] { 100, 200, 400 };
+
+	/**
+	 * Whether the projector that is created next is the first one for a new
+	 * frame. Only then, cells for predicted viewer transforms are prefetched.
+	 */
+	protected boolean prefetchPredicted;
+
+	/**
+	 * How many timepoints ahead (in the direction in which the user is
+	 * stepping through time) to prefetch. 0 disables timepoint look-ahead.
+	 */
+	protected int timepointLookahead = 0;
+
+	/**
+	 * Timepoint look-ahead stops if the timepoint was not changed for this
+	 * long (in milliseconds).
+	 */
+	protected static final long TIMEPOINT_LOOKAHEAD_IDLE_MILLIS = 1000;
+
+	/**
+	 * Direction (1 or -1) of the last timepoint change, or 0 if the timepoint
+	 * was never changed.
+	 */
+	protected int timepointDirection = 0;
+
+	/**
+	 * When (in milliseconds) the timepoint was last changed.
+	 */
+	protected long lastTimepointChangeMillis;
+
+	/**
+	 * Display coordinates (x, y) of the point around which cells are
+	 * prefetched first, or null to prefetch around the center of the screen.
+	 */
+	protected volatile double[] prefetchFocus = null;
+
+	/**
+	 * IO time budget (in nanoseconds) per priority level, used if there is no
+	 * {@link #ioTimeBudgetController}.
+	 */
 	protected long[] iobudget = new long[] { 100l * 1000000l,  10l * 1000000l };
 
-	// TODO: should be settable
+	/**
+	 * Adapts the IO time budget to the measured rendering and loading times,
+	 * or null to use the fixed {@link #iobudget}.
+	 */
+	protected volatile IoTimeBudgetController ioTimeBudgetController = null;
+
+	/**
+	 * Whether to prefetch the cells needed for rendering before rendering.
+	 */
 	protected boolean prefetchCells = true;
 
 	/**
@@ -298,12 +457,25 @@ public class MultiResolutionRenderer
 		screenScaleTransforms = new AffineTransform3D[ screenScales.length ];
 
 		this.targetRenderNanos = targetRenderNanos;
+		screenScaleController = new DefaultScreenScaleController( targetRenderNanos );
 
 		maxScreenScaleIndex = screenScales.length - 1;
 		requestedScreenScaleIndex = maxScreenScaleIndex;
 		renderingMayBeCancelled = true;
 		this.numRenderingThreads = numRenderingThreads;
 		this.renderingExecutorService = renderingExecutorService;
+		sourceProjectionExecutorService = Executors.newCachedThreadPool( new ThreadFactory()
+		{
+			private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+			@Override
+			public Thread newThread( final Runnable r )
+			{
+				final Thread t = new Thread( r, "MultiResolutionRenderer-source-" + threadNumber.getAndIncrement() );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
 		this.useVolatileIfAvailable = useVolatileIfAvailable;
 		this.cache = cache;
 		newFrameRequest = false;
@@ -357,6 +529,7 @@ public class MultiResolutionRenderer
 				scale.set( 0.5 * yScale - 0.5, 1, 3 );
 				screenScaleTransforms[ i ] = scale;
 			}
+			lastFullResolutionImage = null;
 
 			return true;
 		}
@@ -417,9 +590,15 @@ public class MultiResolutionRenderer
 		checkRenewRenderImages( numVisibleSources );
 		checkRenewMaskArrays( numVisibleSources );
 
+		if ( !resized )
+			paintReprojectedPreview( state );
+
 		// the BufferedImage that is rendered to (to paint to the canvas)
 		final BufferedImage bufferedImage;
 
+		// the screen image wrapped by bufferedImage
+		final ARGBScreenImage screenImage;
+
 		// the projector that paints to the screenImage.
 		final VolatileProjector p;
 
@@ -427,6 +606,8 @@ public class MultiResolutionRenderer
 
 		final boolean createProjector;
 
+		final int renderId;
+
 		synchronized ( this )
 		{
 			// Rendering may be cancelled unless we are rendering at coarsest
@@ -441,22 +622,33 @@ public class MultiResolutionRenderer
 
 			if ( createProjector )
 			{
-				final int renderId = renderIdQueue.peek();
+				renderId = getFreeRenderId();
 				currentScreenScaleIndex = requestedScreenScaleIndex;
 				bufferedImage = bufferedImages[ currentScreenScaleIndex ][ renderId ];
-				final ARGBScreenImage screenImage = screenImages[ currentScreenScaleIndex ][ renderId ];
+				screenImage = screenImages[ currentScreenScaleIndex ][ renderId ];
+				state.getViewerTransform( projectorTransform );
+				prefetchPredicted = clearQueue;
 				p = createProjector( state, currentScreenScaleIndex, screenImage );
 				projector = p;
 			}
 			else
 			{
+				renderId = -1;
 				bufferedImage = null;
+				screenImage = null;
 				p = projector;
 			}
 		}
 
 		// try rendering
+		final boolean notifyListeners = !frameStatisticsListeners.isEmpty();
+		final IoTimeBudgetController controller = ioTimeBudgetController;
+		final long ioTime0 = ( notifyListeners || controller != null ) ? CacheIoTiming.getThreadGroupIoNanoTime() : 0;
+		final long cacheHits0 = notifyListeners ? getNumCacheHits() : 0;
+		final long cacheMisses0 = notifyListeners ? getNumCacheMisses() : 0;
+		final long mapStartNanos = System.nanoTime();
 		final boolean success = p.map( createProjector );
+		final long mapNanos = System.nanoTime() - mapStartNanos;
 		final long rendertime = p.getLastFrameRenderNanoTime();
 
 		synchronized ( this )
@@ -469,24 +661,25 @@ public class MultiResolutionRenderer
 					final BufferedImage bi = display.setBufferedImage( bufferedImage );
 					if ( doubleBuffered )
 					{
-						renderIdQueue.pop();
+						renderIdQueue.remove( Integer.valueOf( renderId ) );
 						final Integer id = bufferedImageToRenderId.get( bi );
 						if ( id != null )
 							renderIdQueue.add( id );
-					}
 
-					if ( currentScreenScaleIndex == maxScreenScaleIndex )
-					{
-						if ( rendertime > targetRenderNanos && maxScreenScaleIndex < screenScales.length - 1 )
-							maxScreenScaleIndex++;
-						else if ( rendertime < targetRenderNanos / 3 && maxScreenScaleIndex > 0 )
-							maxScreenScaleIndex--;
-					}
-					else if ( currentScreenScaleIndex == maxScreenScaleIndex - 1 )
-					{
-						if ( rendertime < targetRenderNanos && maxScreenScaleIndex > 0 )
-							maxScreenScaleIndex--;
+						if ( currentScreenScaleIndex == 0 )
+						{
+							lastFullResolutionImage = screenImage;
+							lastFullResolutionRenderId = renderId;
+							lastFullResolutionTransform.set( projectorTransform );
+							lastFullResolutionTimepoint = previousTimepoint;
+						}
 					}
+
+					final long[] screenScalePixels = getScreenScalePixels();
+					screenScaleController.frameRendered( currentScreenScaleIndex, screenScalePixels[ currentScreenScaleIndex ], rendertime );
+					final boolean interacting = System.currentTimeMillis() - lastNewFrameRequestMillis < INTERACTION_TIMEOUT_MILLIS;
+					maxScreenScaleIndex = Math.max( 0, Math.min( screenScales.length - 1,
+							screenScaleController.getMaxScreenScaleIndex( screenScalePixels, maxScreenScaleIndex, interacting ) ) );
 //					System.out.println( String.format( "rendering:%4d ms", rendertime / 1000000 ) );
 //					System.out.println( "scale = " + currentScreenScaleIndex );
 //					System.out.println( "maxScreenScaleIndex = " + maxScreenScaleIndex + "  (" + screenImages[ maxScreenScaleIndex ][ 0 ].dimension( 0 ) + " x " + screenImages[ maxScreenScaleIndex ][ 0 ].dimension( 1 ) + ")" );
@@ -507,15 +700,420 @@ public class MultiResolutionRenderer
 			}
 		}
 
+		if ( controller != null && createProjector && success )
+			updateIoTimeBudgetController( controller, mapNanos, CacheIoTiming.getThreadGroupIoNanoTime() - ioTime0 );
+
+		if ( notifyListeners )
+		{
+			final long ioTime = CacheIoTiming.getThreadGroupIoNanoTime() - ioTime0;
+			final long cacheHits = getNumCacheHits() - cacheHits0;
+			final long cacheMisses = getNumCacheMisses() - cacheMisses0;
+			final FrameStatistics statistics = createFrameStatistics( p, createProjector, success, rendertime, ioTime, cacheHits, cacheMisses );
+			for ( final FrameStatisticsListener l : frameStatisticsListeners )
+				l.frameRendered( statistics );
+		}
+
 		return success;
 	}
 
+	/**
+	 * Add a {@link FrameStatisticsListener} that is notified after every
+	 * rendering pass. This enables counting of cache hits and misses in the
+	 * {@link VolatileGlobalCellCache}.
+	 */
+	public void addFrameStatisticsListener( final FrameStatisticsListener listener )
+	{
+		if ( cache instanceof VolatileGlobalCellCache )
+			( ( VolatileGlobalCellCache< ? > ) cache ).enableCacheStatistics();
+		frameStatisticsListeners.add( listener );
+	}
+
+	/**
+	 * Remove a {@link FrameStatisticsListener}.
+	 */
+	public void removeFrameStatisticsListener( final FrameStatisticsListener listener )
+	{
+		frameStatisticsListeners.remove( listener );
+	}
+
+	/**
+	 * Get the number of pixels of the screen image at each screen scale.
+	 */
+	private long[] getScreenScalePixels()
+	{
+		final long[] pixels = new long[ screenScales.length ];
+		for ( int i = 0; i < pixels.length; ++i )
+			pixels[ i ] = screenImages[ i ][ 0 ].dimension( 0 ) * screenImages[ i ][ 0 ].dimension( 1 );
+		return pixels;
+	}
+
+	/**
+	 * Update the controller with the wall-clock time of the last frame. The
+	 * {@link VolatileProjector#getLastFrameRenderNanoTime() render time} of
+	 * the projector is not used, because projectors differ in whether it
+	 * includes blocking IO, and the controller subtracts the IO time itself.
+	 */
+	private void updateIoTimeBudgetController( final IoTimeBudgetController controller, final long frameNanos, final long ioNanos )
+	{
+		final long[] loadNanoTimes;
+		final long[] numLoads;
+		if ( cache instanceof VolatileGlobalCellCache )
+		{
+			final VolatileGlobalCellCache< ? > c = ( VolatileGlobalCellCache< ? > ) cache;
+			final int n = c.getNumPriorities();
+			loadNanoTimes = new long[ n ];
+			numLoads = new long[ n ];
+			for ( int i = 0; i < n; ++i )
+			{
+				loadNanoTimes[ i ] = c.getLoadNanoTime( i );
+				numLoads[ i ] = c.getNumLoads( i );
+			}
+		}
+		else
+		{
+			loadNanoTimes = new long[ 0 ];
+			numLoads = new long[ 0 ];
+		}
+		controller.update( frameNanos, ioNanos, loadNanoTimes, numLoads );
+	}
+
+	private long getNumCacheHits()
+	{
+		return ( cache instanceof VolatileGlobalCellCache ) ? ( ( VolatileGlobalCellCache< ? > ) cache ).getNumCacheHits() : 0;
+	}
+
+	private long getNumCacheMisses()
+	{
+		return ( cache instanceof VolatileGlobalCellCache ) ? ( ( VolatileGlobalCellCache< ? > ) cache ).getNumCacheMisses() : 0;
+	}
+
+	private synchronized FrameStatistics createFrameStatistics(
+			final VolatileProjector p,
+			final boolean newProjector,
+			final boolean completed,
+			final long renderNanoTime,
+			final long ioNanoTime,
+			final long numCacheHits,
+			final long numCacheMisses )
+	{
+		final int numSources = projectorSourceIndices.size();
+		final int[] sourceIndices = new int[ numSources ];
+		final int[][] mipmapLevels = new int[ numSources ][];
+		final int[][] numInvalidPixels = new int[ numSources ][];
+		for ( int j = 0; j < numSources; ++j )
+		{
+			sourceIndices[ j ] = projectorSourceIndices.get( j );
+			mipmapLevels[ j ] = projectorMipmapLevels.get( j );
+			final VolatileProjector sp = projectorSourceProjectors.get( j );
+			if ( sp instanceof VolatileHierarchyProjector )
+				numInvalidPixels[ j ] = ( ( VolatileHierarchyProjector< ?, ? > ) sp ).getNumInvalidPixelsPerLevel();
+		}
+		return new FrameStatistics( newProjector, completed, p.isValid(), previousTimepoint,
+				currentScreenScaleIndex, screenScales[ currentScreenScaleIndex ], maxScreenScaleIndex,
+				renderNanoTime, ioNanoTime, sourceIndices, mipmapLevels, numInvalidPixels,
+				numCacheHits, numCacheMisses );
+	}
+
+	/**
+	 * Set the {@link TransformPredictor} used to prefetch cells along the
+	 * navigation path. Predicted requests are enqueued with lower priority
+	 * than requests for the current frame. If null, only cells for the
+	 * current frame are prefetched.
+	 */
+	public synchronized void setTransformPredictor( final TransformPredictor transformPredictor )
+	{
+		this.transformPredictor = transformPredictor;
+	}
+
+	/**
+	 * Set the {@link ScreenScaleController} that chooses the highest screen
+	 * scale with which rendering of a new frame starts.
+	 */
+	public synchronized void setScreenScaleController( final ScreenScaleController controller )
+	{
+		screenScaleController = controller;
+	}
+
+	public synchronized ScreenScaleController getScreenScaleController()
+	{
+		return screenScaleController;
+	}
+
+	/**
+	 * Set a fixed IO time budget, i.e., how much time (in nanoseconds) may be
+	 * spent per frame in blocking IO for each priority level (0 is the
+	 * coarsest mipmap level). This is only used if there is no
+	 * {@link #setIoTimeBudgetController(IoTimeBudgetController) controller}.
+	 */
+	public synchronized void setIoTimeBudget( final long[] iobudget )
+	{
+		this.iobudget = iobudget.clone();
+	}
+
+	/**
+	 * Set an {@link IoTimeBudgetController} that adapts the IO time budget
+	 * after every frame. If null, the fixed
+	 * {@link #setIoTimeBudget(long[]) IO time budget} is used.
+	 */
+	public synchronized void setIoTimeBudgetController( final IoTimeBudgetController controller )
+	{
+		ioTimeBudgetController = controller;
+	}
+
+	/**
+	 * Set whether the cells needed for rendering should be prefetched (in the
+	 * order in which they are needed) before rendering.
+	 */
+	public synchronized void setPrefetchCells( final boolean prefetchCells )
+	{
+		this.prefetchCells = prefetchCells;
+	}
+
+	/**
+	 * Set how many timepoints ahead to prefetch while the user is stepping
+	 * through time. Cells visible at the next {@code timepointLookahead}
+	 * timepoints (in the direction of travel) are requested at the best and
+	 * coarsest mipmap level, with lower priority than requests for the current
+	 * frame. Look-ahead stops when the timepoint was not changed for
+	 * {@link #TIMEPOINT_LOOKAHEAD_IDLE_MILLIS}.
+	 *
+	 * @param timepointLookahead
+	 *            number of timepoints to prefetch. 0 disables look-ahead.
+	 */
+	public synchronized void setTimepointLookahead( final int timepointLookahead )
+	{
+		this.timepointLookahead = Math.max( 0, timepointLookahead );
+	}
+
+	/**
+	 * Set the point around which cells are prefetched first. Within each
+	 * priority level, cells are requested in order of increasing distance
+	 * (on the screen) from this point. This method does not block, so it can
+	 * be called, e.g., for every mouse move.
+	 *
+	 * @param x
+	 *            display x coordinate.
+	 * @param y
+	 *            display y coordinate.
+	 */
+	public void setPrefetchFocus( final double x, final double y )
+	{
+		prefetchFocus = new double[] { x, y };
+	}
+
+	/**
+	 * Prefetch cells around the center of the screen first (this is the
+	 * default).
+	 */
+	public void clearPrefetchFocus()
+	{
+		prefetchFocus = null;
+	}
+
+	/**
+	 * Set whether to display a reprojected preview of the last full resolution
+	 * image when the viewer transform changes.
+	 */
+	public synchronized void setReprojectPreview( final boolean reprojectPreview )
+	{
+		this.reprojectPreview = reprojectPreview;
+		if ( !reprojectPreview )
+			lastFullResolutionImage = null;
+	}
+
+	/**
+	 * Get the double-buffer index to render the next image to. If possible,
+	 * this is an index from the {@link #renderIdQueue} other than
+	 * {@link #lastFullResolutionRenderId}. Otherwise, the
+	 * {@link #lastFullResolutionImage} is given up.
+	 */
+	protected synchronized int getFreeRenderId()
+	{
+		if ( !doubleBuffered )
+			return renderIdQueue.peek();
+		if ( lastFullResolutionImage != null )
+			for ( final Integer id : renderIdQueue )
+				if ( id != lastFullResolutionRenderId )
+					return id;
+		lastFullResolutionImage = null;
+		lastFullResolutionRenderId = -1;
+		return renderIdQueue.peek();
+	}
+
+	/**
+	 * If a new frame was requested, and the viewer transform changed within
+	 * the viewer plane since the {@link #lastFullResolutionImage last full
+	 * resolution image}, reproject that image to the new transform and display
+	 * it. Rendering then continues coarse-to-fine as usual. The
+	 * {@link #lastFullResolutionImage} is kept, such that further previews are
+	 * reprojected from the rendered image, not from previews.
+	 *
+	 * @return whether a preview was displayed.
+	 */
+	protected boolean paintReprojectedPreview( final ViewerState state )
+	{
+		final ARGBScreenImage sourceImage;
+		final int renderId;
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		final int sourceTimepoint;
+		synchronized ( this )
+		{
+			if ( !reprojectPreview || !doubleBuffered || !newFrameRequest || lastFullResolutionImage == null )
+				return false;
+			sourceImage = lastFullResolutionImage;
+			sourceTransform.set( lastFullResolutionTransform );
+			sourceTimepoint = lastFullResolutionTimepoint;
+			renderId = getFreeRenderId();
+			if ( lastFullResolutionImage == null )
+				return false;
+		}
+
+		final AffineTransform3D targetTransform = new AffineTransform3D();
+		final int targetTimepoint;
+		synchronized ( state )
+		{
+			state.getViewerTransform( targetTransform );
+			targetTimepoint = state.getCurrentTimepoint();
+		}
+		if ( targetTimepoint != sourceTimepoint )
+			return false;
+
+		// transform from target screen coordinates to source screen coordinates
+		final AffineTransform3D screenScale = screenScaleTransforms[ 0 ];
+		final AffineTransform3D delta = screenScale.inverse();
+		delta.preConcatenate( targetTransform.inverse() );
+		delta.preConcatenate( sourceTransform );
+		delta.preConcatenate( screenScale );
+		if ( !isInPlane( delta ) || isIdentity( delta ) )
+			return false;
+
+		final ARGBScreenImage targetImage = screenImages[ 0 ][ renderId ];
+		final long coverage = reproject( sourceImage, targetImage, delta );
+		if ( coverage < MIN_PREVIEW_COVERAGE * targetImage.size() )
+			return false;
+
+		synchronized ( this )
+		{
+			final BufferedImage bi = display.setBufferedImage( bufferedImages[ 0 ][ renderId ] );
+			renderIdQueue.remove( Integer.valueOf( renderId ) );
+			final Integer id = bufferedImageToRenderId.get( bi );
+			if ( id != null )
+				renderIdQueue.add( id );
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the transform maps the viewer plane to itself, i.e., whether the
+	 * transformed X and Y do not depend on Z, and Z is unchanged.
+	 */
+	private static boolean isInPlane( final AffineTransform3D t )
+	{
+		final double eps = 1e-6;
+		return Math.abs( t.get( 0, 2 ) ) < eps && Math.abs( t.get( 1, 2 ) ) < eps &&
+				Math.abs( t.get( 2, 0 ) ) < eps && Math.abs( t.get( 2, 1 ) ) < eps &&
+				Math.abs( t.get( 2, 2 ) - 1 ) < eps && Math.abs( t.get( 2, 3 ) ) < eps;
+	}
+
+	private static boolean isIdentity( final AffineTransform3D t )
+	{
+		final double eps = 1e-6;
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				if ( Math.abs( t.get( r, c ) - ( r == c ? 1 : 0 ) ) > eps )
+					return false;
+		return true;
+	}
+
+	/**
+	 * Reproject {@code source} into {@code target} (nearest neighbor). Target
+	 * pixels that map outside of {@code source} are set to 0.
+	 *
+	 * @param delta
+	 *            transform from target to source pixel coordinates. Only the
+	 *            X and Y rows are used.
+	 * @return the number of target pixels that were covered by the source, or
+	 *         -1 if reprojection failed or was interrupted. In that case, the
+	 *         target must not be displayed.
+	 */
+	protected long reproject( final ARGBScreenImage source, final ARGBScreenImage target, final AffineTransform3D delta )
+	{
+		final int[] sourceData = source.getData();
+		final int[] targetData = target.getData();
+		final int sourceWidth = ( int ) source.dimension( 0 );
+		final int sourceHeight = ( int ) source.dimension( 1 );
+		final int width = ( int ) target.dimension( 0 );
+		final int height = ( int ) target.dimension( 1 );
+		final double m00 = delta.get( 0, 0 ), m01 = delta.get( 0, 1 ), m03 = delta.get( 0, 3 );
+		final double m10 = delta.get( 1, 0 ), m11 = delta.get( 1, 1 ), m13 = delta.get( 1, 3 );
+		final AtomicLong coverage = new AtomicLong();
+
+		final int numTasks = Math.min( Math.max( 1, numRenderingThreads ), height );
+		final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final int myMinY = height * taskNum / numTasks;
+			final int myMaxY = height * ( taskNum + 1 ) / numTasks;
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					long myCoverage = 0;
+					for ( int y = myMinY; y < myMaxY; ++y )
+					{
+						int i = y * width;
+						for ( int x = 0; x < width; ++x, ++i )
+						{
+							final int sx = ( int ) Math.floor( m00 * x + m01 * y + m03 + 0.5 );
+							final int sy = ( int ) Math.floor( m10 * x + m11 * y + m13 + 0.5 );
+							if ( sx >= 0 && sx < sourceWidth && sy >= 0 && sy < sourceHeight )
+							{
+								targetData[ i ] = sourceData[ sy * sourceWidth + sx ];
+								++myCoverage;
+							}
+							else
+								targetData[ i ] = 0;
+						}
+					}
+					coverage.addAndGet( myCoverage );
+					return null;
+				}
+			} );
+		}
+
+		try
+		{
+			if ( renderingExecutorService == null || numTasks == 1 )
+			{
+				for ( final Callable< Void > task : tasks )
+					task.call();
+			}
+			else
+			{
+				for ( final Future< Void > future : renderingExecutorService.invokeAll( tasks ) )
+					future.get();
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+		catch ( final Exception e )
+		{
+			return -1;
+		}
+		return coverage.get();
+	}
+
 	/**
 	 * Request a repaint of the display from the painter thread, with maximum
 	 * screen scale index and mipmap level.
 	 */
 	public synchronized void requestRepaint()
 	{
+		lastNewFrameRequestMillis = System.currentTimeMillis();
 		newFrameRequest = true;
 		requestRepaint( maxScreenScaleIndex );
 	}
@@ -534,6 +1132,17 @@ public class MultiResolutionRenderer
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Shut down the threads that map the sources of multi-source frames. The
+	 * renderer must not be used afterwards. The
+	 * {@link #renderingExecutorService} belongs to the caller and is not shut
+	 * down.
+	 */
+	public void kill()
+	{
+		sourceProjectionExecutorService.shutdown();
+	}
+
 	private VolatileProjector createProjector(
 			final ViewerState viewerState,
 			final int screenScaleIndex,
@@ -542,6 +1151,15 @@ public class MultiResolutionRenderer
 		synchronized ( viewerState )
 		{
 			cache.initIoTimeBudget( null ); // clear time budget such that prefetching doesn't wait for loading blocks.
+			final int timepoint = viewerState.getCurrentTimepoint();
+			if ( previousTimepoint >= 0 && timepoint != previousTimepoint )
+			{
+				timepointDirection = timepoint > previousTimepoint ? 1 : -1;
+				lastTimepointChangeMillis = System.currentTimeMillis();
+			}
+			projectorSourceIndices.clear();
+			projectorMipmapLevels.clear();
+			projectorSourceProjectors.clear();
 			final List< SourceState< ? > > sources = viewerState.getSources();
 			final List< Integer > visibleSourceIndices = viewerState.getVisibleSourceIndices();
 			VolatileProjector projector;
@@ -551,6 +1169,7 @@ public class MultiResolutionRenderer
 			{
 				final int i = visibleSourceIndices.get( 0 );
 				projector = createSingleSourceProjector( viewerState, sources.get( i ), i, currentScreenScaleIndex, screenImage, renderMaskArrays[ 0 ] );
+				projectorSourceProjectors.add( projector );
 			}
 			else
 			{
@@ -567,11 +1186,12 @@ public class MultiResolutionRenderer
 							renderImage, maskArray );
 					sourceProjectors.add( p );
 					sourceImages.add( renderImage );
+					projectorSourceProjectors.add( p );
 				}
-				projector = new AccumulateProjectorARGB( sourceProjectors, sourceImages, screenImage, numRenderingThreads );
+				projector = new AccumulateProjectorARGB( sourceProjectors, sourceImages, screenImage, numRenderingThreads, renderingExecutorService, sourceProjectionExecutorService );
 			}
 			previousTimepoint = viewerState.getCurrentTimepoint();
-			cache.initIoTimeBudget( iobudget );
+			cache.initIoTimeBudget( ioTimeBudgetController != null ? ioTimeBudgetController.getBudget() : iobudget );
 			return projector;
 		}
 	}
@@ -620,6 +1240,8 @@ public class MultiResolutionRenderer
 		{
 			final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
 			final int bestLevel = viewerState.getBestMipMapLevel( screenScaleTransform, sourceIndex );
+			projectorSourceIndices.add( sourceIndex );
+			projectorMipmapLevels.add( new int[] { bestLevel } );
 			return new SimpleVolatileProjector< T, ARGBType >(
 					getTransformedSource( viewerState, source.getSpimSource(), screenScaleTransform, bestLevel ),
 					source.getConverter(), screenImage, numRenderingThreads );
@@ -636,12 +1258,15 @@ public class MultiResolutionRenderer
 	{
 		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
 		final ArrayList< RandomAccessible< T > > levels = new ArrayList< RandomAccessible< T > >();
+		final ArrayList< AxisAlignedCellSampler > axisAlignedSamplers = new ArrayList< AxisAlignedCellSampler >();
 		final int bestLevel = viewerState.getBestMipMapLevel( screenScaleTransform, sourceIndex );
 		final int nLevels = source.getSpimSource().getNumMipmapLevels();
 		final Source< T > spimSource = source.getSpimSource();
 		final int t = viewerState.getCurrentTimepoint();
+		projectorSourceIndices.add( sourceIndex );
 		if ( t != previousTimepoint )
 		{
+			projectorMipmapLevels.add( ( nLevels - 1 != bestLevel ) ? new int[] { bestLevel, nLevels - 1 } : new int[] { bestLevel } );
 			// When scrolling through time, we often get frames for which no
 			// data was loaded yet. To speed up rendering in these cases, use
 			// only two mipmap levels: the optimal and the coarsest. By doing
@@ -651,8 +1276,12 @@ public class MultiResolutionRenderer
 			// between images that have all data present already or that we move
 			// to a new image with no data present at all.
 			levels.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, bestLevel ) );
+			axisAlignedSamplers.add( getAxisAlignedSampler( viewerState, source, screenScaleTransform, bestLevel, screenImage ) );
 			if ( nLevels - 1 != bestLevel )
+			{
 				levels.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, nLevels - 1 ) );
+				axisAlignedSamplers.add( getAxisAlignedSampler( viewerState, source, screenScaleTransform, nLevels - 1, screenImage ) );
+			}
 
 			if ( prefetchCells )
 			{
@@ -668,16 +1297,28 @@ public class MultiResolutionRenderer
 		}
 		else
 		{
+			final int[] levelIndices = new int[ nLevels - bestLevel ];
 			for ( int i = bestLevel; i < nLevels; ++i )
+			{
 				levels.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, i ) );
+				axisAlignedSamplers.add( getAxisAlignedSampler( viewerState, source, screenScaleTransform, i, screenImage ) );
+				levelIndices[ i - bestLevel ] = i;
+			}
+			projectorMipmapLevels.add( levelIndices );
 
 			if ( prefetchCells )
+			{
 				for ( int i = nLevels - 1; i >= bestLevel; --i )
 					prefetch( viewerState, spimSource, screenScaleTransform, i, screenImage );
+				if ( prefetchPredicted )
+					prefetchPredicted( viewerState, spimSource, screenScaleTransform, bestLevel, screenImage );
+			}
 		}
+		if ( prefetchCells && prefetchPredicted )
+			prefetchTimepoints( viewerState, spimSource, screenScaleTransform, bestLevel, screenImage );
 //		for ( int i = bestLevel - 1; i >= 0; --i )
 //			levels.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, i ) );
-		return new VolatileHierarchyProjector< T, ARGBType >( levels, source.getConverter(), screenImage, numRenderingThreads, renderingExecutorService );
+		return new VolatileHierarchyProjector< T, ARGBType >( levels, axisAlignedSamplers, source.getConverter(), screenImage, screenImage.getData(), numRenderingThreads, renderingExecutorService );
 	}
 
 	private static < T > RandomAccessible< T > getTransformedSource( final ViewerState viewerState, final Source< T > source, final AffineTransform3D screenScaleTransform, final int mipmapIndex )
@@ -685,41 +1326,177 @@ public class MultiResolutionRenderer
 		final int timepoint = viewerState.getCurrentTimepoint();
 		final Interpolation interpolation = viewerState.getInterpolation();
 		final RealRandomAccessible< T > img = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
+		return RealViews.constantAffine( img, getSourceToScreen( viewerState, source, screenScaleTransform, mipmapIndex ) );
+	}
+
+	/**
+	 * Get an {@link AxisAlignedCellSampler} for rendering the given mipmap
+	 * level of a source, or null if the current transform and interpolation
+	 * do not allow it.
+	 */
+	private static AxisAlignedCellSampler getAxisAlignedSampler( final ViewerState viewerState, final SourceState< ? > source, final AffineTransform3D screenScaleTransform, final int mipmapIndex, final ARGBScreenImage screenImage )
+	{
+		final Source< ? > spimSource = source.getSpimSource();
+		return AxisAlignedCellSampler.create(
+				spimSource,
+				viewerState.getCurrentTimepoint(),
+				mipmapIndex,
+				viewerState.getInterpolation(),
+				getSourceToScreen( viewerState, spimSource, screenScaleTransform, mipmapIndex ),
+				source.getConverter(),
+				( int ) screenImage.dimension( 0 ) );
+	}
 
+	private static AffineTransform3D getSourceToScreen( final ViewerState viewerState, final Source< ? > source, final AffineTransform3D screenScaleTransform, final int mipmapIndex )
+	{
 		final AffineTransform3D sourceToScreen = new AffineTransform3D();
 		viewerState.getViewerTransform( sourceToScreen );
-		sourceToScreen.concatenate( source.getSourceTransform( timepoint, mipmapIndex ) );
+		sourceToScreen.concatenate( source.getSourceTransform( viewerState.getCurrentTimepoint(), mipmapIndex ) );
 		sourceToScreen.preConcatenate( screenScaleTransform );
-
-		return RealViews.constantAffine( img, sourceToScreen );
+		return sourceToScreen;
 	}
 
-	private static < T > void prefetch(
+	/**
+	 * Prefetch the cells of the coarsest and the given mipmap level that will
+	 * be needed at the viewer transforms predicted by the
+	 * {@link #transformPredictor}. Requests are made
+	 * {@link VolatileGlobalCellCache#setPredictiveRequests(boolean)
+	 * predictive}, so that they do not compete with requests for the current
+	 * frame.
+	 */
+	private < T > void prefetchPredicted(
 			final ViewerState viewerState,
 			final Source< T > source,
 			final AffineTransform3D screenScaleTransform,
 			final int mipmapIndex,
 			final Dimensions screenInterval )
 	{
+		if ( transformPredictor == null || !( cache instanceof VolatileGlobalCellCache ) )
+			return;
+
+		final VolatileGlobalCellCache< ? > c = ( VolatileGlobalCellCache< ? > ) cache;
 		final int timepoint = viewerState.getCurrentTimepoint();
-		final RandomAccessibleInterval< T > img = source.getSource( timepoint, mipmapIndex );
-		if ( CellImg.class.isInstance( img ) )
+		final Interpolation interpolation = viewerState.getInterpolation();
+		final int coarsestIndex = source.getNumMipmapLevels() - 1;
+		final long now = System.currentTimeMillis();
+		final AffineTransform3D predictedTransform = new AffineTransform3D();
+		c.setPredictiveRequests( true );
+		try
+		{
+			for ( final long lookahead : PREDICTION_LOOKAHEAD_MILLIS )
+			{
+				if ( !transformPredictor.predictTransform( now + lookahead, predictedTransform ) )
+					break;
+				if ( coarsestIndex != mipmapIndex )
+					prefetch( predictedTransform, timepoint, interpolation, source, screenScaleTransform, coarsestIndex, screenInterval );
+				prefetch( predictedTransform, timepoint, interpolation, source, screenScaleTransform, mipmapIndex, screenInterval );
+			}
+		}
+		finally
 		{
-			final CellImg< ?, ?, ? > cellImg = ( CellImg< ?, ?, ? > ) img;
-			final int[] cellDimensions = new int[ 3 ];
-			cellImg.getCells().cellDimensions( cellDimensions );
-			final long[] dimensions = new long[ 3 ];
-			cellImg.dimensions( dimensions );
-			final RandomAccess< ? > cellsRandomAccess = cellImg.getCells().randomAccess();
+			c.setPredictiveRequests( false );
+		}
+	}
+
+	/**
+	 * Prefetch the cells of the coarsest and the given mipmap level that will
+	 * be needed at the next {@link #timepointLookahead} timepoints in the
+	 * {@link #timepointDirection direction} in which the user is moving
+	 * through time. Requests are made
+	 * {@link VolatileGlobalCellCache#setPredictiveRequests(boolean)
+	 * predictive}, nearest timepoints first.
+	 * <p>
+	 * The images of upcoming timepoints are obtained with
+	 * {@link PrefetchableSource#loadSource(int, int, AffineTransform3D)}, so
+	 * the timepoints loaded into the source for rendering are not changed.
+	 * Nothing is prefetched for other sources.
+	 */
+	private < T > void prefetchTimepoints(
+			final ViewerState viewerState,
+			final Source< T > source,
+			final AffineTransform3D screenScaleTransform,
+			final int mipmapIndex,
+			final Dimensions screenInterval )
+	{
+		if ( timepointLookahead <= 0 || timepointDirection == 0 || !( cache instanceof VolatileGlobalCellCache ) )
+			return;
+		if ( !( source instanceof PrefetchableSource ) )
+			return;
+		if ( System.currentTimeMillis() - lastTimepointChangeMillis > TIMEPOINT_LOOKAHEAD_IDLE_MILLIS )
+			return;
+
+		final VolatileGlobalCellCache< ? > c = ( VolatileGlobalCellCache< ? > ) cache;
+		final PrefetchableSource< T > prefetchableSource = ( PrefetchableSource< T > ) source;
+		final int currentTimepoint = viewerState.getCurrentTimepoint();
+		final int numTimepoints = viewerState.getNumTimePoints();
+		final Interpolation interpolation = viewerState.getInterpolation();
+		final int coarsestIndex = source.getNumMipmapLevels() - 1;
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerState.getViewerTransform( viewerTransform );
+		final double[] focus = getScreenFocus( screenScaleTransform );
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		c.setPredictiveRequests( true );
+		try
+		{
+			for ( int i = 1; i <= timepointLookahead; ++i )
+			{
+				final int timepoint = currentTimepoint + i * timepointDirection;
+				if ( timepoint < 0 || timepoint >= numTimepoints )
+					break;
+				if ( !source.isPresent( timepoint ) )
+					continue;
+				if ( coarsestIndex != mipmapIndex )
+				{
+					final RandomAccessibleInterval< T > coarsestImg = prefetchableSource.loadSource( timepoint, coarsestIndex, sourceTransform );
+					if ( coarsestImg != null )
+						Prefetcher.fetchCells( viewerTransform, coarsestImg, sourceTransform, interpolation, screenScaleTransform, screenInterval, focus );
+				}
+				final RandomAccessibleInterval< T > img = prefetchableSource.loadSource( timepoint, mipmapIndex, sourceTransform );
+				if ( img != null )
+					Prefetcher.fetchCells( viewerTransform, img, sourceTransform, interpolation, screenScaleTransform, screenInterval, focus );
+			}
+		}
+		finally
+		{
+			c.setPredictiveRequests( false );
+		}
+	}
 
-			final Interpolation interpolation = viewerState.getInterpolation();
+	private < T > void prefetch(
+			final ViewerState viewerState,
+			final Source< T > source,
+			final AffineTransform3D screenScaleTransform,
+			final int mipmapIndex,
+			final Dimensions screenInterval )
+	{
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerState.getViewerTransform( viewerTransform );
+		prefetch( viewerTransform, viewerState.getCurrentTimepoint(), viewerState.getInterpolation(), source, screenScaleTransform, mipmapIndex, screenInterval );
+	}
 
-			final AffineTransform3D sourceToScreen = new AffineTransform3D();
-			viewerState.getViewerTransform( sourceToScreen );
-			sourceToScreen.concatenate( source.getSourceTransform( timepoint, mipmapIndex ) );
-			sourceToScreen.preConcatenate( screenScaleTransform );
+	private < T > void prefetch(
+			final AffineTransform3D viewerTransform,
+			final int timepoint,
+			final Interpolation interpolation,
+			final Source< T > source,
+			final AffineTransform3D screenScaleTransform,
+			final int mipmapIndex,
+			final Dimensions screenInterval )
+	{
+		Prefetcher.fetchCells( viewerTransform, timepoint, interpolation, source, screenScaleTransform, mipmapIndex, screenInterval, getScreenFocus( screenScaleTransform ) );
+	}
 
-			Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
-		}
+	/**
+	 * Get the {@link #prefetchFocus} in screen coordinates, or null if it is
+	 * not set.
+	 */
+	private double[] getScreenFocus( final AffineTransform3D screenScaleTransform )
+	{
+		final double[] displayFocus = prefetchFocus;
+		if ( displayFocus == null )
+			return null;
+		final double[] focus = new double[ 3 ];
+		screenScaleTransform.apply( new double[] { displayFocus[ 0 ], displayFocus[ 1 ], 0 }, focus );
+		return focus;
 	}
 }
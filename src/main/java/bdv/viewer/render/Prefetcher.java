@@ -1,11 +1,15 @@
 package bdv.viewer.render;
 
+import java.util.Arrays;
+
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
 
 public class Prefetcher
 {
@@ -27,7 +31,117 @@ public class Prefetcher
 	 */
 	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
 	{
-		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, null );
+	}
+
+	/**
+	 * Access cells that will be needed for rendering to the screen. Cells are
+	 * accessed in order of increasing distance (on the screen) from a focus
+	 * point, such that the region the user is looking at is requested first.
+	 *
+	 * @param sourceToScreen
+	 *            source-to-screen transform
+	 * @param cellDimensions
+	 *            standard size of a source cell
+	 * @param dimensions
+	 *            dimensions of the source {@link CellImg}
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param cellsRandomAccess
+	 *            access to the source cells
+	 * @param focus
+	 *            screen coordinates (x, y) of the focus point, or null to use
+	 *            the center of the screen interval.
+	 */
+	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final double[] focus )
+	{
+		final Prefetcher prefetcher = new Prefetcher();
+		if ( focus == null )
+		{
+			prefetcher.focusX = 0.5 * screenInterval.dimension( 0 );
+			prefetcher.focusY = 0.5 * screenInterval.dimension( 1 );
+		}
+		else
+		{
+			prefetcher.focusX = focus[ 0 ];
+			prefetcher.focusY = focus[ 1 ];
+		}
+		prefetcher.scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		prefetcher.fetchSorted( cellsRandomAccess );
+	}
+
+	/**
+	 * Access the cells of a source that will be needed for rendering it to the
+	 * screen. Nothing is done if the source image at the given timepoint and
+	 * mipmap level is not a {@link CellImg}.
+	 *
+	 * @param viewerTransform
+	 *            global-to-viewer transform
+	 * @param timepoint
+	 *            timepoint index
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param source
+	 *            the source to render
+	 * @param screenScaleTransform
+	 *            viewer-to-screen transform
+	 * @param mipmapIndex
+	 *            mipmap level of the source to access
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param focus
+	 *            screen coordinates (x, y) of the point around which cells are
+	 *            accessed first, or null to use the center of the screen
+	 *            interval.
+	 */
+	public static < T > void fetchCells( final AffineTransform3D viewerTransform, final int timepoint, final Interpolation interpolation, final Source< T > source, final AffineTransform3D screenScaleTransform, final int mipmapIndex, final Dimensions screenInterval, final double[] focus )
+	{
+		final RandomAccessibleInterval< T > img = source.getSource( timepoint, mipmapIndex );
+		if ( CellImg.class.isInstance( img ) )
+			fetchCells( viewerTransform, img, source.getSourceTransform( timepoint, mipmapIndex ), interpolation, screenScaleTransform, screenInterval, focus );
+	}
+
+	/**
+	 * Access the cells of a source image that will be needed for rendering it
+	 * to the screen. Nothing is done if the image is not a {@link CellImg}.
+	 *
+	 * @param viewerTransform
+	 *            global-to-viewer transform
+	 * @param img
+	 *            the source image to access
+	 * @param sourceTransform
+	 *            source-to-global transform of the image
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param screenScaleTransform
+	 *            viewer-to-screen transform
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param focus
+	 *            screen coordinates (x, y) of the point around which cells are
+	 *            accessed first, or null to use the center of the screen
+	 *            interval.
+	 */
+	public static void fetchCells( final AffineTransform3D viewerTransform, final RandomAccessibleInterval< ? > img, final AffineTransform3D sourceTransform, final Interpolation interpolation, final AffineTransform3D screenScaleTransform, final Dimensions screenInterval, final double[] focus )
+	{
+		if ( CellImg.class.isInstance( img ) )
+		{
+			final CellImg< ?, ?, ? > cellImg = ( CellImg< ?, ?, ? > ) img;
+			final int[] cellDimensions = new int[ 3 ];
+			cellImg.getCells().cellDimensions( cellDimensions );
+			final long[] dimensions = new long[ 3 ];
+			cellImg.dimensions( dimensions );
+			final RandomAccess< ? > cellsRandomAccess = cellImg.getCells().randomAccess();
+
+			final AffineTransform3D sourceToScreen = new AffineTransform3D();
+			sourceToScreen.set( viewerTransform );
+			sourceToScreen.concatenate( sourceTransform );
+			sourceToScreen.preConcatenate( screenScaleTransform );
+
+			fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, focus );
+		}
 	}
 
 	private Prefetcher()
@@ -54,7 +168,75 @@ public class Prefetcher
 	private static final double eps = 0.0000001;
 
 	/**
-	 * Access cells that will be needed for rendering to the screen.
+	 * Screen coordinates of the point from which cell distances are measured.
+	 */
+	private double focusX;
+
+	private double focusY;
+
+	/**
+	 * Grid positions (x, y, z) of the visible cells found by
+	 * {@link #scan(AffineTransform3D, int[], long[], Dimensions, Interpolation, RandomAccess)}.
+	 */
+	private int[] cellPositions = new int[ 3 * 64 ];
+
+	/**
+	 * For each visible cell, its squared distance from the focus point (as
+	 * float bits, in the upper 32 bits) and its index (lower 32 bits). Sorting
+	 * these keys sorts the cells by distance.
+	 */
+	private long[] cellKeys = new long[ 64 ];
+
+	private int numCells = 0;
+
+	/**
+	 * Record a visible cell.
+	 *
+	 * @param cellsRandomAccess
+	 *            positioned at the cell.
+	 * @param x
+	 *            screen x coordinate of the cell center.
+	 * @param y
+	 *            screen y coordinate of the cell center.
+	 */
+	private void addCell( final RandomAccess< ? > cellsRandomAccess, final double x, final double y )
+	{
+		if ( numCells == cellKeys.length )
+		{
+			cellKeys = Arrays.copyOf( cellKeys, 2 * numCells );
+			cellPositions = Arrays.copyOf( cellPositions, 6 * numCells );
+		}
+		final double dx = x - focusX;
+		final double dy = y - focusY;
+		// floatToIntBits is monotonic for non-negative floats
+		final long distance = Float.floatToIntBits( ( float ) ( dx * dx + dy * dy ) );
+		cellKeys[ numCells ] = ( distance << 32 ) | numCells;
+		final int o = 3 * numCells;
+		cellPositions[ o ] = cellsRandomAccess.getIntPosition( 0 );
+		cellPositions[ o + 1 ] = cellsRandomAccess.getIntPosition( 1 );
+		cellPositions[ o + 2 ] = cellsRandomAccess.getIntPosition( 2 );
+		++numCells;
+	}
+
+	/**
+	 * Access all recorded cells, nearest to the focus point first.
+	 */
+	private void fetchSorted( final RandomAccess< ? > cellsRandomAccess )
+	{
+		Arrays.sort( cellKeys, 0, numCells );
+		for ( int i = 0; i < numCells; ++i )
+		{
+			final int o = 3 * ( int ) ( cellKeys[ i ] & 0xffffffffl );
+			cellsRandomAccess.setPosition( cellPositions[ o ], 0 );
+			cellsRandomAccess.setPosition( cellPositions[ o + 1 ], 1 );
+			cellsRandomAccess.setPosition( cellPositions[ o + 2 ], 2 );
+			cellsRandomAccess.get();
+		}
+	}
+
+	/**
+	 * Find cells that will be needed for rendering to the screen, and
+	 * {@link #addCell(RandomAccess, double, double) record} them.
 	 *
 	 * @param sourceToScreen
 	 *            source-to-screen transform
@@ -163,7 +345,7 @@ public class Prefetcher
 							( y + offsetPos[ 1 ] >= 0 ) &&
 							( y + offsetNeg[ 1 ] < h ) )
 					{
-						cellsRandomAccess.get();
+						addCell( cellsRandomAccess, x + 0.5 * ( offsetNeg[ 0 ] + offsetPos[ 0 ] ), y + 0.5 * ( offsetNeg[ 1 ] + offsetPos[ 1 ] ) );
 					}
 					pSource.move( cellDimensions[ 0 ], 0 );
 				}
@@ -0,0 +1,200 @@
+package bdv.viewer.render;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link FrameStatisticsListener} that aggregates {@link FrameStatistics}
+ * and publishes them as a JMX MBean, so that rendering latency can be
+ * monitored with standard JMX tools (e.g., jconsole).
+ */
+public class RenderingStatistics implements FrameStatisticsListener, RenderingStatisticsMBean
+{
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private long numPasses;
+
+	private long numCancelledPasses;
+
+	private long numNewFrames;
+
+	private long sumRenderNanoTime;
+
+	private long maxRenderNanoTime;
+
+	private long sumIoNanoTime;
+
+	private long numCacheHits;
+
+	private long numCacheMisses;
+
+	private FrameStatistics last;
+
+	@Override
+	public synchronized void frameRendered( final FrameStatistics statistics )
+	{
+		last = statistics;
+		++numPasses;
+		if ( !statistics.isCompleted() )
+			++numCancelledPasses;
+		if ( statistics.isNewProjector() )
+			++numNewFrames;
+		sumRenderNanoTime += statistics.getRenderNanoTime();
+		maxRenderNanoTime = Math.max( maxRenderNanoTime, statistics.getRenderNanoTime() );
+		sumIoNanoTime += statistics.getIoNanoTime();
+		numCacheHits += statistics.getNumCacheHits();
+		numCacheMisses += statistics.getNumCacheMisses();
+	}
+
+	/**
+	 * Get the {@link FrameStatistics} of the last rendering pass, or null.
+	 */
+	public synchronized FrameStatistics getLastFrameStatistics()
+	{
+		return last;
+	}
+
+	@Override
+	public synchronized long getNumPasses()
+	{
+		return numPasses;
+	}
+
+	@Override
+	public synchronized long getNumCancelledPasses()
+	{
+		return numCancelledPasses;
+	}
+
+	@Override
+	public synchronized long getNumNewFrames()
+	{
+		return numNewFrames;
+	}
+
+	@Override
+	public synchronized double getLastRenderTimeMillis()
+	{
+		return last == null ? 0 : last.getRenderNanoTime() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public synchronized double getLastIoTimeMillis()
+	{
+		return last == null ? 0 : last.getIoNanoTime() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public synchronized double getMeanRenderTimeMillis()
+	{
+		return numPasses == 0 ? 0 : sumRenderNanoTime / NANOS_PER_MILLI / numPasses;
+	}
+
+	@Override
+	public synchronized double getMaxRenderTimeMillis()
+	{
+		return maxRenderNanoTime / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public synchronized double getMeanIoTimeMillis()
+	{
+		return numPasses == 0 ? 0 : sumIoNanoTime / NANOS_PER_MILLI / numPasses;
+	}
+
+	@Override
+	public synchronized int getLastTimepoint()
+	{
+		return last == null ? -1 : last.getTimepoint();
+	}
+
+	@Override
+	public synchronized double getLastScreenScale()
+	{
+		return last == null ? 0 : last.getScreenScale();
+	}
+
+	@Override
+	public synchronized int getLastMaxScreenScaleIndex()
+	{
+		return last == null ? -1 : last.getMaxScreenScaleIndex();
+	}
+
+	/**
+	 * Total number of invalid pixels after the last rendering pass, summed
+	 * over all sources (using the last rendered level of each source).
+	 */
+	@Override
+	public synchronized long getLastNumInvalidPixels()
+	{
+		if ( last == null )
+			return 0;
+		long sum = 0;
+		for ( final int[] perLevel : last.getNumInvalidPixels() )
+		{
+			if ( perLevel == null )
+				continue;
+			for ( int l = perLevel.length - 1; l >= 0; --l )
+				if ( perLevel[ l ] >= 0 )
+				{
+					sum += perLevel[ l ];
+					break;
+				}
+		}
+		return sum;
+	}
+
+	@Override
+	public synchronized long getNumCacheHits()
+	{
+		return numCacheHits;
+	}
+
+	@Override
+	public synchronized long getNumCacheMisses()
+	{
+		return numCacheMisses;
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		numPasses = 0;
+		numCancelledPasses = 0;
+		numNewFrames = 0;
+		sumRenderNanoTime = 0;
+		maxRenderNanoTime = 0;
+		sumIoNanoTime = 0;
+		numCacheHits = 0;
+		numCacheMisses = 0;
+		last = null;
+	}
+
+	/**
+	 * Register this with the platform MBean server.
+	 *
+	 * @param name
+	 *            distinguishes the viewers of one JVM. The MBean is
+	 *            registered as <code>bdv:type=RenderingStatistics,name=</code>
+	 *            <em>name</em>.
+	 * @return the name of the registered MBean.
+	 */
+	public ObjectName register( final String name ) throws JMException
+	{
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName objectName = new ObjectName( "bdv:type=RenderingStatistics,name=" + ObjectName.quote( name ) );
+		server.registerMBean( this, objectName );
+		return objectName;
+	}
+
+	/**
+	 * Unregister an MBean from the platform MBean server.
+	 */
+	public static void unregister( final ObjectName objectName ) throws JMException
+	{
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+	}
+}
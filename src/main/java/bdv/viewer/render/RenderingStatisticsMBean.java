@@ -0,0 +1,38 @@
+package bdv.viewer.render;
+
+/**
+ * JMX management interface of {@link RenderingStatistics}. Times are in
+ * milliseconds.
+ */
+public interface RenderingStatisticsMBean
+{
+	public long getNumPasses();
+
+	public long getNumCancelledPasses();
+
+	public long getNumNewFrames();
+
+	public double getLastRenderTimeMillis();
+
+	public double getLastIoTimeMillis();
+
+	public double getMeanRenderTimeMillis();
+
+	public double getMaxRenderTimeMillis();
+
+	public double getMeanIoTimeMillis();
+
+	public int getLastTimepoint();
+
+	public double getLastScreenScale();
+
+	public int getLastMaxScreenScaleIndex();
+
+	public long getLastNumInvalidPixels();
+
+	public long getNumCacheHits();
+
+	public long getNumCacheMisses();
+
+	public void reset();
+}
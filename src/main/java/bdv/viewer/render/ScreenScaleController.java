@@ -0,0 +1,37 @@
+package bdv.viewer.render;
+
+/**
+ * Chooses the coarsest screen scale with which {@link MultiResolutionRenderer}
+ * starts rendering a new frame (the <em>highest screen scale</em>), based on
+ * the rendering times of past passes.
+ */
+public interface ScreenScaleController
+{
+	/**
+	 * Called on the painter thread after a rendering pass at a new screen scale
+	 * completed.
+	 *
+	 * @param screenScaleIndex
+	 *            index of the screen scale that was rendered.
+	 * @param numPixels
+	 *            number of pixels of the screen image at that screen scale.
+	 * @param renderNanos
+	 *            time (in nanoseconds) the pass took.
+	 */
+	public void frameRendered( int screenScaleIndex, long numPixels, long renderNanos );
+
+	/**
+	 * Choose the index of the highest screen scale to use for the next frame.
+	 *
+	 * @param screenScalePixels
+	 *            number of pixels of the screen image at each screen scale
+	 *            (index 0 is full resolution).
+	 * @param currentMaxScreenScaleIndex
+	 *            the index of the currently used highest screen scale.
+	 * @param interacting
+	 *            whether the user is currently interacting, i.e., new frames
+	 *            have been requested recently.
+	 * @return index of the highest screen scale to use.
+	 */
+	public int getMaxScreenScaleIndex( long[] screenScalePixels, int currentMaxScreenScaleIndex, boolean interacting );
+}
@@ -0,0 +1,179 @@
+package bdv.viewer.render;
+
+import java.util.ArrayDeque;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.LinAlgHelpers;
+import bdv.util.Affine3DHelpers;
+import bdv.viewer.animate.SimilarityTransformAnimator;
+
+/**
+ * Keeps the recent viewer transforms with their time stamps and predicts
+ * future transforms by extrapolating the motion of the view.
+ * <p>
+ * The motion is estimated over at least {@link #VELOCITY_WINDOW_MILLIS} (if
+ * the view has been moving for that long), not between the last two
+ * transforms, because mouse events come only a few milliseconds apart. Viewer
+ * transforms are assumed to comprise isotropic scaling, rotation, and
+ * translation. As in {@link SimilarityTransformAnimator}, the rotation is
+ * extrapolated along the same arc, the scale geometrically, and the global
+ * point shown at the viewer center linearly, so predicted transforms are
+ * similarities as well.
+ * <p>
+ * No prediction is made if the view has not changed for
+ * {@link #MAX_IDLE_MILLIS} (it is assumed to have stopped moving), if the
+ * prediction reaches further than {@link #MAX_LOOKAHEAD_MILLIS} into the
+ * future, or further than {@link #MAX_EXTRAPOLATION} times the time span over
+ * which the motion was estimated.
+ */
+public class TransformHistory
+{
+	public static final long MAX_IDLE_MILLIS = 200;
+
+	public static final long MAX_LOOKAHEAD_MILLIS = 1000;
+
+	/**
+	 * Minimum time span over which the motion is estimated, if the history is
+	 * long enough.
+	 */
+	public static final long VELOCITY_WINDOW_MILLIS = 100;
+
+	/**
+	 * Maximum ratio of the look-ahead to the time span over which the motion
+	 * was estimated.
+	 */
+	public static final double MAX_EXTRAPOLATION = 4;
+
+	private static final class Event
+	{
+		final long timeMillis;
+
+		final AffineTransform3D transform;
+
+		Event( final long timeMillis, final AffineTransform3D transform )
+		{
+			this.timeMillis = timeMillis;
+			this.transform = transform.copy();
+		}
+	}
+
+	/**
+	 * Recorded transforms, oldest first. Only the newest transform recorded
+	 * at least {@link #VELOCITY_WINDOW_MILLIS} before the last one, and the
+	 * transforms after it are kept.
+	 */
+	private final ArrayDeque< Event > history = new ArrayDeque< Event >();
+
+	/**
+	 * Record the viewer transform at the given time.
+	 */
+	public synchronized void add( final long timeMillis, final AffineTransform3D transform )
+	{
+		if ( !history.isEmpty() )
+		{
+			final long lastTime = history.getLast().timeMillis;
+			if ( timeMillis <= lastTime )
+			{
+				// several changes within one millisecond: keep the last
+				history.getLast().transform.set( transform );
+				return;
+			}
+			// the view stopped moving, do not estimate motion across the
+			// pause
+			if ( timeMillis - lastTime > MAX_IDLE_MILLIS )
+				history.clear();
+		}
+		history.add( new Event( timeMillis, transform ) );
+
+		while ( history.size() > 2 )
+		{
+			final Event oldest = history.removeFirst();
+			if ( history.getFirst().timeMillis > timeMillis - VELOCITY_WINDOW_MILLIS )
+			{
+				history.addFirst( oldest );
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Forget all recorded transforms.
+	 */
+	public synchronized void clear()
+	{
+		history.clear();
+	}
+
+	/**
+	 * Predict the viewer transform at the given time.
+	 *
+	 * @param timeMillis
+	 *            time (as in {@link System#currentTimeMillis()}) for which to
+	 *            predict the viewer transform.
+	 * @param viewerCenterX
+	 *            x coordinate of the viewer center.
+	 * @param viewerCenterY
+	 *            y coordinate of the viewer center.
+	 * @param transform
+	 *            is set to the predicted viewer transform.
+	 * @return false if no prediction can be made.
+	 */
+	public synchronized boolean predictTransform( final long timeMillis, final double viewerCenterX, final double viewerCenterY, final AffineTransform3D transform )
+	{
+		if ( history.size() < 2 )
+			return false;
+		final Event first = history.getFirst();
+		final Event last = history.getLast();
+		final long now = System.currentTimeMillis();
+		if ( now - last.timeMillis > MAX_IDLE_MILLIS || timeMillis - last.timeMillis > MAX_LOOKAHEAD_MILLIS )
+			return false;
+		final double f = ( double ) ( timeMillis - last.timeMillis ) / ( last.timeMillis - first.timeMillis );
+		if ( f > MAX_EXTRAPOLATION )
+			return false;
+
+		// rotation
+		final double[] qFirst = new double[ 4 ];
+		final double[] qLast = new double[ 4 ];
+		Affine3DHelpers.extractRotation( first.transform, qFirst );
+		Affine3DHelpers.extractRotation( last.transform, qLast );
+		final double[] qTmp = new double[ 4 ];
+		final double[] qAdd = new double[ 4 ];
+		LinAlgHelpers.quaternionInvert( qFirst, qTmp );
+		LinAlgHelpers.quaternionMultiply( qLast, qTmp, qAdd );
+		if ( qAdd[ 0 ] < 0 )
+			for ( int i = 0; i < 4; ++i )
+				qAdd[ i ] = -qAdd[ i ];
+		final double[] qAddPredicted = new double[ 4 ];
+		final double[] qPredicted = new double[ 4 ];
+		LinAlgHelpers.quaternionPower( qAdd, f, qAddPredicted );
+		LinAlgHelpers.quaternionMultiply( qAddPredicted, qLast, qPredicted );
+		final double[][] m = new double[ 3 ][ 4 ];
+		LinAlgHelpers.quaternionToR( qPredicted, m );
+
+		// scale
+		final double sFirst = Affine3DHelpers.extractScale( first.transform, 0 );
+		final double sLast = Affine3DHelpers.extractScale( last.transform, 0 );
+		final double s = sLast * Math.pow( sLast / sFirst, f );
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				m[ r ][ c ] *= s;
+
+		// translation, such that the extrapolated center is shown at the
+		// viewer center
+		final double[] viewerCenter = new double[] { viewerCenterX, viewerCenterY, 0 };
+		final double[] centerFirst = new double[ 3 ];
+		final double[] centerLast = new double[ 3 ];
+		first.transform.applyInverse( centerFirst, viewerCenter );
+		last.transform.applyInverse( centerLast, viewerCenter );
+		for ( int r = 0; r < 3; ++r )
+		{
+			double sum = 0;
+			for ( int c = 0; c < 3; ++c )
+				sum += m[ r ][ c ] * ( centerLast[ c ] + f * ( centerLast[ c ] - centerFirst[ c ] ) );
+			m[ r ][ 3 ] = viewerCenter[ r ] - sum;
+		}
+
+		transform.set( m );
+		return true;
+	}
+}
@@ -0,0 +1,23 @@
+package bdv.viewer.render;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Predicts future viewer transforms, such that the
+ * {@link MultiResolutionRenderer} can prefetch data along the navigation path.
+ */
+public interface TransformPredictor
+{
+	/**
+	 * Predict the viewer transform at the given time.
+	 *
+	 * @param timeMillis
+	 *            time (as in {@link System#currentTimeMillis()}) for which to
+	 *            predict the viewer transform.
+	 * @param transform
+	 *            is set to the predicted viewer transform.
+	 * @return false if no prediction can be made, e.g., because the view is
+	 *         not moving.
+	 */
+	public boolean predictTransform( final long timeMillis, final AffineTransform3D transform );
+}
@@ -9,7 +9,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
@@ -97,11 +96,56 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 	 */
 	protected final AtomicInteger numInvalidPixels = new AtomicInteger();
 
+	/**
+	 * For each level (index into {@link #sources}), the number of invalid
+	 * pixels after the rendering pass for that level in the last
+	 * {@link #map()} call, or -1 if the level was not rendered.
+	 */
+	protected final int[] numInvalidPixelsPerLevel;
+
 	/**
 	 * Flag to indicate that someone is trying to interrupt rendering.
 	 */
 	protected final AtomicBoolean interrupted = new AtomicBoolean();
 
+	/**
+	 * Width and height of the tiles for which we record whether they still
+	 * contain pixels that need to be revisited.
+	 */
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * Number of tiles in X.
+	 */
+	protected final int numTilesX;
+
+	/**
+	 * Number of tiles in Y.
+	 */
+	protected final int numTilesY;
+
+	/**
+	 * For every tile (in flat order), the maximum {@link #mask} value of the
+	 * pixels in the tile. That is, a tile only has to be visited in the
+	 * rendering pass for level <em>i</em> if its entry is larger than
+	 * <em>i</em>.
+	 */
+	protected final byte[] tileMaxMask;
+
+	/**
+	 * For each level (index into {@link #sources}), an
+	 * {@link AxisAlignedCellSampler} that fills tiles directly from the source
+	 * cells, or null if the level has to be mapped through {@link #sources}.
+	 * Only used if {@link #targetData} is not null.
+	 */
+	protected final AxisAlignedCellSampler[] axisAlignedSamplers;
+
+	/**
+	 * The ARGB data of the {@link #target}, in flat order, or null. This is
+	 * required for the {@link #axisAlignedSamplers}.
+	 */
+	protected final int[] targetData;
+
 	public VolatileHierarchyProjector(
 			final List< ? extends RandomAccessible< A > > sources,
 			final Converter< ? super A, B > converter,
@@ -119,11 +163,65 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 			final byte[] maskArray,
 			final int numThreads,
 			final ExecutorService executorService )
+	{
+		this( sources, null, converter, target, null, maskArray, numThreads, executorService );
+	}
+
+	public VolatileHierarchyProjector(
+			final List< ? extends RandomAccessible< A > > sources,
+			final List< AxisAlignedCellSampler > axisAlignedSamplers,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final int[] targetData,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this( sources, axisAlignedSamplers, converter, target, targetData, new byte[ ( int ) ( target.dimension( 0 ) * target.dimension( 1 ) ) ], numThreads, executorService );
+	}
+
+	/**
+	 * @param sources
+	 *            the levels to map, from best to coarsest.
+	 * @param axisAlignedSamplers
+	 *            for each level, an {@link AxisAlignedCellSampler} that fills
+	 *            the target directly from the source cells, or null if the
+	 *            level should be mapped through its source. May be null.
+	 * @param converter
+	 *            converts source values to target values.
+	 * @param target
+	 *            the target image.
+	 * @param targetData
+	 *            the ARGB data of the target, in flat order with a min of 0.
+	 *            If null, the axisAlignedSamplers are not used.
+	 * @param maskArray
+	 *            storage for the mask.
+	 * @param numThreads
+	 *            number of threads to use for rendering.
+	 * @param executorService
+	 *            used for rendering. If null, a thread pool is created for
+	 *            every {@link #map()} call.
+	 */
+	public VolatileHierarchyProjector(
+			final List< ? extends RandomAccessible< A > > sources,
+			final List< AxisAlignedCellSampler > axisAlignedSamplers,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final int[] targetData,
+			final byte[] maskArray,
+			final int numThreads,
+			final ExecutorService executorService )
 	{
 		super( Math.max( 2, sources.get( 0 ).numDimensions() ), converter, target );
 
 		this.sources.addAll( sources );
+		this.axisAlignedSamplers = new AxisAlignedCellSampler[ sources.size() ];
+		if ( axisAlignedSamplers != null && targetData != null )
+			for ( int i = 0; i < sources.size() && i < axisAlignedSamplers.size(); ++i )
+				this.axisAlignedSamplers[ i ] = axisAlignedSamplers.get( i );
+		this.targetData = targetData;
 		numInvalidLevels = sources.size();
+		numInvalidPixelsPerLevel = new int[ sources.size() ];
+		Arrays.fill( numInvalidPixelsPerLevel, -1 );
 
 		this.maskArray = maskArray;
 		mask = ArrayImgs.bytes( maskArray, target.dimension( 0 ), target.dimension( 1 ) );
@@ -141,6 +239,10 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		height = ( int )target.dimension( 1 );
 		cr = -width;
 
+		numTilesX = ( width + TILE_SIZE - 1 ) / TILE_SIZE;
+		numTilesY = ( height + TILE_SIZE - 1 ) / TILE_SIZE;
+		tileMaxMask = new byte[ numTilesX * numTilesY ];
+
 		this.numThreads = numThreads;
 		this.executorService = executorService;
 		lastFrameRenderNanoTime = -1;
@@ -171,6 +273,16 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		return valid;
 	}
 
+	/**
+	 * Get, for each level (index into the list of sources), the number of
+	 * invalid pixels after the rendering pass for that level in the last
+	 * {@link #map()} call, or -1 if the level was not rendered.
+	 */
+	public int[] getNumInvalidPixelsPerLevel()
+	{
+		return numInvalidPixelsPerLevel.clone();
+	}
+
 	/**
 	 * Set all pixels in target to 100% transparent zero, and mask to all
 	 * Integer.MAX_VALUE.
@@ -178,18 +290,131 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 	public void clearMask()
 	{
 		Arrays.fill( maskArray, 0, ( int ) mask.size(), Byte.MAX_VALUE );
+		Arrays.fill( tileMaxMask, Byte.MAX_VALUE );
 		numInvalidLevels = sources.size();
 	}
 
 	/**
-	 * Clear target pixels that were never written.
+	 * Map the pixels of one tile that are not yet at the given level or
+	 * better, and update the {@link #tileMaxMask} of the tile. The given
+	 * {@link RandomAccess}es are reused across tiles. The tile is left
+	 * incomplete if rendering is {@link #cancel() cancelled}.
+	 *
+	 * @return the number of pixels that are still invalid.
+	 */
+	protected int mapTile( final int tile, final byte level, final RandomAccess< A > sourceRandomAccess, final RandomAccess< B > targetRandomAccess )
+	{
+		final int tileMinX = ( tile % numTilesX ) * TILE_SIZE;
+		final int tileMinY = ( tile / numTilesX ) * TILE_SIZE;
+		final int tileWidth = Math.min( TILE_SIZE, width - tileMinX );
+		final int tileHeight = Math.min( TILE_SIZE, height - tileMinY );
+		int numInvalid = 0;
+		byte maxMask = 0;
+
+		sourceRandomAccess.setPosition( min[ 0 ] + tileMinX, 0 );
+		sourceRandomAccess.setPosition( min[ 1 ] + tileMinY, 1 );
+		targetRandomAccess.setPosition( min[ 0 ] + tileMinX, 0 );
+		targetRandomAccess.setPosition( min[ 1 ] + tileMinY, 1 );
+
+		for ( int y = 0; y < tileHeight; ++y )
+		{
+			if ( interrupted.get() )
+				return numInvalid;
+
+			int maskIndex = ( tileMinY + y ) * width + tileMinX;
+			for ( int x = 0; x < tileWidth; ++x, ++maskIndex )
+			{
+				byte m = maskArray[ maskIndex ];
+				if ( m > level )
+				{
+					final A a = sourceRandomAccess.get();
+					final boolean v = a.isValid();
+					if ( v )
+					{
+						converter.convert( a, targetRandomAccess.get() );
+						maskArray[ maskIndex ] = m = level;
+					}
+					else
+						++numInvalid;
+				}
+				if ( m > maxMask )
+					maxMask = m;
+				sourceRandomAccess.fwd( 0 );
+				targetRandomAccess.fwd( 0 );
+			}
+			sourceRandomAccess.move( -tileWidth, 0 );
+			targetRandomAccess.move( -tileWidth, 0 );
+			sourceRandomAccess.fwd( 1 );
+			targetRandomAccess.fwd( 1 );
+		}
+		tileMaxMask[ tile ] = maxMask;
+		return numInvalid;
+	}
+
+	/**
+	 * Map the pixels of one tile that are not yet at the given level or
+	 * better, filling rows directly from the source cells, and update the
+	 * {@link #tileMaxMask} of the tile. The given {@link AxisAlignedCellSampler.RowAccess}
+	 * is reused across tiles. The tile is left incomplete if rendering is
+	 * {@link #cancel() cancelled}.
+	 *
+	 * @return the number of pixels that are still invalid.
+	 */
+	protected int mapTile( final int tile, final byte level, final AxisAlignedCellSampler.RowAccess rowAccess )
+	{
+		final int tileMinX = ( tile % numTilesX ) * TILE_SIZE;
+		final int tileMinY = ( tile / numTilesX ) * TILE_SIZE;
+		final int tileWidth = Math.min( TILE_SIZE, width - tileMinX );
+		final int tileHeight = Math.min( TILE_SIZE, height - tileMinY );
+		int numInvalid = 0;
+		byte maxMask = 0;
+
+		for ( int y = 0; y < tileHeight; ++y )
+		{
+			if ( interrupted.get() )
+				return numInvalid;
+
+			final int rowIndex = ( tileMinY + y ) * width + tileMinX;
+			numInvalid += rowAccess.fillRow( tileMinY + y, tileMinX, tileWidth, targetData, maskArray, rowIndex, level );
+			for ( int maskIndex = rowIndex; maskIndex < rowIndex + tileWidth; ++maskIndex )
+				if ( maskArray[ maskIndex ] > maxMask )
+					maxMask = maskArray[ maskIndex ];
+		}
+		tileMaxMask[ tile ] = maxMask;
+		return numInvalid;
+	}
+
+	/**
+	 * Clear target pixels that were never written. Only tiles that contain
+	 * such pixels are visited.
 	 */
 	protected void clearUntouchedTargetPixels()
 	{
-		final Cursor< ByteType > maskCursor = mask.cursor();
-		for ( final B t : iterableTarget )
-			if ( maskCursor.next().get() == Byte.MAX_VALUE )
-				t.setZero();
+		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+		for ( int tile = 0; tile < tileMaxMask.length; ++tile )
+		{
+			if ( tileMaxMask[ tile ] != Byte.MAX_VALUE )
+				continue;
+
+			final int tileMinX = ( tile % numTilesX ) * TILE_SIZE;
+			final int tileMinY = ( tile / numTilesX ) * TILE_SIZE;
+			final int tileWidth = Math.min( TILE_SIZE, width - tileMinX );
+			final int tileHeight = Math.min( TILE_SIZE, height - tileMinY );
+			targetRandomAccess.setPosition( min[ 0 ] + tileMinX, 0 );
+			targetRandomAccess.setPosition( min[ 1 ] + tileMinY, 1 );
+			for ( int y = 0; y < tileHeight; ++y )
+			{
+				int maskIndex = ( tileMinY + y ) * width + tileMinX;
+				for ( int x = 0; x < tileWidth; ++x, ++maskIndex )
+				{
+					if ( maskArray[ maskIndex ] == Byte.MAX_VALUE )
+						targetRandomAccess.get().setZero();
+					targetRandomAccess.fwd( 0 );
+				}
+				targetRandomAccess.move( -tileWidth, 0 );
+				targetRandomAccess.fwd( 1 );
+			}
+		}
 	}
 
 	@Override
@@ -210,21 +435,13 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
 //		final long startIoBytes = iostat.getIoBytes();
 
-		final int numTasks;
-		if ( numThreads > 1 )
-		{
-			numTasks = Math.max( numThreads * 10, height );
-		}
-		else
-			numTasks = 1;
-		final double taskHeight = ( double )height / numTasks;
-
 		int i;
 
 		valid = false;
+		Arrays.fill( numInvalidPixelsPerLevel, -1 );
 
-		final boolean createExecutor = ( executorService == null );
-		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
+		final int[] dirtyTiles = new int[ tileMaxMask.length ];
+		ExecutorService ex = null;
 		for ( i = 0; i < numInvalidLevels && !valid; ++i )
 		{
 			final byte iFinal = ( byte ) i;
@@ -232,89 +449,87 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 			valid = true;
 			numInvalidPixels.set( 0 );
 
-			final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numTasks );
-			for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+			// only tiles that still contain pixels which are not at level i
+			// or better need to be visited.
+			int n = 0;
+			for ( int tile = 0; tile < tileMaxMask.length; ++tile )
+				if ( tileMaxMask[ tile ] > iFinal )
+					dirtyTiles[ n++ ] = tile;
+			final int numDirtyTiles = n;
+			if ( numDirtyTiles == 0 )
 			{
-				final int myOffset = width * ( int ) ( taskNum * taskHeight );
-				final long myMinY = min[ 1 ] + ( int ) ( taskNum * taskHeight );
-				final int myHeight = ( int ) ( ( (taskNum == numTasks - 1 ) ? height : ( int ) ( ( taskNum + 1 ) * taskHeight ) ) - myMinY - min[ 1 ] );
+				numInvalidPixelsPerLevel[ i ] = 0;
+				continue;
+			}
 
-				final Callable< Void > r = new Callable< Void >()
+			// Each worker repeatedly claims a chunk of the remaining tiles.
+			// Chunks shrink as fewer tiles remain, such that workers finish at
+			// about the same time.
+			final int numWorkers = Math.min( numThreads, numDirtyTiles );
+			final AtomicInteger nextTile = new AtomicInteger();
+			final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numWorkers );
+			for ( int w = 0; w < numWorkers; ++w )
+			{
+				tasks.add( new Callable< Void >()
 				{
 					@Override
 					public Void call()
 					{
-						if ( interrupted.get() )
-							return null;
-
-						final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
-						final Cursor< ByteType > maskCursor = mask.cursor();
-						final RandomAccess< A > sourceRandomAccess = sources.get( iFinal ).randomAccess( sourceInterval );
+						final AxisAlignedCellSampler sampler = axisAlignedSamplers[ iFinal ];
+						final AxisAlignedCellSampler.RowAccess rowAccess = ( sampler == null ) ? null : sampler.rowAccess();
+						final RandomAccess< B > targetRandomAccess = ( rowAccess != null ) ? null : target.randomAccess( target );
+						final RandomAccess< A > sourceRandomAccess = ( rowAccess != null ) ? null : sources.get( iFinal ).randomAccess( sourceInterval );
+						if ( sourceRandomAccess != null )
+							sourceRandomAccess.setPosition( min );
 						int myNumInvalidPixels = 0;
-
-						sourceRandomAccess.setPosition( min );
-						sourceRandomAccess.setPosition( myMinY, 1 );
-
-						targetRandomAccess.setPosition( min[ 0 ], 0 );
-						targetRandomAccess.setPosition( myMinY, 1 );
-
-						maskCursor.jumpFwd( myOffset );
-
-						for ( int y = 0; y < myHeight; ++y )
+						while ( !interrupted.get() )
 						{
-							if ( interrupted.get() )
-								return null;
-
-							for ( int x = 0; x < width; ++x )
-							{
-								final ByteType m = maskCursor.next();
-								if ( m.get() > iFinal )
-								{
-									final A a = sourceRandomAccess.get();
-									final boolean v = a.isValid();
-									if ( v )
-									{
-										converter.convert( a, targetRandomAccess.get() );
-										m.set( iFinal );
-									}
-									else
-										++myNumInvalidPixels;
-								}
-								sourceRandomAccess.fwd( 0 );
-								targetRandomAccess.fwd( 0 );
-							}
-							sourceRandomAccess.move( cr, 0 );
-							targetRandomAccess.move( cr, 0 );
-							sourceRandomAccess.fwd( 1 );
-							targetRandomAccess.fwd( 1 );
+							final int remaining = numDirtyTiles - nextTile.get();
+							final int chunkSize = Math.max( 1, remaining / ( 4 * numWorkers ) );
+							final int first = nextTile.getAndAdd( chunkSize );
+							if ( first >= numDirtyTiles )
+								break;
+							final int last = Math.min( first + chunkSize, numDirtyTiles );
+							for ( int t = first; t < last; ++t )
+								myNumInvalidPixels += ( rowAccess != null ) ?
+										mapTile( dirtyTiles[ t ], iFinal, rowAccess ) :
+										mapTile( dirtyTiles[ t ], iFinal, sourceRandomAccess, targetRandomAccess );
 						}
 						numInvalidPixels.addAndGet( myNumInvalidPixels );
 						if ( myNumInvalidPixels != 0 )
 							valid = false;
 						return null;
 					}
-				};
-				tasks.add( r );
+				} );
 			}
+
 			try
 			{
-				ex.invokeAll( tasks );
+				if ( numWorkers == 1 )
+					tasks.get( 0 ).call();
+				else
+				{
+					if ( ex == null )
+						ex = ( executorService == null ) ? Executors.newFixedThreadPool( numThreads ) : executorService;
+					ex.invokeAll( tasks );
+				}
 			}
-			catch ( final InterruptedException e )
+			catch ( final Exception e )
 			{
 				e.printStackTrace();
 			}
 			if ( interrupted.get() )
 			{
 //				System.out.println( "interrupted" );
-				if ( createExecutor )
-					ex.shutdown();
-				return false;
+				break;
 			}
+			numInvalidPixelsPerLevel[ i ] = numInvalidPixels.get();
 //			System.out.println( "numInvalidPixels(" + i + ") = " + numInvalidPixels );
 		}
-		if ( createExecutor )
+		if ( ex != null && executorService == null )
 			ex.shutdown();
+		if ( interrupted.get() )
+			return false;
 
 		if ( clearUntouchedTargetPixels && !interrupted.get() )
 			clearUntouchedTargetPixels();
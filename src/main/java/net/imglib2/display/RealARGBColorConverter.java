@@ -3,7 +3,20 @@ package net.imglib2.display;
 import net.imglib2.converter.Converter;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
-
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Converts real values to ARGB by scaling [min, max] to [0, color].
+ * <p>
+ * For {@link UnsignedShortType} and {@link VolatileUnsignedShortType} inputs,
+ * colors are looked up in a table of all 65536 values. The table is built
+ * on the first such conversion after min, max, or color change, so that
+ * adjusting the display range of other types or repeatedly before the next
+ * repaint does not rebuild it. The table can be used directly on
+ * <code>short</code> data through {@link #convertUnsignedShort(int)} and
+ * {@link #convertUnsignedShorts(short[], int, int[], int, int)}.
+ */
 public class RealARGBColorConverter< R extends RealType< ? > > implements LinearRange, Converter< R, ARGBType >
 {
 	private double min = 0;
@@ -20,6 +33,14 @@ public class RealARGBColorConverter< R extends RealType< ? > > implements Linear
 
 	private double scaleB;
 
+	/**
+	 * ARGB values for all uint16 values, or null if it has to be rebuilt. Set
+	 * to null by {@link #update()} and replaced (not modified) by
+	 * {@link #getLut()}, so that a converter thread always sees a consistent
+	 * table.
+	 */
+	private volatile int[] lut;
+
 	public RealARGBColorConverter()
 	{
 		update();
@@ -35,14 +56,57 @@ public class RealARGBColorConverter< R extends RealType< ? > > implements Linear
 	@Override
 	public void convert( final R input, final ARGBType output )
 	{
-		final double v = input.getRealDouble() - min;
+		if ( input instanceof UnsignedShortType )
+			output.set( getLut()[ ( ( UnsignedShortType ) input ).get() ] );
+		else if ( input instanceof VolatileUnsignedShortType )
+			output.set( getLut()[ ( ( VolatileUnsignedShortType ) input ).get().get() ] );
+		else
+			output.set( convert( input.getRealDouble() ) );
+	}
+
+	/**
+	 * Convert a uint16 value.
+	 *
+	 * @param value
+	 *            value in [0, 65535].
+	 * @return ARGB value.
+	 */
+	public int convertUnsignedShort( final int value )
+	{
+		return getLut()[ value ];
+	}
+
+	/**
+	 * Convert a row of uint16 values.
+	 *
+	 * @param input
+	 *            uint16 values (as stored in a <code>short[]</code>).
+	 * @param inputOffset
+	 *            index of the first input value.
+	 * @param output
+	 *            ARGB values are stored here.
+	 * @param outputOffset
+	 *            index of the first output value.
+	 * @param length
+	 *            number of values to convert.
+	 */
+	public void convertUnsignedShorts( final short[] input, final int inputOffset, final int[] output, final int outputOffset, final int length )
+	{
+		final int[] table = getLut();
+		for ( int i = 0; i < length; ++i )
+			output[ outputOffset + i ] = table[ input[ inputOffset + i ] & 0xffff ];
+	}
+
+	private int convert( final double value )
+	{
+		final double v = value - min;
 		final int r0 = ( int ) ( scaleR * v + 0.5 );
 		final int g0 = ( int ) ( scaleG * v + 0.5 );
 		final int b0 = ( int ) ( scaleB * v + 0.5 );
 		final int r = r0 > 255 ? 255 : r0 < 0 ? 0 : r0;
 		final int g = g0 > 255 ? 255 : g0 < 0 ? 0 : g0;
 		final int b = b0 > 255 ? 255 : b0 < 0 ? 0 : b0;
-		output.set( ARGBType.rgba( r, g, b, A) );
+		return ARGBType.rgba( r, g, b, A );
 	}
 
 	public ARGBType getColor()
@@ -82,7 +146,28 @@ public class RealARGBColorConverter< R extends RealType< ? > > implements Linear
 		update();
 	}
 
-	private void update()
+	/**
+	 * Get the lookup table, building it if necessary.
+	 */
+	private int[] getLut()
+	{
+		final int[] table = lut;
+		return table != null ? table : buildLut();
+	}
+
+	private synchronized int[] buildLut()
+	{
+		if ( lut == null )
+		{
+			final int[] table = new int[ 65536 ];
+			for ( int i = 0; i < table.length; ++i )
+				table[ i ] = convert( i );
+			lut = table;
+		}
+		return lut;
+	}
+
+	private synchronized void update()
 	{
 		final double scale = 1.0 / ( max - min );
 		final int value = color.get();
@@ -90,5 +175,6 @@ public class RealARGBColorConverter< R extends RealType< ? > > implements Linear
 		scaleR = ARGBType.red( value ) * scale;
 		scaleG = ARGBType.green( value ) * scale;
 		scaleB = ARGBType.blue( value ) * scale;
+		lut = null;
 	}
 }
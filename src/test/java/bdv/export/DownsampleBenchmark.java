@@ -0,0 +1,89 @@
+package bdv.export;
+
+import java.util.Random;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Compares the generic
+ * {@link Downsample#downsample(net.imglib2.RandomAccessible, net.imglib2.RandomAccessibleInterval, int[])}
+ * with the uint16 fast path of
+ * {@link Downsample#downsample(net.imglib2.RandomAccessibleInterval, net.imglib2.RandomAccessibleInterval, int[], int)}
+ * for 2x2x2 downsampling of an {@link ArrayImg}.
+ * <p>
+ * Run the {@link #main(String[])} method with the test classpath. The input
+ * dimensions can be given as arguments, e.g., <code>2048 2048 256</code> (this
+ * needs about 3 GB of heap; an {@link ArrayImg} cannot hold a 2048 x 2048 x
+ * 512 stack, which has 2^31 voxels). The default is 1024 x 1024 x 128. The
+ * time per run (best of 3, after a warm-up run) is printed for the generic
+ * path and for the fast path with 1 thread and with one thread per processor.
+ */
+public class DownsampleBenchmark
+{
+	private static final int[] factor = new int[] { 2, 2, 2 };
+
+	private interface Run
+	{
+		void run( ArrayImg< UnsignedShortType, ShortArray > input, ArrayImg< UnsignedShortType, ShortArray > output );
+	}
+
+	private static double time( final Run run, final ArrayImg< UnsignedShortType, ShortArray > input, final ArrayImg< UnsignedShortType, ShortArray > output )
+	{
+		run.run( input, output );
+		long best = Long.MAX_VALUE;
+		for ( int i = 0; i < 3; ++i )
+		{
+			final long t0 = System.nanoTime();
+			run.run( input, output );
+			best = Math.min( best, System.nanoTime() - t0 );
+		}
+		return best / 1e6;
+	}
+
+	public static void main( final String[] args )
+	{
+		final long[] dimensions = new long[] { 1024, 1024, 128 };
+		for ( int d = 0; d < Math.min( 3, args.length ); ++d )
+			dimensions[ d ] = Long.parseLong( args[ d ] );
+		final long[] outputDimensions = new long[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+			outputDimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
+
+		final ArrayImg< UnsignedShortType, ShortArray > input = ArrayImgs.unsignedShorts( dimensions );
+		final short[] data = input.update( null ).getCurrentStorageArray();
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = ( short ) random.nextInt( 65536 );
+		final ArrayImg< UnsignedShortType, ShortArray > output = ArrayImgs.unsignedShorts( outputDimensions );
+		final int numProcessors = Runtime.getRuntime().availableProcessors();
+
+		System.out.println( String.format( "input %d x %d x %d, factor 2 x 2 x 2", dimensions[ 0 ], dimensions[ 1 ], dimensions[ 2 ] ) );
+
+		final double generic = time( new Run()
+		{
+			@Override
+			public void run( final ArrayImg< UnsignedShortType, ShortArray > in, final ArrayImg< UnsignedShortType, ShortArray > out )
+			{
+				Downsample.downsample( Views.extendBorder( in ), out, factor );
+			}
+		}, input, output );
+		System.out.println( String.format( "generic              %10.1f ms", generic ) );
+
+		for ( final int numThreads : new int[] { 1, numProcessors } )
+		{
+			final double fast = time( new Run()
+			{
+				@Override
+				public void run( final ArrayImg< UnsignedShortType, ShortArray > in, final ArrayImg< UnsignedShortType, ShortArray > out )
+				{
+					Downsample.downsample( in, out, factor, numThreads );
+				}
+			}, input, output );
+			System.out.println( String.format( "uint16, %2d thread(s) %10.1f ms  (%.1fx)", numThreads, fast, generic / fast ) );
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package bdv.export;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Checks that the uint16 fast path of
+ * {@link Downsample#downsample(RandomAccessibleInterval, RandomAccessibleInterval, int[], int)}
+ * gives the same result as the generic
+ * {@link Downsample#downsample(net.imglib2.RandomAccessible, RandomAccessibleInterval, int[])}
+ * on the border-extended input.
+ */
+public class DownsampleTest
+{
+	private static final long[] inputDimensions = new long[] { 37, 23, 11 };
+
+	/**
+	 * Random values covering the full uint16 range.
+	 */
+	private static void fill( final Img< UnsignedShortType > img )
+	{
+		final Random random = new Random( 42 );
+		for ( final UnsignedShortType t : img )
+			t.set( random.nextInt( 65536 ) );
+	}
+
+	/**
+	 * Output dimensions such that the last block extends beyond the input,
+	 * where border values are repeated.
+	 */
+	private static long[] outputDimensions( final RandomAccessibleInterval< ? > input, final int[] factor )
+	{
+		final long[] dims = new long[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+			dims[ d ] = ( input.dimension( d ) + factor[ d ] - 1 ) / factor[ d ];
+		return dims;
+	}
+
+	private static short[] data( final ArrayImg< UnsignedShortType, ShortArray > img )
+	{
+		return img.update( null ).getCurrentStorageArray();
+	}
+
+	private static void assertSameAsGeneric( final RandomAccessibleInterval< UnsignedShortType > input, final int[] factor, final int numThreads )
+	{
+		final long[] dims = outputDimensions( input, factor );
+		final ArrayImg< UnsignedShortType, ShortArray > expected = ArrayImgs.unsignedShorts( dims );
+		Downsample.downsample( Views.extendBorder( input ), expected, factor );
+		final ArrayImg< UnsignedShortType, ShortArray > actual = ArrayImgs.unsignedShorts( dims );
+		Downsample.downsample( input, actual, factor, numThreads );
+		assertArrayEquals( "factor " + Arrays.toString( factor ) + ", " + numThreads + " thread(s)", data( expected ), data( actual ) );
+	}
+
+	/**
+	 * Block sizes are powers of two or odd. Otherwise, the generic path,
+	 * which multiplies the sum by the (inexact) reciprocal of the block size,
+	 * may round exact halves down, where the integer arithmetic of the fast
+	 * path rounds them up.
+	 */
+	private static final int[][] factors = new int[][] {
+			{ 1, 1, 1 },
+			{ 2, 2, 2 },
+			{ 2, 2, 1 },
+			{ 3, 1, 5 },
+			{ 3, 3, 3 },
+			{ 4, 4, 4 },
+			{ 1, 5, 3 }
+	};
+
+	/**
+	 * Input is an {@link ArrayImg}, so planes are read directly.
+	 */
+	@Test
+	public void testArrayImgInput()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > input = ArrayImgs.unsignedShorts( inputDimensions );
+		fill( input );
+		for ( final int[] factor : factors )
+			for ( final int numThreads : new int[] { 1, 3, 16 } )
+				assertSameAsGeneric( input, factor, numThreads );
+	}
+
+	/**
+	 * Input is a {@link net.imglib2.img.cell.CellImg}, so planes are copied.
+	 */
+	@Test
+	public void testCellImgInput()
+	{
+		final Img< UnsignedShortType > input = new CellImgFactory< UnsignedShortType >( 8 ).create( inputDimensions, new UnsignedShortType() );
+		fill( input );
+		for ( final int[] factor : factors )
+			for ( final int numThreads : new int[] { 1, 3 } )
+				assertSameAsGeneric( input, factor, numThreads );
+	}
+
+	/**
+	 * Input is a sub-interval with non-zero min of a larger image, so that
+	 * input coordinates have to be offset and clamped to the sub-interval.
+	 */
+	@Test
+	public void testIntervalInput()
+	{
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( inputDimensions );
+		fill( img );
+		final RandomAccessibleInterval< UnsignedShortType > input = Views.interval( img, new FinalInterval( new long[] { 3, 2, 1 }, new long[] { 30, 20, 9 } ) );
+		for ( final int[] factor : factors )
+			assertSameAsGeneric( input, factor, 2 );
+	}
+
+	/**
+	 * Blocks of the maximum value must not overflow or become negative.
+	 */
+	@Test
+	public void testMaximumValue()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > input = ArrayImgs.unsignedShorts( inputDimensions );
+		final Cursor< UnsignedShortType > c = input.cursor();
+		while ( c.hasNext() )
+			c.next().set( 65535 );
+		for ( final int[] factor : factors )
+			assertSameAsGeneric( input, factor, 2 );
+	}
+}
@@ -0,0 +1,170 @@
+package bdv.export;
+
+import static bdv.img.hdf5.Util.getCellsPath;
+import static bdv.img.hdf5.Util.getGroupPath;
+import static bdv.img.hdf5.Util.reorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import bdv.img.hdf5.Hdf5VolatileShortArrayLoader;
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+
+/**
+ * Measures the block read throughput of hdf5 datasets written with each
+ * {@link Hdf5Compression}.
+ * <p>
+ * For every compression, a synthetic uint16 volume (smooth structure plus
+ * noise) is written in the same layout as {@link WriteSequenceToHdf5}, and all
+ * blocks are then read through a {@link Hdf5VolatileShortArrayLoader}, as the
+ * fetcher threads of the cache do, by 1 and 4 threads. The file was just
+ * written, so it is usually in the OS page cache, i.e., this measures
+ * decompression and library overhead rather than disk bandwidth.
+ * <p>
+ * Run the {@link #main(String[])} method with the test classpath. For each
+ * compression, the file size and the read throughput (uncompressed MB/s) are
+ * printed.
+ */
+public class Hdf5CompressionReadBenchmark
+{
+	private static final long[] dimensions = new long[] { 512, 512, 128 };
+
+	private static final int[] cellDimensions = new int[] { 32, 32, 32 };
+
+	private static final int[] numThreadsToTest = new int[] { 1, 4 };
+
+	private static long[] cellMin( final int cell )
+	{
+		final long[] min = new long[ 3 ];
+		int i = cell;
+		for ( int d = 0; d < 3; ++d )
+		{
+			final int numCells = ( int ) ( dimensions[ d ] / cellDimensions[ d ] );
+			min[ d ] = ( long ) ( i % numCells ) * cellDimensions[ d ];
+			i /= numCells;
+		}
+		return min;
+	}
+
+	private static int numCells()
+	{
+		int n = 1;
+		for ( int d = 0; d < 3; ++d )
+			n *= dimensions[ d ] / cellDimensions[ d ];
+		return n;
+	}
+
+	private static void write( final File file, final Hdf5Compression compression )
+	{
+		final String path = getCellsPath( 0, 0, 0 );
+		final Random random = new Random( 1 );
+		final IHDF5Writer hdf5Writer = HDF5Factory.open( file );
+		try
+		{
+			hdf5Writer.createGroup( getGroupPath( 0, 0, 0 ) );
+			hdf5Writer.createShortMDArray( path, reorder( dimensions ), reorder( cellDimensions ), compression.getStorageFeatures() );
+			final short[] data = new short[ cellDimensions[ 0 ] * cellDimensions[ 1 ] * cellDimensions[ 2 ] ];
+			for ( int cell = 0; cell < numCells(); ++cell )
+			{
+				final long[] min = cellMin( cell );
+				int i = 0;
+				for ( int z = 0; z < cellDimensions[ 2 ]; ++z )
+					for ( int y = 0; y < cellDimensions[ 1 ]; ++y )
+						for ( int x = 0; x < cellDimensions[ 0 ]; ++x )
+						{
+							final double px = min[ 0 ] + x, py = min[ 1 ] + y, pz = min[ 2 ] + z;
+							final double v = 1000 + 500 * Math.sin( px / 17 ) * Math.cos( py / 23 ) + 200 * Math.sin( pz / 11 );
+							data[ i++ ] = ( short ) ( v + random.nextInt( 64 ) );
+						}
+				hdf5Writer.writeShortMDArrayBlockWithOffset( path, new MDShortArray( data.clone(), reorder( cellDimensions ) ), reorder( min ) );
+			}
+		}
+		finally
+		{
+			hdf5Writer.close();
+		}
+	}
+
+	/**
+	 * Read all blocks from the given number of threads.
+	 *
+	 * @return uncompressed MB per second.
+	 */
+	private static double read( final File file, final int numThreads ) throws InterruptedException
+	{
+		final Hdf5VolatileShortArrayLoader loader = new Hdf5VolatileShortArrayLoader( file, numThreads );
+		final AtomicInteger nextCell = new AtomicInteger();
+		final AtomicReference< Exception > failure = new AtomicReference< Exception >();
+		final Thread[] threads = new Thread[ numThreads ];
+		for ( int t = 0; t < numThreads; ++t )
+		{
+			threads[ t ] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for ( int cell = nextCell.getAndIncrement(); cell < numCells(); cell = nextCell.getAndIncrement() )
+							loader.loadArray( 0, 0, 0, cellDimensions, cellMin( cell ) );
+					}
+					catch ( final Exception e )
+					{
+						failure.compareAndSet( null, e );
+					}
+				}
+			};
+		}
+
+		final long t0 = System.nanoTime();
+		for ( final Thread thread : threads )
+			thread.start();
+		for ( final Thread thread : threads )
+			thread.join();
+		final long t1 = System.nanoTime();
+		loader.close();
+		if ( failure.get() != null )
+			throw new RuntimeException( failure.get() );
+
+		final double megabytes = 2.0 * dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] / ( 1024 * 1024 );
+		return megabytes / ( t1 - t0 ) * 1e9;
+	}
+
+	public static void main( final String[] args ) throws IOException, InterruptedException
+	{
+		final double uncompressedMegabytes = 2.0 * dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] / ( 1024 * 1024 );
+		System.out.print( String.format( "%-20s %10s", "compression", "file MB" ) );
+		for ( final int numThreads : numThreadsToTest )
+			System.out.print( String.format( "  %2d thread(s) MB/s", numThreads ) );
+		System.out.println();
+
+		for ( final Hdf5Compression compression : Hdf5Compression.values() )
+		{
+			final File file = File.createTempFile( "bdv-benchmark-", ".h5" );
+			file.delete();
+			try
+			{
+				write( file, compression );
+				final double fileMegabytes = file.length() / ( 1024.0 * 1024.0 );
+				System.out.print( String.format( "%-20s %10.1f", compression.getDescription(), fileMegabytes ) );
+				for ( final int numThreads : numThreadsToTest )
+				{
+					double best = 0;
+					for ( int i = 0; i < 3; ++i )
+						best = Math.max( best, read( file, numThreads ) );
+					System.out.print( String.format( "  %18.1f", best ) );
+				}
+				System.out.println( String.format( "  (%.1f MB uncompressed)", uncompressedMegabytes ) );
+			}
+			finally
+			{
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package bdv.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.img.raw.RawChunkIndex;
+import bdv.img.raw.RawChunkVolatileShortArrayLoader;
+
+/**
+ * Writes images into a raw chunk store and reads them back with
+ * {@link RawChunkVolatileShortArrayLoader}.
+ */
+public class WriteSequenceToRawChunksTest
+{
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = File.createTempFile( "rawchunks", "" );
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete( directory );
+	}
+
+	private static void delete( final File file )
+	{
+		final File[] children = file.listFiles();
+		if ( children != null )
+			for ( final File child : children )
+				delete( child );
+		file.delete();
+	}
+
+	/**
+	 * The value stored at a given position. Covers the full uint16 range, so
+	 * that values above 32767 must survive the round trip too.
+	 */
+	private static int value( final long x, final long y, final long z )
+	{
+		return ( int ) ( ( 40503 * x + 1009 * y + 97 * z + 1 ) & 0xffff );
+	}
+
+	private static Img< UnsignedShortType > createImg( final long[] dimensions )
+	{
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( dimensions );
+		final Cursor< UnsignedShortType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( value( c.getLongPosition( 0 ), c.getLongPosition( 1 ), c.getLongPosition( 2 ) ) );
+		}
+		return img;
+	}
+
+	private void testRoundTrip( final ByteOrder byteOrder ) throws IOException, InterruptedException
+	{
+		final ArrayList< double[][] > resolutions = new ArrayList< double[][] >();
+		resolutions.add( new double[][] { { 1, 1, 1 }, { 2, 2, 2 } } );
+		final ArrayList< int[][] > subdivisions = new ArrayList< int[][] >();
+		subdivisions.add( new int[][] { { 4, 3, 2 }, { 8, 8, 8 } } );
+
+		// level 1 is left missing
+		final long[] dimensions = new long[] { 10, 7, 5 };
+		final int[] cellDimensions = subdivisions.get( 0 )[ 0 ];
+		final RawChunkIndex index = new RawChunkIndex( directory, byteOrder, 1, resolutions, subdivisions );
+		index.setDimensions( 0, 0, 0, dimensions );
+		WriteSequenceToRawChunks.writeChunks( createImg( dimensions ), dimensions, cellDimensions, index.getChunksFile( 0, 0, 0 ), index.getChunkSlotSizeInBytes( 0, 0 ), byteOrder );
+		index.write();
+
+		final RawChunkIndex read = RawChunkIndex.read( directory );
+		assertEquals( byteOrder, read.getByteOrder() );
+		assertEquals( 1, read.numTimepoints() );
+		assertEquals( 1, read.numSetups() );
+		assertEquals( 2, read.getMaxNumLevels() );
+		assertTrue( Arrays.deepEquals( resolutions.get( 0 ), read.getMipmapResolutions( 0 ) ) );
+		assertTrue( Arrays.deepEquals( subdivisions.get( 0 ), read.getSubdivisions( 0 ) ) );
+		assertTrue( Arrays.equals( dimensions, read.getDimensions( 0, 0, 0 ) ) );
+		assertTrue( read.exists( 0, 0, 0 ) );
+		assertFalse( read.exists( 0, 0, 1 ) );
+
+		// read every cell, including the smaller border cells
+		final RawChunkVolatileShortArrayLoader loader = new RawChunkVolatileShortArrayLoader( read );
+		final long[] min = new long[ 3 ];
+		final int[] dims = new int[ 3 ];
+		for ( min[ 2 ] = 0; min[ 2 ] < dimensions[ 2 ]; min[ 2 ] += cellDimensions[ 2 ] )
+			for ( min[ 1 ] = 0; min[ 1 ] < dimensions[ 1 ]; min[ 1 ] += cellDimensions[ 1 ] )
+				for ( min[ 0 ] = 0; min[ 0 ] < dimensions[ 0 ]; min[ 0 ] += cellDimensions[ 0 ] )
+				{
+					for ( int d = 0; d < 3; ++d )
+						dims[ d ] = ( int ) Math.min( cellDimensions[ d ], dimensions[ d ] - min[ d ] );
+					final short[] expected = new short[ dims[ 0 ] * dims[ 1 ] * dims[ 2 ] ];
+					int i = 0;
+					for ( int z = 0; z < dims[ 2 ]; ++z )
+						for ( int y = 0; y < dims[ 1 ]; ++y )
+							for ( int x = 0; x < dims[ 0 ]; ++x )
+								expected[ i++ ] = ( short ) value( min[ 0 ] + x, min[ 1 ] + y, min[ 2 ] + z );
+
+					final VolatileShortArray array = loader.loadArray( 0, 0, 0, dims, min );
+					assertTrue( array.isValid() );
+					assertArrayEquals( "cell at " + Arrays.toString( min ), expected, array.getCurrentStorageArray() );
+				}
+	}
+
+	@Test
+	public void testRoundTripBigEndian() throws IOException, InterruptedException
+	{
+		testRoundTrip( ByteOrder.BIG_ENDIAN );
+	}
+
+	@Test
+	public void testRoundTripLittleEndian() throws IOException, InterruptedException
+	{
+		testRoundTrip( ByteOrder.LITTLE_ENDIAN );
+	}
+}
@@ -0,0 +1,205 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlockingFetchQueuesTest
+{
+	/**
+	 * Elements that are obsolete.
+	 */
+	private HashSet< String > obsoleteElements;
+
+	private BlockingFetchQueues< String > queues;
+
+	@Before
+	public void setUp()
+	{
+		obsoleteElements = new HashSet< String >();
+		queues = createQueues( 100 );
+	}
+
+	private BlockingFetchQueues< String > createQueues( final int prefetchCapacity )
+	{
+		return new BlockingFetchQueues< String >( 3, prefetchCapacity, new BlockingFetchQueues.Obsolete< String >()
+		{
+			@Override
+			public boolean isObsolete( final String element )
+			{
+				synchronized ( obsoleteElements )
+				{
+					return obsoleteElements.contains( element );
+				}
+			}
+		} );
+	}
+
+	private void setObsolete( final String element )
+	{
+		synchronized ( obsoleteElements )
+		{
+			obsoleteElements.add( element );
+		}
+	}
+
+	/**
+	 * Take the given elements in order, and check that no permits are left.
+	 */
+	private void assertTakes( final String... elements ) throws InterruptedException
+	{
+		for ( final String element : elements )
+			assertEquals( element, queues.take() );
+		assertEquals( 0, queues.availablePermits() );
+	}
+
+	@Test
+	public void testPriorities() throws InterruptedException
+	{
+		queues.put( "a", 2 );
+		queues.put( "b", 0 );
+		queues.put( "c", 1 );
+		queues.put( "d", 0 );
+		assertEquals( 4, queues.availablePermits() );
+		assertTakes( "b", "d", "c", "a" );
+	}
+
+	@Test
+	public void testTakeDropsObsolete() throws InterruptedException
+	{
+		queues.put( "a", 0 );
+		queues.put( "b", 0 );
+		queues.put( "c", 1 );
+		setObsolete( "a" );
+		setObsolete( "c" );
+		assertEquals( "b", queues.take() );
+
+		// "c" is still queued, and dropped by clear()
+		assertEquals( 1, queues.availablePermits() );
+		queues.clear();
+		assertEquals( 0, queues.availablePermits() );
+	}
+
+	/**
+	 * Cleared elements are moved to the prefetch deque: elements of the
+	 * highest priority queue in front of the previous prefetch elements,
+	 * elements of other queues behind them. New elements in the queues are
+	 * taken before prefetch elements.
+	 */
+	@Test
+	public void testClearMovesToPrefetch() throws InterruptedException
+	{
+		queues.put( "x", 1 );
+		queues.clear();
+		queues.put( "a", 0 );
+		queues.put( "b", 2 );
+		queues.put( "c", 0 );
+		queues.clear();
+		queues.put( "y", 1 );
+		assertEquals( 5, queues.availablePermits() );
+		assertTakes( "y", "a", "c", "x", "b" );
+	}
+
+	@Test
+	public void testClearRemovesDuplicates() throws InterruptedException
+	{
+		queues.put( "a", 0 );
+		queues.put( "a", 0 );
+		queues.put( "b", 1 );
+		queues.put( "b", 2 );
+		queues.put( "a", 1 );
+		queues.clear();
+		assertEquals( 2, queues.availablePermits() );
+
+		// elements already in the prefetch deque are not added again
+		queues.put( "b", 1 );
+		queues.put( "c", 1 );
+		queues.clear();
+		assertEquals( 3, queues.availablePermits() );
+		assertTakes( "a", "b", "c" );
+	}
+
+	@Test
+	public void testClearDropsObsolete() throws InterruptedException
+	{
+		queues.put( "a", 0 );
+		queues.put( "b", 1 );
+		queues.put( "c", 2 );
+		setObsolete( "b" );
+		queues.clear();
+		assertEquals( 2, queues.availablePermits() );
+
+		// obsolete elements in the prefetch deque are dropped by take()
+		setObsolete( "a" );
+		assertTakes( "c" );
+	}
+
+	/**
+	 * When the prefetch capacity is exceeded, the oldest prefetch elements
+	 * are removed first, then the cleared elements that do not fit.
+	 */
+	@Test
+	public void testPrefetchCapacity() throws InterruptedException
+	{
+		queues = createQueues( 3 );
+		queues.put( "x", 1 );
+		queues.put( "y", 1 );
+		queues.clear();
+		queues.put( "a", 0 );
+		queues.put( "b", 1 );
+		queues.clear();
+		assertEquals( 3, queues.availablePermits() );
+		assertTakes( "a", "y", "b" );
+
+		queues.put( "a", 1 );
+		queues.put( "b", 1 );
+		queues.put( "c", 1 );
+		queues.put( "d", 1 );
+		queues.clear();
+		assertEquals( 3, queues.availablePermits() );
+		assertTakes( "a", "b", "c" );
+	}
+
+	/**
+	 * A take() that finds only obsolete elements keeps blocking until a new
+	 * element is put.
+	 */
+	@Test
+	public void testTakeBlocksAfterDroppingObsolete() throws InterruptedException
+	{
+		queues.put( "a", 0 );
+		queues.put( "b", 1 );
+		queues.clear();
+		setObsolete( "a" );
+		setObsolete( "b" );
+
+		final AtomicReference< String > taken = new AtomicReference< String >();
+		final Thread taker = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					taken.set( queues.take() );
+				}
+				catch ( final InterruptedException e )
+				{}
+			}
+		};
+		taker.start();
+		taker.join( 200 );
+		assertTrue( taker.isAlive() );
+		assertEquals( 0, queues.availablePermits() );
+
+		queues.put( "c", 0 );
+		taker.join( 5000 );
+		assertEquals( "c", taken.get() );
+		assertEquals( 0, queues.availablePermits() );
+	}
+}
@@ -0,0 +1,166 @@
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentLongHashMapTest
+{
+	@Test
+	public void testPutGetRemove()
+	{
+		final ConcurrentLongHashMap< String > map = new ConcurrentLongHashMap< String >();
+		final String a = new String( "a" );
+		final String b = new String( "b" );
+
+		assertNull( map.get( 0 ) );
+		assertNull( map.put( 0, a ) );
+		assertSame( a, map.get( 0 ) );
+		assertSame( a, map.putIfAbsent( 0, b ) );
+		assertSame( a, map.get( 0 ) );
+		assertSame( a, map.put( 0, b ) );
+		assertSame( b, map.get( 0 ) );
+		assertEquals( 1, map.size() );
+
+		// values are compared by identity
+		assertFalse( map.replace( 0, new String( "b" ), a ) );
+		assertTrue( map.replace( 0, b, a ) );
+		assertSame( a, map.get( 0 ) );
+		assertFalse( map.remove( 0, new String( "a" ) ) );
+		assertFalse( map.remove( 1, a ) );
+		assertTrue( map.remove( 0, a ) );
+		assertNull( map.get( 0 ) );
+		assertEquals( 0, map.size() );
+		assertFalse( map.replace( 0, a, b ) );
+	}
+
+	@Test
+	public void testLargeKeys()
+	{
+		final ConcurrentLongHashMap< Long > map = new ConcurrentLongHashMap< Long >();
+		final long[] keys = { 0, 1, Integer.MAX_VALUE, 1L << 32, ( 1L << 32 ) + 1, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+		for ( final long key : keys )
+			assertNull( map.put( key, Long.valueOf( key ) ) );
+		for ( final long key : keys )
+			assertEquals( Long.valueOf( key ), map.get( key ) );
+		assertEquals( keys.length, map.size() );
+	}
+
+	/**
+	 * Removing leaves a tombstone that is reused when the same key is inserted
+	 * again.
+	 */
+	@Test
+	public void testTombstoneReuse()
+	{
+		final ConcurrentLongHashMap< Integer > map = new ConcurrentLongHashMap< Integer >( 1, 4 );
+		final Integer v1 = new Integer( 1 );
+		final Integer v2 = new Integer( 2 );
+		for ( int i = 0; i < 100; ++i )
+		{
+			assertNull( map.putIfAbsent( 7, v1 ) );
+			assertTrue( map.remove( 7, v1 ) );
+			assertNull( map.putIfAbsent( 7, v2 ) );
+			assertTrue( map.remove( 7, v2 ) );
+		}
+		assertNull( map.get( 7 ) );
+		assertEquals( 0, map.size() );
+	}
+
+	/**
+	 * Inserting and removing many distinct keys fills a small segment with
+	 * tombstones, which must be discarded by rehashing rather than growing
+	 * the table or making lookups loop forever.
+	 */
+	@Test
+	public void testRehashWithTombstones()
+	{
+		final ConcurrentLongHashMap< Long > map = new ConcurrentLongHashMap< Long >( 1, 2 );
+		final int n = 10000;
+		for ( long key = 0; key < n; ++key )
+		{
+			final Long value = Long.valueOf( key );
+			assertNull( map.put( key, value ) );
+			if ( key % 3 != 0 )
+				assertTrue( map.remove( key, value ) );
+		}
+		assertEquals( ( n + 2 ) / 3, map.size() );
+		for ( long key = 0; key < n; ++key )
+		{
+			if ( key % 3 == 0 )
+				assertEquals( Long.valueOf( key ), map.get( key ) );
+			else
+				assertNull( map.get( key ) );
+		}
+
+		// re-insert removed keys, then remove everything
+		for ( long key = 0; key < n; ++key )
+			if ( key % 3 != 0 )
+				assertNull( map.putIfAbsent( key, Long.valueOf( -key ) ) );
+		assertEquals( n, map.size() );
+		for ( long key = 0; key < n; ++key )
+			assertTrue( map.remove( key, map.get( key ) ) );
+		assertEquals( 0, map.size() );
+		for ( long key = 0; key < n; ++key )
+			assertNull( map.get( key ) );
+	}
+
+	/**
+	 * Threads race to insert the same keys. Every key must end up with exactly
+	 * one value, and every thread must see that value, either because it put
+	 * it or because putIfAbsent returned it.
+	 */
+	@Test
+	public void testConcurrentPutIfAbsent() throws InterruptedException
+	{
+		final ConcurrentLongHashMap< Object > map = new ConcurrentLongHashMap< Object >( 4, 2 );
+		final int numThreads = 8;
+		final int numKeys = 20000;
+		final Object[][] seen = new Object[ numThreads ][ numKeys ];
+		final CountDownLatch start = new CountDownLatch( 1 );
+		final AtomicReference< Throwable > failure = new AtomicReference< Throwable >();
+		final Thread[] threads = new Thread[ numThreads ];
+		for ( int t = 0; t < numThreads; ++t )
+		{
+			final Object[] s = seen[ t ];
+			threads[ t ] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+						for ( int key = 0; key < numKeys; ++key )
+						{
+							final Object value = new Object();
+							final Object existing = map.putIfAbsent( key, value );
+							s[ key ] = existing == null ? value : existing;
+						}
+					}
+					catch ( final Throwable e )
+					{
+						failure.compareAndSet( null, e );
+					}
+				}
+			};
+			threads[ t ].start();
+		}
+		start.countDown();
+		for ( final Thread thread : threads )
+			thread.join();
+
+		assertNull( failure.get() );
+		assertEquals( numKeys, map.size() );
+		for ( int key = 0; key < numKeys; ++key )
+			for ( int t = 0; t < numThreads; ++t )
+				assertSame( map.get( key ), seen[ t ][ key ] );
+	}
+}
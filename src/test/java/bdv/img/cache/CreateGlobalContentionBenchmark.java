@@ -0,0 +1,127 @@
+package bdv.img.cache;
+
+import java.util.concurrent.CountDownLatch;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import bdv.img.cache.VolatileGlobalCellCache.LoadingStrategy;
+
+/**
+ * Measures how cell requests to {@link VolatileGlobalCellCache} scale with
+ * the number of rendering threads (1 to 32, as set by
+ * <code>ViewerPanel.Options.numRenderingThreads</code>).
+ * <p>
+ * Every frame is a new timepoint, so that all cells are missing when the frame
+ * starts. Like rendering threads working on different parts of the screen,
+ * every thread requests all cells of the frame, starting at a different cell,
+ * so threads miss different cells concurrently and hit cells created by other
+ * threads. Cells are requested through {@link VolatileGlobalCellCache.Hdf5CellCache}
+ * as by a {@link VolatileImgCells} image, and one thread calls
+ * {@link VolatileGlobalCellCache#prepareNextFrame()} after each frame, like the
+ * painter thread. Fetcher threads are paused, so only the request path is
+ * measured.
+ * <p>
+ * Run the {@link #main(String[])} method with the test classpath. The
+ * throughput in requests per second is printed for each number of threads.
+ */
+public class CreateGlobalContentionBenchmark
+{
+	private static final int[] numThreadsToTest = new int[] { 1, 2, 4, 8, 16, 32 };
+
+	private static final int numFrames = 50;
+
+	private static final int numCells = 20000;
+
+	private static final int[] cellDims = new int[] { 4, 4, 4 };
+
+	private static final CacheArrayLoader< VolatileShortArray > loader = new CacheArrayLoader< VolatileShortArray >()
+	{
+		@Override
+		public int getBytesPerElement()
+		{
+			return 2;
+		}
+
+		@Override
+		public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min )
+		{
+			return new VolatileShortArray( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], true );
+		}
+
+		@Override
+		public VolatileShortArray emptyArray( final int[] dimensions )
+		{
+			return new VolatileShortArray( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], false );
+		}
+	};
+
+	/**
+	 * Request all cells of {@link #numFrames} frames from the given number of
+	 * threads.
+	 *
+	 * @return requests per second.
+	 */
+	private static double run( final int numThreads ) throws InterruptedException
+	{
+		final VolatileGlobalCellCache< VolatileShortArray > cache = new VolatileGlobalCellCache< VolatileShortArray >( loader, numFrames, 1, 1, new int[] { 0 }, 1 );
+		cache.pauseFetcherThreadsFor( Long.MAX_VALUE / 2 );
+
+		final CountDownLatch start = new CountDownLatch( 1 );
+		final CountDownLatch done = new CountDownLatch( numThreads );
+		for ( int t = 0; t < numThreads; ++t )
+		{
+			final int firstCell = t * numCells / numThreads;
+			new Thread()
+			{
+				@Override
+				public void run()
+				{
+					final long[] cellMin = new long[ 3 ];
+					try
+					{
+						start.await();
+						for ( int frame = 0; frame < numFrames; ++frame )
+						{
+							final VolatileGlobalCellCache< VolatileShortArray >.Hdf5CellCache cells = cache.new Hdf5CellCache( frame, 0, 0, LoadingStrategy.VOLATILE );
+							for ( int i = 0; i < numCells; ++i )
+							{
+								final int index = ( firstCell + i ) % numCells;
+								if ( cells.get( index ) == null )
+									cells.load( index, cellDims, cellMin );
+							}
+							if ( firstCell == 0 )
+								cache.prepareNextFrame();
+						}
+					}
+					catch ( final InterruptedException e )
+					{}
+					finally
+					{
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		final long t0 = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long t1 = System.nanoTime();
+		return ( double ) numThreads * numFrames * numCells / ( t1 - t0 ) * 1e9;
+	}
+
+	public static void main( final String[] args ) throws InterruptedException
+	{
+		// warm up
+		for ( int i = 0; i < 3; ++i )
+			run( 4 );
+
+		System.out.println( "threads  requests/s" );
+		for ( final int numThreads : numThreadsToTest )
+		{
+			double best = 0;
+			for ( int i = 0; i < 5; ++i )
+				best = Math.max( best, run( numThreads ) );
+			System.out.println( String.format( "%7d  %10.0f", numThreads, best ) );
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package bdv.img.hdf5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class PartitionTest
+{
+	@Test
+	public void testContains()
+	{
+		// timepoints 5 + [2, 5), setups 1 + [0, 3)
+		final Partition p = new Partition( "p.h5", 5, 2, 3, 1, 0, 3 );
+		for ( int t = 0; t < 20; ++t )
+			for ( int s = 0; s < 10; ++s )
+				assertEquals( "timepoint " + t + ", setup " + s, t >= 7 && t < 10 && s >= 1 && s < 4, p.contains( t, s ) );
+	}
+
+	@Test
+	public void testBoundaries()
+	{
+		final Partition p = new Partition( "p.h5", 0, 4, 2, 0, 3, 1 );
+		assertTrue( p.contains( 4, 3 ) );
+		assertTrue( p.contains( 5, 3 ) );
+		assertFalse( p.contains( 3, 3 ) );
+		assertFalse( p.contains( 6, 3 ) );
+		assertFalse( p.contains( 4, 2 ) );
+		assertFalse( p.contains( 4, 4 ) );
+
+		final Partition empty = new Partition( "p.h5", 0, 4, 0, 0, 3, 1 );
+		assertFalse( empty.contains( 4, 3 ) );
+	}
+
+	/**
+	 * Partitions that split a dataset into blocks of timepoints and setups
+	 * (as {@link bdv.ij.export.Scripting#split} does) contain every
+	 * timepoint and setup exactly once.
+	 */
+	@Test
+	public void testSplitCoversEveryViewOnce()
+	{
+		final int numTimepoints = 11;
+		final int numSetups = 5;
+		final int timepointsPerPartition = 4;
+		final int setupsPerPartition = 2;
+		final ArrayList< Partition > partitions = new ArrayList< Partition >();
+		for ( int t0 = 0; t0 < numTimepoints; t0 += timepointsPerPartition )
+			for ( int s0 = 0; s0 < numSetups; s0 += setupsPerPartition )
+				partitions.add( new Partition( "p.h5", 0, t0, Math.min( timepointsPerPartition, numTimepoints - t0 ), 0, s0, Math.min( setupsPerPartition, numSetups - s0 ) ) );
+
+		for ( int t = 0; t < numTimepoints; ++t )
+		{
+			for ( int s = 0; s < numSetups; ++s )
+			{
+				int n = 0;
+				for ( final Partition p : partitions )
+					if ( p.contains( t, s ) )
+						++n;
+				assertEquals( "timepoint " + t + ", setup " + s, 1, n );
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package bdv.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.viewer.state.ViewerState;
+
+public class CameraPathTest
+{
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = File.createTempFile( "CameraPathTest", "" );
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for ( final File f : dir.listFiles() )
+			f.delete();
+		dir.delete();
+	}
+
+	/**
+	 * A path back and forth between two timepoints with different
+	 * registrations. Neighbouring frames of different timepoints are rendered
+	 * concurrently.
+	 */
+	@Test
+	public void testRenderAcrossTimepoints() throws IOException, InterruptedException
+	{
+		final int size = MovieRendererTest.size;
+		final ViewerState template = MovieRendererTest.createState( 2 );
+		final AffineTransform3D identity = new AffineTransform3D();
+		final CameraPath path = new CameraPath( size, size );
+		path.addKeyframe( identity, 0, 1 );
+		for ( int k = 1; k <= 8; ++k )
+			path.addKeyframe( identity, k % 2, 6 );
+
+		final List< ViewerState > frames = path.createFrames( template );
+		assertEquals( path.numFrames(), frames.size() );
+		path.render( template, size, size, new MovieRendererTest.TestImgLoader().getCache(), dir, null );
+		for ( int i = 0; i < frames.size(); ++i )
+			MovieRendererTest.assertFrame( dir, i, frames.get( i ).getCurrentTimepoint() );
+	}
+}
@@ -0,0 +1,203 @@
+package bdv.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+import mpicbg.spim.data.SequenceDescription;
+import mpicbg.spim.data.View;
+import mpicbg.spim.data.ViewRegistration;
+import mpicbg.spim.data.ViewRegistrations;
+import mpicbg.spim.data.ViewSetup;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+import org.jdom2.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.SequenceViewsLoader;
+import bdv.SpimSource;
+import bdv.ViewerImgLoader;
+import bdv.img.cache.Cache;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.state.SourceGroup;
+import bdv.viewer.state.ViewerState;
+
+/**
+ * Checks that frames of different timepoints, which {@link MovieRenderer}
+ * renders concurrently from the same sources, are rendered with the
+ * registration of their own timepoint.
+ */
+public class MovieRendererTest
+{
+	static final int size = 16;
+
+	/**
+	 * Every view is a single bright pixel at (2, 2, 0). The registration of
+	 * timepoint t translates it by 8 * t in x.
+	 */
+	static final class TestImgLoader implements ViewerImgLoader
+	{
+		private final Cache cache = new Cache()
+		{
+			@Override
+			public void initIoTimeBudget( final long[] partialBudget )
+			{}
+
+			@Override
+			public void prepareNextFrame()
+			{}
+		};
+
+		@Override
+		public RandomAccessibleInterval< UnsignedShortType > getUnsignedShortImage( final View view, final int level )
+		{
+			final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( size, size, 1 );
+			final RandomAccess< UnsignedShortType > a = img.randomAccess();
+			a.setPosition( new long[] { 2, 2, 0 } );
+			a.get().set( 65535 );
+			return img;
+		}
+
+		@Override
+		public RandomAccessibleInterval< UnsignedShortType > getUnsignedShortImage( final View view )
+		{
+			return getUnsignedShortImage( view, 0 );
+		}
+
+		@Override
+		public RandomAccessibleInterval< VolatileUnsignedShortType > getVolatileUnsignedShortImage( final View view, final int level )
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public RandomAccessibleInterval< FloatType > getImage( final View view )
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public double[][] getMipmapResolutions( final int setup )
+		{
+			return new double[][] { { 1, 1, 1 } };
+		}
+
+		@Override
+		public int numMipmapLevels( final int setup )
+		{
+			return 1;
+		}
+
+		@Override
+		public Cache getCache()
+		{
+			return cache;
+		}
+
+		@Override
+		public void init( final Element elem, final File basePath )
+		{}
+
+		@Override
+		public Element toXml( final File basePath )
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = File.createTempFile( "MovieRendererTest", "" );
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for ( final File f : dir.listFiles() )
+			f.delete();
+		dir.delete();
+	}
+
+	/**
+	 * Create a viewer state showing a single source of the given number of
+	 * timepoints, where the bright pixel of timepoint t is shown at (2 + 8 * t,
+	 * 2).
+	 */
+	static ViewerState createState( final int numTimepoints )
+	{
+		final TestImgLoader imgLoader = new TestImgLoader();
+		final ArrayList< ViewSetup > setups = new ArrayList< ViewSetup >();
+		setups.add( new ViewSetup( 0, 0, 0, 0, size, size, 1, 1, 1, 1 ) );
+		final ArrayList< Integer > timepoints = new ArrayList< Integer >();
+		final ArrayList< ViewRegistration > registrations = new ArrayList< ViewRegistration >();
+		for ( int t = 0; t < numTimepoints; ++t )
+		{
+			timepoints.add( t );
+			final AffineTransform3D model = new AffineTransform3D();
+			model.set( 8 * t, 0, 3 );
+			registrations.add( new ViewRegistration( t, 0, model ) );
+		}
+		final SequenceDescription seq = new SequenceDescription( setups, timepoints, new File( "." ), imgLoader );
+		final SequenceViewsLoader loader = new SequenceViewsLoader( seq, new ViewRegistrations( registrations, 0 ) );
+
+		final RealARGBColorConverter< UnsignedShortType > converter = new RealARGBColorConverter< UnsignedShortType >( 0, 65535 );
+		converter.setColor( new ARGBType( 0xffffffff ) );
+		final ArrayList< SourceAndConverter< ? > > sources = new ArrayList< SourceAndConverter< ? > >();
+		sources.add( new SourceAndConverter< UnsignedShortType >( new SpimSource( loader, 0, "test" ), converter ) );
+		return new ViewerState( sources, new ArrayList< SourceGroup >(), numTimepoints );
+	}
+
+	/**
+	 * Check that the image written for the given frame shows timepoint 0 or 1
+	 * of the {@link #createState(int) test state}.
+	 */
+	static void assertFrame( final File dir, final int index, final int timepoint ) throws IOException
+	{
+		final BufferedImage image = ImageIO.read( new File( dir, String.format( "img-%03d.png", index ) ) );
+		final int x = 2 + 8 * timepoint;
+		final int other = 2 + 8 * ( 1 - timepoint );
+		assertEquals( "frame " + index, 255, ARGBType.red( image.getRGB( x, 2 ) ) );
+		assertEquals( "frame " + index, 0, ARGBType.red( image.getRGB( other, 2 ) ) );
+	}
+
+	@Test
+	public void testConcurrentTimepoints() throws IOException, InterruptedException
+	{
+		final int numTimepoints = 2;
+		final ViewerState state = createState( numTimepoints );
+		final int numFrames = 200;
+		final ArrayList< ViewerState > frames = new ArrayList< ViewerState >();
+		for ( int i = 0; i < numFrames; ++i )
+		{
+			final ViewerState frame = state.copy();
+			frame.setCurrentTimepoint( i % numTimepoints );
+			frames.add( frame );
+		}
+		new MovieRenderer( size, size, new TestImgLoader().getCache(), 4, 2 ).render( frames, dir, 0, null );
+
+		for ( int i = 0; i < numFrames; ++i )
+			assertFrame( dir, i, i % numTimepoints );
+	}
+}
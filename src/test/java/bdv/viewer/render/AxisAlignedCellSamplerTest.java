@@ -0,0 +1,249 @@
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.img.cache.VolatileCell;
+import bdv.img.cache.VolatileImgCells;
+import bdv.img.cache.VolatileImgCells.CellCache;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+
+/**
+ * Checks that {@link AxisAlignedCellSampler} renders the same screen images as
+ * the generic path, i.e., converting the zero-extended, nearest-neighbor
+ * interpolated source transformed with {@link RealViews#constantAffine}.
+ */
+public class AxisAlignedCellSamplerTest
+{
+	private static final long[] dimensions = new long[] { 37, 29, 11 };
+
+	private static final int[] cellDimensions = new int[] { 8, 8, 4 };
+
+	private static final int width = 64;
+
+	private static final int height = 48;
+
+	private Source< VolatileUnsignedShortType > source;
+
+	private RealARGBColorConverter< VolatileUnsignedShortType > converter;
+
+	@Before
+	public void setUp()
+	{
+		source = new TestSource( createImg() );
+		converter = new RealARGBColorConverter< VolatileUnsignedShortType >( 0, 255 );
+		converter.setColor( new ARGBType( 0xffffffff ) );
+	}
+
+	/**
+	 * The source value at a given position. Values are in [1, 251], so that
+	 * they are distinct from the zero outside the image and, with the
+	 * converter range [0, 255], every value gets its own color. Neighboring
+	 * positions have different values.
+	 */
+	private static short value( final long x, final long y, final long z )
+	{
+		return ( short ) ( 1 + ( 7 * x + 13 * y + 29 * z ) % 251 );
+	}
+
+	/**
+	 * Create a {@link CellImg} of valid cells filled with {@link #value}.
+	 * Cells at the upper borders are smaller than the standard cell size.
+	 */
+	private static CellImg< VolatileUnsignedShortType, VolatileShortArray, VolatileCell< VolatileShortArray > > createImg()
+	{
+		final CellCache< VolatileShortArray > cache = new CellCache< VolatileShortArray >()
+		{
+			@Override
+			public VolatileCell< VolatileShortArray > get( final int index )
+			{
+				return null;
+			}
+
+			@Override
+			public VolatileCell< VolatileShortArray > load( final int index, final int[] cellDims, final long[] cellMin )
+			{
+				final short[] data = new short[ cellDims[ 0 ] * cellDims[ 1 ] * cellDims[ 2 ] ];
+				int i = 0;
+				for ( int z = 0; z < cellDims[ 2 ]; ++z )
+					for ( int y = 0; y < cellDims[ 1 ]; ++y )
+						for ( int x = 0; x < cellDims[ 0 ]; ++x )
+							data[ i++ ] = value( cellMin[ 0 ] + x, cellMin[ 1 ] + y, cellMin[ 2 ] + z );
+				return new VolatileCell< VolatileShortArray >( cellDims, cellMin, new VolatileShortArray( data, true ) );
+			}
+		};
+		final VolatileImgCells< VolatileShortArray > cells = new VolatileImgCells< VolatileShortArray >( cache, 1, dimensions, cellDimensions );
+		final CellImg< VolatileUnsignedShortType, VolatileShortArray, VolatileCell< VolatileShortArray > > img = new CellImg< VolatileUnsignedShortType, VolatileShortArray, VolatileCell< VolatileShortArray > >( null, cells );
+		img.setLinkedType( new VolatileUnsignedShortType( img ) );
+		return img;
+	}
+
+	private static AffineTransform3D transform( final double... m )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.set( m );
+		return t;
+	}
+
+	/**
+	 * Render with the sampler and with the generic path and compare.
+	 */
+	private void assertSameAsGeneric( final AffineTransform3D sourceToScreen )
+	{
+		final AxisAlignedCellSampler sampler = AxisAlignedCellSampler.create( source, 0, 0, Interpolation.NEARESTNEIGHBOR, sourceToScreen, converter, width );
+		assertNotNull( sampler );
+
+		final int[] actual = new int[ width * height ];
+		final byte[] mask = new byte[ width * height ];
+		Arrays.fill( mask, ( byte ) 1 );
+		final AxisAlignedCellSampler.RowAccess rowAccess = sampler.rowAccess();
+		for ( int y = 0; y < height; ++y )
+			assertEquals( 0, rowAccess.fillRow( y, 0, width, actual, mask, y * width, ( byte ) 0 ) );
+
+		final RandomAccess< VolatileUnsignedShortType > a = RealViews.constantAffine( source.getInterpolatedSource( 0, 0, Interpolation.NEARESTNEIGHBOR ), sourceToScreen ).randomAccess();
+		final ARGBType argb = new ARGBType();
+		for ( int y = 0; y < height; ++y )
+		{
+			for ( int x = 0; x < width; ++x )
+			{
+				a.setPosition( new long[] { x, y, 0 } );
+				converter.convert( a.get(), argb );
+				assertEquals( "at (" + x + ", " + y + ")", argb.get(), actual[ y * width + x ] );
+				assertEquals( 0, mask[ y * width + x ] );
+			}
+		}
+	}
+
+	@Test
+	public void testTranslation()
+	{
+		assertSameAsGeneric( transform(
+				1, 0, 0, 3,
+				0, 1, 0, -5,
+				0, 0, 1, -4 ) );
+	}
+
+	/**
+	 * Screen pixel 0 maps to source position -0.5 in X and Y, which is
+	 * outside the image for nearest-neighbor interpolation.
+	 */
+	@Test
+	public void testNegativeHalfPosition()
+	{
+		assertSameAsGeneric( transform(
+				1, 0, 0, 0.5,
+				0, 1, 0, 0.5,
+				0, 0, 1, -2 ) );
+		assertSameAsGeneric( transform(
+				2, 0, 0, 1,
+				0, 2, 0, 1,
+				0, 0, 2, -5 ) );
+	}
+
+	@Test
+	public void testPlaneAtNegativeHalfPosition()
+	{
+		assertSameAsGeneric( transform(
+				1, 0, 0, 0,
+				0, 1, 0, 0,
+				0, 0, 1, 0.5 ) );
+	}
+
+	@Test
+	public void testZoomOut()
+	{
+		assertSameAsGeneric( transform(
+				0.5, 0, 0, 2.25,
+				0, 0.75, 0, 1,
+				0, 0, 1, -10 ) );
+	}
+
+	@Test
+	public void testPermutedAxes()
+	{
+		// screen X along source Z (flipped), screen Y along source X, screen plane normal along source Y
+		assertSameAsGeneric( transform(
+				0, 0, -1.5, 20,
+				1.25, 0, 0, 2,
+				0, 1, 0, -7 ) );
+	}
+
+	static class TestSource implements Source< VolatileUnsignedShortType >
+	{
+		private final RandomAccessibleInterval< VolatileUnsignedShortType > img;
+
+		private final RealRandomAccessible< VolatileUnsignedShortType > nearestNeighbor;
+
+		private final RealRandomAccessible< VolatileUnsignedShortType > nLinear;
+
+		TestSource( final RandomAccessibleInterval< VolatileUnsignedShortType > img )
+		{
+			this.img = img;
+			final VolatileUnsignedShortType zero = new VolatileUnsignedShortType( 0 );
+			nearestNeighbor = Views.interpolate( Views.extendValue( img, zero ), new NearestNeighborInterpolatorFactory< VolatileUnsignedShortType >() );
+			nLinear = Views.interpolate( Views.extendValue( img, zero ), new NLinearInterpolatorFactory< VolatileUnsignedShortType >() );
+		}
+
+		@Override
+		public boolean isPresent( final int t )
+		{
+			return t == 0;
+		}
+
+		@Override
+		public RandomAccessibleInterval< VolatileUnsignedShortType > getSource( final int t, final int level )
+		{
+			return img;
+		}
+
+		@Override
+		public RealRandomAccessible< VolatileUnsignedShortType > getInterpolatedSource( final int t, final int level, final Interpolation method )
+		{
+			return method == Interpolation.NLINEAR ? nLinear : nearestNeighbor;
+		}
+
+		@Override
+		public AffineTransform3D getSourceTransform( final int t, final int level )
+		{
+			return new AffineTransform3D();
+		}
+
+		@Override
+		public VolatileUnsignedShortType getType()
+		{
+			return new VolatileUnsignedShortType();
+		}
+
+		@Override
+		public String getName()
+		{
+			return "test";
+		}
+
+		@Override
+		public int getNumMipmapLevels()
+		{
+			return 1;
+		}
+	}
+}
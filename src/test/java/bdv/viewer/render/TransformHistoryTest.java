@@ -0,0 +1,126 @@
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransformHistoryTest
+{
+	private static final double cX = 400;
+
+	private static final double cY = 300;
+
+	private TransformHistory history;
+
+	private long now;
+
+	@Before
+	public void setUp()
+	{
+		history = new TransformHistory();
+		now = System.currentTimeMillis();
+	}
+
+	/**
+	 * Create a viewer transform that shows global point (gx, gy, 0) at the
+	 * viewer center, scaled by s, and rotated by angle around the z axis.
+	 */
+	private static AffineTransform3D view( final double s, final double angle, final double gx, final double gy )
+	{
+		final double cos = s * Math.cos( angle );
+		final double sin = s * Math.sin( angle );
+		final AffineTransform3D t = new AffineTransform3D();
+		t.set(
+				cos, -sin, 0, cX - ( cos * gx - sin * gy ),
+				sin, cos, 0, cY - ( sin * gx + cos * gy ),
+				0, 0, s, 0 );
+		return t;
+	}
+
+	private static void assertTransformEquals( final AffineTransform3D expected, final AffineTransform3D actual )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				assertEquals( "element (" + r + ", " + c + ")", expected.get( r, c ), actual.get( r, c ), 1e-6 );
+	}
+
+	/**
+	 * Add views for times now - 200 ... now, 2 ms apart, moving with the
+	 * given velocities per millisecond.
+	 */
+	private void addMotion( final double scalePerMilli, final double anglePerMilli, final double gxPerMilli )
+	{
+		for ( int i = -200; i <= 0; i += 2 )
+			history.add( now + i, view( Math.pow( scalePerMilli, i ), anglePerMilli * i, gxPerMilli * i, 0 ) );
+	}
+
+	@Test
+	public void testTranslation()
+	{
+		addMotion( 1, 0, 0.5 );
+		final AffineTransform3D predicted = new AffineTransform3D();
+		assertTrue( history.predictTransform( now + 100, cX, cY, predicted ) );
+		assertTransformEquals( view( 1, 0, 50, 0 ), predicted );
+	}
+
+	/**
+	 * Rotation and zoom are extrapolated along the same arc and
+	 * geometrically, not element-wise, so the prediction is a similarity.
+	 */
+	@Test
+	public void testRotationAndScale()
+	{
+		addMotion( 1.002, 0.01, 0.5 );
+		final AffineTransform3D predicted = new AffineTransform3D();
+		assertTrue( history.predictTransform( now + 400, cX, cY, predicted ) );
+		assertTransformEquals( view( Math.pow( 1.002, 400 ), 4, 200, 0 ), predicted );
+	}
+
+	/**
+	 * Events a few milliseconds apart must not be extrapolated far into the
+	 * future.
+	 */
+	@Test
+	public void testShortHistory()
+	{
+		history.add( now - 2, view( 1, 0, 0, 0 ) );
+		history.add( now, view( 1, 0, 1, 0 ) );
+		final AffineTransform3D predicted = new AffineTransform3D();
+		assertFalse( history.predictTransform( now + 100, cX, cY, predicted ) );
+		assertTrue( history.predictTransform( now + ( long ) ( 2 * TransformHistory.MAX_EXTRAPOLATION ), cX, cY, predicted ) );
+		assertTransformEquals( view( 1, 0, 1 + TransformHistory.MAX_EXTRAPOLATION, 0 ), predicted );
+	}
+
+	/**
+	 * Motion is estimated over the velocity window, not from the last two
+	 * events.
+	 */
+	@Test
+	public void testVelocityWindow()
+	{
+		for ( int i = -200; i < 0; i += 2 )
+			history.add( now + i, view( 1, 0, 0.5 * i, 0 ) );
+		// jitter in the last event
+		history.add( now, view( 1, 0, 5, 0 ) );
+		final AffineTransform3D predicted = new AffineTransform3D();
+		assertTrue( history.predictTransform( now + 100, cX, cY, predicted ) );
+		// estimated from the event at now - 100 to the last event
+		assertTransformEquals( view( 1, 0, 5 + 55, 0 ), predicted );
+	}
+
+	/**
+	 * Motion is not estimated across a pause.
+	 */
+	@Test
+	public void testPause()
+	{
+		history.add( now - 1000, view( 1, 0, 0, 0 ) );
+		history.add( now, view( 1, 0, 100, 0 ) );
+		assertFalse( history.predictTransform( now + 10, cX, cY, new AffineTransform3D() ) );
+	}
+}
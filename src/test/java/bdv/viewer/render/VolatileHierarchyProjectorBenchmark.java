@@ -0,0 +1,96 @@
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.sampler.special.ConstantRandomAccessible;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Measures the per-frame overhead of {@link VolatileHierarchyProjector#map()}
+ * with 1, 4, 16, and 64 rendering threads.
+ * <p>
+ * Sources are constant, so that sampling and conversion are cheap and the
+ * time per frame is dominated by scheduling, i.e., by creating and
+ * distributing tasks and setting up accessors. As in
+ * {@link MultiResolutionRenderer}, a new projector is created for every frame
+ * and the thread pool is reused. Two cases are measured: the best level is
+ * valid (one rendering pass), and the best level is invalid, so that the
+ * next level is rendered in a second pass.
+ * <p>
+ * Run the {@link #main(String[])} method with the test classpath. The mean
+ * time per frame in microseconds is printed for each number of threads.
+ */
+public class VolatileHierarchyProjectorBenchmark
+{
+	private static final int width = 800;
+
+	private static final int height = 600;
+
+	private static final int[] numThreadsToTest = new int[] { 1, 4, 16, 64 };
+
+	private static final int numFrames = 500;
+
+	private static RandomAccessible< VolatileUnsignedShortType > constant( final int value, final boolean valid )
+	{
+		final VolatileShortArray access = new VolatileShortArray( new short[] { ( short ) value }, valid );
+		return new ConstantRandomAccessible< VolatileUnsignedShortType >( new VolatileUnsignedShortType( access ), 3 );
+	}
+
+	/**
+	 * @return mean time per frame in microseconds.
+	 */
+	private static double run( final ArrayList< RandomAccessible< VolatileUnsignedShortType > > sources, final int numThreads, final ExecutorService executorService )
+	{
+		final RealARGBColorConverter< VolatileUnsignedShortType > converter = new RealARGBColorConverter< VolatileUnsignedShortType >( 0, 255 );
+		converter.setColor( new ARGBType( 0xffffffff ) );
+		final ARGBScreenImage target = new ARGBScreenImage( width, height );
+		final long t0 = System.nanoTime();
+		for ( int i = 0; i < numFrames; ++i )
+		{
+			final VolatileHierarchyProjector< VolatileUnsignedShortType, ARGBType > projector = new VolatileHierarchyProjector< VolatileUnsignedShortType, ARGBType >( sources, converter, target, numThreads, executorService );
+			projector.map();
+		}
+		return ( System.nanoTime() - t0 ) / 1e3 / numFrames;
+	}
+
+	public static void main( final String[] args )
+	{
+		final ArrayList< RandomAccessible< VolatileUnsignedShortType > > onePass = new ArrayList< RandomAccessible< VolatileUnsignedShortType > >();
+		onePass.add( constant( 100, true ) );
+		onePass.add( constant( 50, true ) );
+		onePass.add( constant( 25, true ) );
+
+		final ArrayList< RandomAccessible< VolatileUnsignedShortType > > twoPasses = new ArrayList< RandomAccessible< VolatileUnsignedShortType > >();
+		twoPasses.add( constant( 100, false ) );
+		twoPasses.add( constant( 50, true ) );
+		twoPasses.add( constant( 25, true ) );
+
+		System.out.println( String.format( "%d x %d target, mean us per frame", width, height ) );
+		System.out.println( "threads  1 pass  2 passes" );
+		for ( final int numThreads : numThreadsToTest )
+		{
+			final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
+			try
+			{
+				// warm up
+				run( onePass, numThreads, executorService );
+				run( twoPasses, numThreads, executorService );
+
+				final double one = run( onePass, numThreads, executorService );
+				final double two = run( twoPasses, numThreads, executorService );
+				System.out.println( String.format( "%7d %7.0f %9.0f", numThreads, one, two ) );
+			}
+			finally
+			{
+				executorService.shutdown();
+			}
+		}
+	}
+}
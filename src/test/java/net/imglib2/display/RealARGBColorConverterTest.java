@@ -0,0 +1,105 @@
+package net.imglib2.display;
+
+import static org.junit.Assert.assertEquals;
+
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+import org.junit.Test;
+
+/**
+ * Checks that the uint16 lookup table of {@link RealARGBColorConverter} gives
+ * the same colors as the arithmetic conversion used for other types, also
+ * after min, max, and color change.
+ */
+public class RealARGBColorConverterTest
+{
+	/**
+	 * Compare all uint16 values converted through the lookup table (for
+	 * {@link UnsignedShortType}, {@link VolatileUnsignedShortType}, and the
+	 * <code>short</code> methods) with the same values converted
+	 * arithmetically as {@link DoubleType}, by converters with the same
+	 * settings.
+	 */
+	private static void assertLutMatchesArithmetic( final RealARGBColorConverter< UnsignedShortType > lut, final RealARGBColorConverter< VolatileUnsignedShortType > volatileLut, final RealARGBColorConverter< DoubleType > arithmetic )
+	{
+		final UnsignedShortType u = new UnsignedShortType();
+		final VolatileUnsignedShortType v = new VolatileUnsignedShortType();
+		final DoubleType d = new DoubleType();
+		final ARGBType expected = new ARGBType();
+		final ARGBType actual = new ARGBType();
+		final short[] shorts = new short[ 65536 ];
+		for ( int i = 0; i < 65536; ++i )
+			shorts[ i ] = ( short ) i;
+		final int[] row = new int[ 65536 ];
+		lut.convertUnsignedShorts( shorts, 0, row, 0, shorts.length );
+
+		for ( int i = 0; i < 65536; ++i )
+		{
+			d.set( i );
+			arithmetic.convert( d, expected );
+			final String msg = "value " + i + ", range [" + arithmetic.getMin() + ", " + arithmetic.getMax() + "], color " + Integer.toHexString( arithmetic.getColor().get() );
+
+			u.set( i );
+			lut.convert( u, actual );
+			assertEquals( msg, expected.get(), actual.get() );
+
+			v.get().set( i );
+			volatileLut.convert( v, actual );
+			assertEquals( msg, expected.get(), actual.get() );
+
+			assertEquals( msg, expected.get(), lut.convertUnsignedShort( i ) );
+			assertEquals( msg, expected.get(), row[ i ] );
+		}
+	}
+
+	@Test
+	public void testLutMatchesArithmetic()
+	{
+		final RealARGBColorConverter< UnsignedShortType > lut = new RealARGBColorConverter< UnsignedShortType >( 0, 65535 );
+		final RealARGBColorConverter< VolatileUnsignedShortType > volatileLut = new RealARGBColorConverter< VolatileUnsignedShortType >( 0, 65535 );
+		final RealARGBColorConverter< DoubleType > arithmetic = new RealARGBColorConverter< DoubleType >( 0, 65535 );
+
+		final double[][] ranges = new double[][] { { 0, 65535 }, { 100, 4000 }, { 1000.5, 1001.5 }, { -200, 300 }, { 60000, 70000 } };
+		final int[] colors = new int[] { 0xffffffff, 0xff00ff00, 0x80ff8040, 0x00000000 };
+		for ( final double[] range : ranges )
+		{
+			for ( final int color : colors )
+			{
+				// build the table, so that the changes below have to
+				// invalidate it
+				lut.convertUnsignedShort( 0 );
+				for ( final RealARGBColorConverter< ? > c : new RealARGBColorConverter< ? >[] { lut, volatileLut, arithmetic } )
+				{
+					c.setMin( range[ 0 ] );
+					c.setMax( range[ 1 ] );
+					c.setColor( new ARGBType( color ) );
+				}
+				assertLutMatchesArithmetic( lut, volatileLut, arithmetic );
+			}
+		}
+	}
+
+	/**
+	 * A change after the table was built must be reflected in the next
+	 * conversion.
+	 */
+	@Test
+	public void testChangeInvalidatesLut()
+	{
+		final RealARGBColorConverter< UnsignedShortType > converter = new RealARGBColorConverter< UnsignedShortType >( 0, 255 );
+		converter.setColor( new ARGBType( 0xffffffff ) );
+		assertEquals( ARGBType.rgba( 100, 100, 100, 255 ), converter.convertUnsignedShort( 100 ) );
+
+		converter.setMax( 200 );
+		assertEquals( ARGBType.rgba( 128, 128, 128, 255 ), converter.convertUnsignedShort( 100 ) );
+
+		converter.setMin( 100 );
+		assertEquals( ARGBType.rgba( 0, 0, 0, 255 ), converter.convertUnsignedShort( 100 ) );
+
+		converter.setColor( new ARGBType( ARGBType.rgba( 255, 0, 0, 255 ) ) );
+		assertEquals( ARGBType.rgba( 255, 0, 0, 255 ), converter.convertUnsignedShort( 200 ) );
+	}
+}